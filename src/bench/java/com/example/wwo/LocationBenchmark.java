@@ -0,0 +1,94 @@
+package com.example.wwo;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.wwo.Location.LocationType;
+
+/**
+ * Validating the rows of a bulk location file: the former
+ * <code>String.matches</code> validators, the same regular expressions
+ * compiled once, and the hand-written validators of {@link Location}.
+ *
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench=LocationBenchmark
+ * </pre>
+ *
+ * @author Fanni_Varga
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LocationBenchmark {
+	private static final String[] REGEXES = {
+			"^[a-zA-Z0-9, ]*$",
+			"^(([01]?[0-9][0-9]?|2[0-4][0-9]|25[0-5])[.]([01]?[0-9][0-9]?|2[0-4][0-9]|25[0-5])[.]([01]?[0-9][0-9]?|2[0-4][0-9]|25[0-5])[.]([01]?[0-9][0-9]?|2[0-4][0-9]|25[0-5]))$",
+			"[A-Z]{1,2}[0-9R][0-9A-Z]? ?[0-9][A-Z-[CIKMOV]]{2}",
+			"[ABCEFGHJKLMNPRSTVXY][0-9][ABCEFGHJKLMNPRSTVWXYZ] ?[0-9][ABCEFGHJKLMNPRSTVWXYZ][0-9]",
+			"^[0-9]{5}(?:-[0-9]{4})?$",
+			"[-+]?([1-8]?[0-9](.[0-9]{3})?|90(.0+)?),[ \t\n\b\r\f]*[-+]?(180(.0+)?|((1[0-7][0-9])|([1-9]?[0-9]))(.[0-9]{3})?)" };
+	private static final String[] SAMPLES = { "London, United Kingdom",
+			"101.25.32.205", "SW1A 1AA", "K1A 0B1", "90201-1234",
+			"48.834,2.394" };
+	private static final int ROWS = 1024;
+
+	private LocationType[] types;
+	private String[] locations;
+	private Pattern[] patterns;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		types = new LocationType[ROWS];
+		locations = new String[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			int type = i % SAMPLES.length;
+			types[i] = LocationType.values()[type];
+			locations[i] = new String(SAMPLES[type]);
+		}
+		patterns = new Pattern[REGEXES.length];
+		for (int i = 0; i < REGEXES.length; i++) {
+			patterns[i] = Pattern.compile(REGEXES[i]);
+		}
+	}
+
+	@Benchmark
+	public boolean stringMatches() {
+		int row = next++ & (ROWS - 1);
+		return locations[row].matches(REGEXES[types[row].ordinal()]);
+	}
+
+	@Benchmark
+	public boolean precompiledPattern() {
+		int row = next++ & (ROWS - 1);
+		return patterns[types[row].ordinal()].matcher(locations[row])
+				.matches();
+	}
+
+	@Benchmark
+	public boolean handWritten() {
+		int row = next++ & (ROWS - 1);
+		return Location.isValid(types[row], locations[row]);
+	}
+
+	@Benchmark
+	public Location valueObject() {
+		int row = next++ & (ROWS - 1);
+		return Location.of(types[row], locations[row]);
+	}
+}
@@ -0,0 +1,90 @@
+package com.example.wwo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.RequestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the HTTP request and canonical key of a local weather request from
+ * its parameter map, as {@link Request} does, against a compiled
+ * {@link RequestTemplate}. The allocation per request is reported by the gc
+ * profiler of the bench profile.
+ *
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench=RequestTemplateBenchmark
+ * </pre>
+ *
+ * @author Fanni_Varga
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RequestTemplateBenchmark {
+	private static final String BASE_URL = "/premium/v1/weather.ashx";
+	private static final String[] CITIES = { "London, United Kingdom",
+			"New York, NY", "Paris, France", "48.834,2.394" };
+
+	private Map<String, String> params;
+	private RequestTemplate template;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		params = new HashMap<String, String>();
+		params.put("key", "xkq544hkar4m69qujdgujn7w");
+		params.put("q", CITIES[0]);
+		params.put("num_of_days", "5");
+		params.put("format", "json");
+		params.put("extra", "isDayTime,utcDateTime,localObsTime");
+		params.put("tp", "1");
+		params.put("includelocation", "yes");
+		params.put("show_comments", "no");
+		template = RequestTemplate.compile(new Request(params, BASE_URL,
+				"api.worldweatheronline.com", "http"), "q");
+	}
+
+	@Benchmark
+	public Object parameterMap() {
+		Map<String, String> requestParams = new HashMap<String, String>(params);
+		requestParams.put("q", nextCity());
+		Request request = new Request(requestParams, BASE_URL,
+				"api.worldweatheronline.com", "http");
+		RequestBuilder requestBuilder = RequestBuilder.get().setUri(BASE_URL);
+		for (String key : requestParams.keySet()) {
+			requestBuilder.addParameter(key, requestParams.get(key));
+		}
+		HttpRequest httpRequest = requestBuilder.build();
+		return request.getCanonicalKey().length() + httpRequest.hashCode();
+	}
+
+	@Benchmark
+	public Object template() {
+		Request request = template.newRequest(nextCity());
+		String url = request.getCanonicalKey();
+		HttpRequest httpRequest = new HttpGet(url.substring(template
+				.getPathOffset()));
+		return url.length() + httpRequest.hashCode();
+	}
+
+	private String nextCity() {
+		return CITIES[next++ & 3];
+	}
+}
@@ -0,0 +1,128 @@
+package com.example.wwo.historicalweather;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.wwo.historicalweather.HourlyArchive.Column;
+import com.example.wwo.historicalweather.HourlyArchive.ValueHandler;
+import com.example.wwo.model.HourlySeries;
+import com.example.wwo.model.HourlySlot;
+import com.example.wwo.parser.JsonWeatherParser;
+import com.example.wwo.parser.Projection;
+import com.example.wwo.parser.WeatherHandlerAdapter;
+
+/**
+ * The temperatures of ten years of hourly rows scanned from an archive,
+ * against decoding them from the JSON responses with a projection of the
+ * temperature only.
+ *
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench=HourlyArchiveBenchmark
+ * </pre>
+ *
+ * @author Fanni_Varga
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HourlyArchiveBenchmark {
+	private static final int DAYS = 3653;
+
+	private byte[] body;
+	private JsonWeatherParser json;
+	private File file;
+	private HourlyArchive archive;
+
+	@Setup
+	public void setUp() throws IOException {
+		Random random = new Random(1);
+		LocalDate first = new LocalDate(2009, 1, 1);
+		long firstDay = first.toDateTimeAtStartOfDay(DateTimeZone.UTC)
+				.getMillis() / DateTimeConstants.MILLIS_PER_DAY;
+		HourlySeries series = new HourlySeries(DAYS * 24);
+		StringBuilder sb = new StringBuilder("{\"data\":{\"weather\":[");
+		for (int d = 0; d < DAYS; d++) {
+			sb.append(d > 0 ? "," : "").append("{\"date\":\"")
+					.append(first.plusDays(d)).append("\",\"hourly\":[");
+			for (int h = 0; h < 24; h++) {
+				int row = series.append(HourlySeries.time(firstDay + d, h * 60));
+				int tempC = (int) Math.round(10 + 8 * Math.sin(d / 58.0) + 4
+						* Math.sin(h / 3.8) + random.nextGaussian());
+				int humidity = 50 + random.nextInt(50);
+				int pressure = 1000 + random.nextInt(30);
+				series.setTempC(row, tempC);
+				series.setFeelsLikeC(row, tempC - 2);
+				series.setPrecipMM(row, 0.2f * random.nextInt(3));
+				series.setWindspeedKmph(row, 5 + random.nextInt(20));
+				series.setHumidity(row, humidity);
+				series.setPressure(row, pressure);
+				series.setWeatherCode(row, 116);
+				sb.append(h > 0 ? "," : "").append("{\"time\":\"")
+						.append(h * 100).append("\",\"tempC\":\"").append(tempC)
+						.append("\",\"tempF\":\"50\",\"windspeedMiles\":\"9\",\"windspeedKmph\":\"15\",\"winddirDegree\":\"266\",\"winddir16Point\":\"W\",\"weatherCode\":\"116\",\"weatherIconUrl\":[{\"value\":\"http://cdn.worldweatheronline.net/images/wsymbols01_png_64/wsymbol_0002_sunny_intervals.png\"}],\"weatherDesc\":[{\"value\":\"Partly cloudy\"}],\"precipMM\":\"0.2\",\"humidity\":\"")
+						.append(humidity).append("\",\"visibility\":\"10\",\"pressure\":\"")
+						.append(pressure).append("\",\"cloudcover\":\"40\",\"FeelsLikeC\":\"")
+						.append(tempC - 2).append("\"}");
+			}
+			sb.append("]}");
+		}
+		body = sb.append("]}}").toString().getBytes(StandardCharsets.UTF_8);
+		json = new JsonWeatherParser(new Projection().hourly("tempC"));
+		file = File.createTempFile("wwo-archive", ".wwa");
+		file.delete();
+		archive = HourlyArchive.open(file);
+		archive.append(series);
+		archive.flush();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		archive.close();
+		file.delete();
+	}
+
+	@Benchmark
+	public void archive(final Blackhole blackhole) throws IOException {
+		archive.scan(Column.TEMP_C, Long.MIN_VALUE, Long.MAX_VALUE,
+				new ValueHandler() {
+					@Override
+					public void value(long time, float value) {
+						blackhole.consume(value);
+					}
+				});
+	}
+
+	@Benchmark
+	public void json(final Blackhole blackhole) throws IOException {
+		json.parse(new ByteArrayInputStream(body), new WeatherHandlerAdapter() {
+			@Override
+			public void hourlySlot(HourlySlot slot) {
+				blackhole.consume(slot.getTempC());
+			}
+		});
+	}
+}
@@ -0,0 +1,93 @@
+package com.example.wwo.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Hourly rows of a CSV response decoded into primitives per second, against
+ * a baseline splitting each line into Strings and parsing them.
+ *
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench=DelimitedParserBenchmark
+ * </pre>
+ *
+ * @author Fanni_Varga
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OperationsPerInvocation(DelimitedParserBenchmark.ROWS)
+public class DelimitedParserBenchmark {
+	static final int ROWS = 24 * 365;
+
+	private byte[] body;
+	private String text;
+	private DelimitedParser parser;
+
+	@Setup
+	public void setUp() {
+		StringBuilder csv = new StringBuilder(
+				"#The CSV format is in following way:-\n#date,time,tempC,tempF,windspeedMiles,windspeedKmph,winddirDegree,winddir16Point,weatherCode,weatherIconUrl,weatherDesc,precipMM,humidity,visibility,pressure,cloudcover\n");
+		for (int i = 0; i < ROWS; i++) {
+			csv.append(String.format("2013-%02d-%02d", i / 24 / 28 % 12 + 1,
+					i / 24 % 28 + 1))
+					.append(',').append(i % 24 * 100).append(',')
+					.append(10 + i % 7)
+					.append(",52,9,15,266,W,116,http://cdn.worldweatheronline.net/images/wsymbols01_png_64/wsymbol_0002_sunny_intervals.png,Partly Cloudy,0.4,71,10,1021,40\n");
+		}
+		text = csv.toString();
+		body = text.getBytes(StandardCharsets.UTF_8);
+		parser = DelimitedParser.csv();
+	}
+
+	@Benchmark
+	public void bytes(final Blackhole blackhole) {
+		parser.parse(body, 0, body.length, new RecordHandler() {
+			@Override
+			public void record(DelimitedRecord record) {
+				blackhole.consume(record.getEpochDay(0));
+				blackhole.consume(record.getMinuteOfDay(1));
+				blackhole.consume(record.getInt(2, Integer.MIN_VALUE));
+				blackhole.consume(record.getDouble(11));
+				blackhole.consume(record.getInt(14, Integer.MIN_VALUE));
+			}
+
+			@Override
+			public void comment(DelimitedRecord record) {
+			}
+		});
+	}
+
+	@Benchmark
+	public void strings(Blackhole blackhole) {
+		for (String line : text.split("\n")) {
+			if (line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split(",");
+			blackhole.consume(LocalDate.parse(fields[0]));
+			blackhole.consume(Integer.parseInt(fields[1]));
+			blackhole.consume(Integer.parseInt(fields[2]));
+			blackhole.consume(Double.parseDouble(fields[11]));
+			blackhole.consume(Integer.parseInt(fields[14]));
+		}
+	}
+}
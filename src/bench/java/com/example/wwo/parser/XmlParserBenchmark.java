@@ -0,0 +1,141 @@
+package com.example.wwo.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.example.wwo.model.DailyForecast;
+import com.example.wwo.model.HourlySlot;
+
+/**
+ * The StAX decoder against a DOM baseline building the same models, on a
+ * historical weather response of a range of days with hourly slots.
+ *
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench=XmlParserBenchmark
+ * </pre>
+ *
+ * @author Fanni_Varga
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class XmlParserBenchmark {
+	@Param({ "31", "365" })
+	private int days;
+
+	private byte[] body;
+	private XmlWeatherParser stax;
+	private DocumentBuilderFactory domFactory;
+
+	@Setup
+	public void setUp() {
+		StringBuilder xml = new StringBuilder(
+				"<?xml version=\"1.0\" encoding=\"UTF-8\"?><data><request><type>City</type><query>London, United Kingdom</query></request>");
+		for (int d = 0; d < days; d++) {
+			xml.append("<weather><date>2013-")
+					.append(String.format("%02d-%02d", d / 28 % 12 + 1,
+							d % 28 + 1))
+					.append("</date><astronomy><sunrise>05:13 AM</sunrise><sunset>08:40 PM</sunset></astronomy>")
+					.append("<maxtempC>17</maxtempC><maxtempF>63</maxtempF><mintempC>7</mintempC><mintempF>44</mintempF>");
+			for (int h = 0; h < 24; h++) {
+				xml.append("<hourly><time>").append(h * 100)
+						.append("</time><tempC>").append(10 + h % 7)
+						.append("</tempC><tempF>52</tempF><windspeedMiles>9</windspeedMiles><windspeedKmph>15</windspeedKmph>")
+						.append("<winddirDegree>266</winddirDegree><winddir16Point>W</winddir16Point><weatherCode>116</weatherCode>")
+						.append("<weatherIconUrl><![CDATA[http://cdn.worldweatheronline.net/images/wsymbols01_png_64/wsymbol_0002_sunny_intervals.png]]></weatherIconUrl>")
+						.append("<weatherDesc><![CDATA[Partly Cloudy ]]></weatherDesc><precipMM>0.4</precipMM><humidity>71</humidity>")
+						.append("<visibility>10</visibility><pressure>1021</pressure><cloudcover>40</cloudcover><FeelsLikeC>9</FeelsLikeC></hourly>");
+			}
+			xml.append("</weather>");
+		}
+		xml.append("</data>");
+		body = xml.toString().getBytes(StandardCharsets.UTF_8);
+		stax = new XmlWeatherParser();
+		domFactory = DocumentBuilderFactory.newInstance();
+		domFactory.setCoalescing(true);
+	}
+
+	@Benchmark
+	public void stax(final Blackhole blackhole) throws IOException {
+		stax.parse(new ByteArrayInputStream(body), new WeatherHandlerAdapter() {
+			@Override
+			public void hourlySlot(HourlySlot slot) {
+				blackhole.consume(slot);
+			}
+
+			@Override
+			public void dailyForecast(DailyForecast forecast) {
+				blackhole.consume(forecast);
+			}
+		});
+	}
+
+	@Benchmark
+	public void dom(Blackhole blackhole) throws Exception {
+		DocumentBuilder builder = domFactory.newDocumentBuilder();
+		Document document = builder.parse(new ByteArrayInputStream(body));
+		for (Element weather : children(document.getDocumentElement(),
+				"weather")) {
+			DailyForecast day = new DailyForecast();
+			for (Element field : children(weather, null)) {
+				String name = field.getTagName();
+				if ("hourly".equals(name)) {
+					HourlySlot slot = new HourlySlot();
+					slot.setDate(day.getDate());
+					for (Element hourField : children(field, null)) {
+						ModelFields.hourly(slot, hourField.getTagName(),
+								hourField.getTextContent().trim());
+					}
+					blackhole.consume(slot);
+				} else if ("astronomy".equals(name)) {
+					for (Element astronomyField : children(field, null)) {
+						ModelFields.day(day, astronomyField.getTagName(),
+								astronomyField.getTextContent().trim());
+					}
+				} else {
+					ModelFields.day(day, name, field.getTextContent().trim());
+				}
+			}
+			blackhole.consume(day);
+		}
+	}
+
+	private static Iterable<Element> children(Element parent, String name) {
+		List<Element> elements = new ArrayList<Element>();
+		for (Node child = parent.getFirstChild(); child != null; child = child
+				.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE
+					&& (name == null || name.equals(child.getNodeName()))) {
+				elements.add((Element) child);
+			}
+		}
+		return elements;
+	}
+}
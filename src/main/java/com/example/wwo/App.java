@@ -1,11 +1,11 @@
 package com.example.wwo;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URISyntaxException;
-import java.util.Scanner;
 
 import com.example.wwo.Location.LocationType;
+import com.example.wwo.model.SearchHit;
+import com.example.wwo.parser.WeatherHandlerAdapter;
 import com.example.wwo.search.Search;
 import com.example.wwo.search.Search.Format;
 import com.example.wwo.search.Search.PackageType;
@@ -24,12 +24,19 @@ public class App {
 				location);
 		lw.setFormat(Format.JSON);
 		try {
-			InputStream input = lw.buildRequestAttributes("http").run();
-			Scanner sc = new Scanner(input);
-			while (sc.hasNextLine()) {
-				System.out.println(sc.nextLine());
-			}
-			sc.close();
+			lw.buildRequestAttributes("http").parse(new WeatherHandlerAdapter() {
+				@Override
+				public void searchHit(SearchHit hit) {
+					System.out.println(hit.getAreaName() + ", "
+							+ hit.getCountry() + " (" + hit.getLatitude()
+							+ ", " + hit.getLongitude() + ")");
+				}
+
+				@Override
+				public void error(String message) {
+					System.out.println(message);
+				}
+			});
 		} catch (IOException | URISyntaxException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,193 @@
+package com.example.wwo;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Negotiates gzip/deflate transfer and decodes the response bodies as a stream
+ * while they are read, counting the bytes before and after decoding into the
+ * {@link TransferMetrics} of the transport. Installed on the blocking client
+ * instead of the built-in content compression, which has no byte counters; on
+ * the non-blocking client the response side is applied when the exchange
+ * completes, see {@link HttpTransport#decode(HttpResponse)}.
+ *
+ * @author Fanni_Varga
+ *
+ */
+class ContentEncodingInterceptor implements HttpRequestInterceptor,
+		HttpResponseInterceptor {
+	private static final String ACCEPTED_ENCODINGS = "gzip,deflate";
+
+	private final TransferMetrics metrics;
+	private final boolean compression;
+
+	ContentEncodingInterceptor(TransferMetrics metrics, boolean compression) {
+		this.metrics = metrics;
+		this.compression = compression;
+	}
+
+	@Override
+	public void process(HttpRequest request, HttpContext context)
+			throws HttpException, IOException {
+		if (compression && !request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+			request.addHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+		}
+	}
+
+	@Override
+	public void process(HttpResponse response, HttpContext context)
+			throws HttpException, IOException {
+		HttpEntity entity = response.getEntity();
+		if (entity == null) {
+			return;
+		}
+		Encoding encoding = Encoding.IDENTITY;
+		Header header = entity.getContentEncoding();
+		if (header != null) {
+			String value = header.getValue().trim().toLowerCase(Locale.ROOT);
+			if (value.equals("gzip") || value.equals("x-gzip")) {
+				encoding = Encoding.GZIP;
+			} else if (value.equals("deflate")) {
+				encoding = Encoding.DEFLATE;
+			} else if (!value.equals("identity")) {
+				throw new HttpException("Unsupported Content-Encoding: "
+						+ value);
+			}
+		}
+		metrics.responseReceived(encoding != Encoding.IDENTITY);
+		response.setEntity(new DecodingEntity(entity, encoding, metrics));
+		if (encoding != Encoding.IDENTITY) {
+			response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+			response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+			response.removeHeaders(HttpHeaders.CONTENT_MD5);
+		}
+	}
+
+	private static enum Encoding {
+		IDENTITY, GZIP, DEFLATE
+	}
+
+	/**
+	 * Entity whose content is decoded lazily on read. Each call of
+	 * {@link #getContent()} decodes the wrapped content from its start, so a
+	 * repeatable entity stays repeatable.
+	 */
+	private static class DecodingEntity extends HttpEntityWrapper {
+		private final Encoding encoding;
+		private final TransferMetrics metrics;
+
+		DecodingEntity(HttpEntity wrapped, Encoding encoding,
+				TransferMetrics metrics) {
+			super(wrapped);
+			this.encoding = encoding;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			InputStream wire = new CountingInputStream(
+					wrappedEntity.getContent(), metrics, true);
+			InputStream decoded;
+			switch (encoding) {
+			case GZIP:
+				decoded = new GZIPInputStream(wire, 8192);
+				break;
+			case DEFLATE:
+				decoded = new DeflateInputStream(wire);
+				break;
+			default:
+				decoded = wire;
+			}
+			return new CountingInputStream(decoded, metrics, false);
+		}
+
+		@Override
+		public Header getContentEncoding() {
+			return encoding == Encoding.IDENTITY ? super.getContentEncoding()
+					: null;
+		}
+
+		@Override
+		public long getContentLength() {
+			return encoding == Encoding.IDENTITY ? super.getContentLength()
+					: -1;
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			InputStream in = getContent();
+			try {
+				byte[] buffer = new byte[8192];
+				int n;
+				while ((n = in.read(buffer)) != -1) {
+					out.write(buffer, 0, n);
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+		private final TransferMetrics metrics;
+		private final boolean wire;
+
+		CountingInputStream(InputStream in, TransferMetrics metrics,
+				boolean wire) {
+			super(in);
+			this.metrics = metrics;
+			this.wire = wire;
+		}
+
+		private void count(long n) {
+			if (wire) {
+				metrics.wireBytesRead(n);
+			} else {
+				metrics.decodedBytesRead(n);
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				count(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count(n);
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			if (skipped > 0) {
+				count(skipped);
+			}
+			return skipped;
+		}
+	}
+}
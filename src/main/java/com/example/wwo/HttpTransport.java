@@ -0,0 +1,679 @@
+package com.example.wwo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.wwo.cache.ResponseCache;
+import com.example.wwo.cache.SpatialKeys;
+import com.example.wwo.circuit.CircuitBreakerRegistry;
+import com.example.wwo.quota.QuotaGovernor;
+
+/**
+ * Long-lived HTTP transport shared by every endpoint class. It owns a pooled
+ * connection manager, so consecutive requests reuse warm keep-alive
+ * connections instead of opening a new TCP/TLS connection per call. Idle and
+ * expired connections are evicted in the background. Responses are requested
+ * gzip/deflate compressed and decoded as a stream while read; the bytes on the
+ * wire and after decoding are counted in {@link #getTransferMetrics()}.
+ *
+ * The non-blocking client used by {@link Request#runAsync()} is created on
+ * first use. It runs on a few I/O reactor threads, so thousands of requests can
+ * be in flight without holding a thread each.
+ *
+ * Use {@link #getDefault()} for the process wide transport, or create an own
+ * instance with custom {@link Settings} and pass it to
+ * <code>buildRequestAttributes(scheme, transport)</code>.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class HttpTransport implements Closeable {
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(HttpTransport.class);
+
+	private static HttpTransport defaultTransport;
+	private static boolean defaultShutdownHook;
+
+	private final Settings settings;
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient client;
+	private final RequestConfig requestConfig;
+	private final TransferMetrics transferMetrics = new TransferMetrics();
+	private final ContentEncodingInterceptor contentEncoding;
+	private final ScheduledExecutorService scheduler;
+	private CloseableHttpAsyncClient asyncClient;
+	private volatile PoolingNHttpClientConnectionManager asyncConnectionManager;
+	private volatile ResponseCache responseCache;
+	private volatile SpatialKeys spatialKeys;
+	private volatile RequestCoalescer requestCoalescer;
+	private volatile QuotaGovernor quotaGovernor;
+	private volatile RetryPolicy retryPolicy;
+	private volatile CircuitBreakerRegistry circuitBreakers;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a transport with the default settings.
+	 */
+	public HttpTransport() {
+		this(new Settings());
+	}
+
+	/**
+	 * Creates a transport.
+	 *
+	 * @param settings
+	 *            the pool and timeout settings.
+	 */
+	public HttpTransport(Settings settings) {
+		this.settings = settings;
+		this.connectionManager = new PoolingHttpClientConnectionManager(
+				settings.timeToLiveMillis, TimeUnit.MILLISECONDS);
+		connectionManager.setMaxTotal(settings.maxTotal);
+		connectionManager.setDefaultMaxPerRoute(settings.maxPerRoute);
+
+		this.requestConfig = RequestConfig.custom()
+				.setConnectTimeout(settings.connectTimeoutMillis)
+				.setSocketTimeout(settings.socketTimeoutMillis)
+				.setConnectionRequestTimeout(
+						settings.connectionRequestTimeoutMillis).build();
+		this.contentEncoding = new ContentEncodingInterceptor(transferMetrics,
+				settings.contentCompression);
+		this.client = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(new KeepAliveStrategy(
+						settings.keepAliveMillis))
+				.disableContentCompression()
+				.addInterceptorLast((HttpRequestInterceptor) contentEncoding)
+				.addInterceptorFirst((HttpResponseInterceptor) contentEncoding)
+				.disableCookieManagement().build();
+
+		this.scheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "wwo-transport-scheduler");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				connectionManager.closeExpiredConnections();
+				connectionManager.closeIdleConnections(
+						HttpTransport.this.settings.idleTimeoutMillis,
+						TimeUnit.MILLISECONDS);
+				PoolingNHttpClientConnectionManager async = asyncConnectionManager;
+				if (async != null) {
+					async.closeExpiredConnections();
+					async.closeIdleConnections(
+							HttpTransport.this.settings.idleTimeoutMillis,
+							TimeUnit.MILLISECONDS);
+				}
+			}
+		}, settings.evictionIntervalMillis, settings.evictionIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the process wide transport, creating it on first use, or again
+	 * after it was closed. A shutdown hook closing the current default
+	 * transport is registered once.
+	 *
+	 * @return the default transport.
+	 */
+	public static synchronized HttpTransport getDefault() {
+		if (defaultTransport == null || defaultTransport.closed) {
+			defaultTransport = new HttpTransport();
+			if (!defaultShutdownHook) {
+				Runtime.getRuntime().addShutdownHook(
+						new Thread("wwo-transport-shutdown") {
+							@Override
+							public void run() {
+								HttpTransport transport;
+								synchronized (HttpTransport.class) {
+									transport = defaultTransport;
+								}
+								closeOnShutdown(transport);
+							}
+						});
+				defaultShutdownHook = true;
+			}
+		}
+		return defaultTransport;
+	}
+
+	/**
+	 * Registers a JVM shutdown hook which closes this transport.
+	 *
+	 * @return a reference to this object.
+	 */
+	public HttpTransport registerShutdownHook() {
+		Runtime.getRuntime().addShutdownHook(
+				new Thread("wwo-transport-shutdown") {
+					@Override
+					public void run() {
+						closeOnShutdown(HttpTransport.this);
+					}
+				});
+		return this;
+	}
+
+	private static void closeOnShutdown(HttpTransport transport) {
+		if (transport == null || transport.closed) {
+			return;
+		}
+		try {
+			transport.close();
+		} catch (IOException e) {
+			LOGGER.warn("Failed to close the transport on shutdown.", e);
+		}
+	}
+
+	/**
+	 * The pooled client. Streams returned from it must be closed to give the
+	 * connection back to the pool.
+	 *
+	 * @return the HTTP client.
+	 */
+	public CloseableHttpClient getClient() {
+		if (closed) {
+			throw new IllegalStateException("The transport is closed.");
+		}
+		return client;
+	}
+
+	/**
+	 * The non-blocking client, started on first call. Its connections are
+	 * pooled separately from the blocking client.
+	 *
+	 * @return the asynchronous HTTP client.
+	 * @throws IOException
+	 *             if the I/O reactor cannot be started.
+	 */
+	public synchronized CloseableHttpAsyncClient getAsyncClient()
+			throws IOException {
+		if (closed) {
+			throw new IllegalStateException("The transport is closed.");
+		}
+		if (asyncClient == null) {
+			IOReactorConfig reactorConfig = IOReactorConfig.custom()
+					.setIoThreadCount(settings.ioThreadCount)
+					.setConnectTimeout(settings.connectTimeoutMillis)
+					.setSoTimeout(settings.socketTimeoutMillis).build();
+			try {
+				asyncConnectionManager = new PoolingNHttpClientConnectionManager(
+						new DefaultConnectingIOReactor(reactorConfig));
+			} catch (IOReactorException e) {
+				throw new IOException("Cannot start the I/O reactor.", e);
+			}
+			asyncConnectionManager.setMaxTotal(settings.asyncMaxTotal);
+			asyncConnectionManager
+					.setDefaultMaxPerRoute(settings.asyncMaxPerRoute);
+			asyncClient = HttpAsyncClients.custom()
+					.setConnectionManager(asyncConnectionManager)
+					.setDefaultRequestConfig(requestConfig)
+					.setKeepAliveStrategy(new KeepAliveStrategy(
+							settings.keepAliveMillis))
+					.addInterceptorLast((HttpRequestInterceptor) contentEncoding)
+					.disableCookieManagement().build();
+			asyncClient.start();
+		}
+		return asyncClient;
+	}
+
+	/**
+	 * Decodes the body of a response of the non-blocking client. Its response
+	 * interceptors run before the body arrives, and the body is replaced by
+	 * the buffered content afterwards, so the decoding is attached on
+	 * completion.
+	 *
+	 * @param response
+	 *            the completed response.
+	 * @throws IOException
+	 *             if the content encoding is not supported.
+	 */
+	void decode(HttpResponse response) throws IOException {
+		try {
+			contentEncoding.process(response, null);
+		} catch (HttpException e) {
+			throw new ClientProtocolException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Serves the responses of every request on this transport from the given
+	 * cache, and caches successful responses as long as its policy allows.
+	 *
+	 * @param responseCache
+	 *            the cache, or null to disable caching.
+	 * @return a reference to this object.
+	 */
+	public HttpTransport setResponseCache(ResponseCache responseCache) {
+		this.responseCache = responseCache;
+		return this;
+	}
+
+	/**
+	 * The response cache of this transport.
+	 *
+	 * @return the cache, or null if responses are not cached.
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Keys the cached and coalesced responses of nearby coordinates by the
+	 * weather point they resolve to.
+	 *
+	 * @param spatialKeys
+	 *            the keys, or null to key every request exactly.
+	 * @return a reference to this object.
+	 */
+	public HttpTransport setSpatialKeys(SpatialKeys spatialKeys) {
+		this.spatialKeys = spatialKeys;
+		return this;
+	}
+
+	/**
+	 * The spatial keys of this transport.
+	 *
+	 * @return the keys, or null if every request is keyed exactly.
+	 */
+	public SpatialKeys getSpatialKeys() {
+		return spatialKeys;
+	}
+
+	/**
+	 * Shares one upstream exchange between concurrent identical requests on
+	 * this transport.
+	 *
+	 * @param requestCoalescer
+	 *            the coalescer, or null to send every request.
+	 * @return a reference to this object.
+	 */
+	public HttpTransport setRequestCoalescer(RequestCoalescer requestCoalescer) {
+		this.requestCoalescer = requestCoalescer;
+		return this;
+	}
+
+	/**
+	 * The request coalescer of this transport.
+	 *
+	 * @return the coalescer, or null if requests are not coalesced.
+	 */
+	public RequestCoalescer getRequestCoalescer() {
+		return requestCoalescer;
+	}
+
+	/**
+	 * Limits the requests sent upstream on this transport per API key and
+	 * tier. Cached responses do not use the quota.
+	 *
+	 * @param quotaGovernor
+	 *            the governor, or null to send requests without limit.
+	 * @return a reference to this object.
+	 */
+	public HttpTransport setQuotaGovernor(QuotaGovernor quotaGovernor) {
+		this.quotaGovernor = quotaGovernor;
+		return this;
+	}
+
+	/**
+	 * The quota governor of this transport.
+	 *
+	 * @return the governor, or null if requests are not limited.
+	 */
+	public QuotaGovernor getQuotaGovernor() {
+		return quotaGovernor;
+	}
+
+	/**
+	 * Retries failed requests on this transport and hedges slow ones.
+	 *
+	 * @param retryPolicy
+	 *            the policy, or null to send every request once.
+	 * @return a reference to this object.
+	 */
+	public HttpTransport setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+		return this;
+	}
+
+	/**
+	 * The retry policy of this transport.
+	 *
+	 * @return the policy, or null if requests are not retried.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Breaks the circuit of endpoints failing on this transport, and limits
+	 * the requests in flight per endpoint.
+	 *
+	 * @param circuitBreakers
+	 *            the breakers, or null to send every request.
+	 * @return a reference to this object.
+	 */
+	public HttpTransport setCircuitBreakers(
+			CircuitBreakerRegistry circuitBreakers) {
+		this.circuitBreakers = circuitBreakers;
+		return this;
+	}
+
+	/**
+	 * The circuit breakers of this transport.
+	 *
+	 * @return the breakers, or null if circuits are not broken.
+	 */
+	public CircuitBreakerRegistry getCircuitBreakers() {
+		return circuitBreakers;
+	}
+
+	/**
+	 * Bytes received on this transport, on the wire and after decoding.
+	 *
+	 * @return the metrics.
+	 */
+	public TransferMetrics getTransferMetrics() {
+		return transferMetrics;
+	}
+
+	/**
+	 * Single daemon thread used for housekeeping and for per-call timeouts.
+	 *
+	 * @return the scheduler.
+	 */
+	public ScheduledExecutorService getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * The pool settings of this transport.
+	 *
+	 * @return the settings.
+	 */
+	public Settings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Whether {@link #close()} was already called.
+	 *
+	 * @return true if closed, else false.
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Stops the eviction thread and closes every pooled connection.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		scheduler.shutdownNow();
+		try {
+			client.close();
+		} finally {
+			connectionManager.shutdown();
+			synchronized (this) {
+				if (asyncClient != null) {
+					asyncClient.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Uses the keep-alive timeout sent by the server, or the configured default
+	 * when the server does not send one.
+	 */
+	private static class KeepAliveStrategy extends
+			DefaultConnectionKeepAliveStrategy {
+		private final long defaultKeepAliveMillis;
+
+		KeepAliveStrategy(long defaultKeepAliveMillis) {
+			this.defaultKeepAliveMillis = defaultKeepAliveMillis;
+		}
+
+		@Override
+		public long getKeepAliveDuration(HttpResponse response,
+				HttpContext context) {
+			long duration = super.getKeepAliveDuration(response, context);
+			return duration > 0 ? duration : defaultKeepAliveMillis;
+		}
+	}
+
+	/**
+	 * Pool, keep-alive and timeout settings of a transport.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public static class Settings {
+		private int maxTotal = 200;
+		private int maxPerRoute = 50;
+		private int connectTimeoutMillis = 5000;
+		private int socketTimeoutMillis = 30000;
+		private int connectionRequestTimeoutMillis = 10000;
+		private long keepAliveMillis = 30000;
+		private long timeToLiveMillis = -1;
+		private long idleTimeoutMillis = 30000;
+		private long evictionIntervalMillis = 5000;
+		private int ioThreadCount = 2;
+		private int asyncMaxTotal = 2000;
+		private int asyncMaxPerRoute = 1000;
+		private boolean contentCompression = true;
+
+		/**
+		 * Maximum number of pooled connections. Default is 200.
+		 *
+		 * @param maxTotal
+		 *            the limit.
+		 * @return a reference to this object.
+		 */
+		public Settings setMaxTotal(int maxTotal) {
+			this.maxTotal = maxTotal;
+			return this;
+		}
+
+		/**
+		 * Maximum number of pooled connections per host. Default is 50.
+		 *
+		 * @param maxPerRoute
+		 *            the limit.
+		 * @return a reference to this object.
+		 */
+		public Settings setMaxPerRoute(int maxPerRoute) {
+			this.maxPerRoute = maxPerRoute;
+			return this;
+		}
+
+		/**
+		 * Connect timeout in milliseconds. Default is 5000.
+		 *
+		 * @param connectTimeoutMillis
+		 *            the timeout.
+		 * @return a reference to this object.
+		 */
+		public Settings setConnectTimeout(int connectTimeoutMillis) {
+			this.connectTimeoutMillis = connectTimeoutMillis;
+			return this;
+		}
+
+		/**
+		 * Socket read timeout in milliseconds. Default is 30000.
+		 *
+		 * @param socketTimeoutMillis
+		 *            the timeout.
+		 * @return a reference to this object.
+		 */
+		public Settings setSocketTimeout(int socketTimeoutMillis) {
+			this.socketTimeoutMillis = socketTimeoutMillis;
+			return this;
+		}
+
+		/**
+		 * How long to wait for a free pooled connection in milliseconds.
+		 * Default is 10000.
+		 *
+		 * @param connectionRequestTimeoutMillis
+		 *            the timeout.
+		 * @return a reference to this object.
+		 */
+		public Settings setConnectionRequestTimeout(
+				int connectionRequestTimeoutMillis) {
+			this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+			return this;
+		}
+
+		/**
+		 * Keep-alive duration used when the server does not send one. Default
+		 * is 30000.
+		 *
+		 * @param keepAliveMillis
+		 *            the duration.
+		 * @return a reference to this object.
+		 */
+		public Settings setKeepAlive(long keepAliveMillis) {
+			this.keepAliveMillis = keepAliveMillis;
+			return this;
+		}
+
+		/**
+		 * Maximum lifetime of a pooled connection. Default is unlimited (-1).
+		 *
+		 * @param timeToLiveMillis
+		 *            the lifetime.
+		 * @return a reference to this object.
+		 */
+		public Settings setTimeToLive(long timeToLiveMillis) {
+			this.timeToLiveMillis = timeToLiveMillis;
+			return this;
+		}
+
+		/**
+		 * Connections idle for longer than this are closed. Default is 30000.
+		 *
+		 * @param idleTimeoutMillis
+		 *            the idle timeout.
+		 * @return a reference to this object.
+		 */
+		public Settings setIdleTimeout(long idleTimeoutMillis) {
+			this.idleTimeoutMillis = idleTimeoutMillis;
+			return this;
+		}
+
+		/**
+		 * How often idle and expired connections are evicted. Default is 5000.
+		 *
+		 * @param evictionIntervalMillis
+		 *            the interval.
+		 * @return a reference to this object.
+		 */
+		public Settings setEvictionInterval(long evictionIntervalMillis) {
+			this.evictionIntervalMillis = evictionIntervalMillis;
+			return this;
+		}
+
+		/**
+		 * Number of I/O reactor threads of the non-blocking client. Default is
+		 * 2.
+		 *
+		 * @param ioThreadCount
+		 *            the number of threads.
+		 * @return a reference to this object.
+		 */
+		public Settings setIoThreadCount(int ioThreadCount) {
+			this.ioThreadCount = ioThreadCount;
+			return this;
+		}
+
+		/**
+		 * Maximum number of connections of the non-blocking client. Default is
+		 * 2000.
+		 *
+		 * @param asyncMaxTotal
+		 *            the limit.
+		 * @return a reference to this object.
+		 */
+		public Settings setAsyncMaxTotal(int asyncMaxTotal) {
+			this.asyncMaxTotal = asyncMaxTotal;
+			return this;
+		}
+
+		/**
+		 * Maximum number of connections per host of the non-blocking client.
+		 * Default is 1000.
+		 *
+		 * @param asyncMaxPerRoute
+		 *            the limit.
+		 * @return a reference to this object.
+		 */
+		public Settings setAsyncMaxPerRoute(int asyncMaxPerRoute) {
+			this.asyncMaxPerRoute = asyncMaxPerRoute;
+			return this;
+		}
+
+		/**
+		 * Whether to ask for gzip/deflate compressed responses. Compressed
+		 * responses are always decoded. Default is true.
+		 *
+		 * @param contentCompression
+		 *            If compression is wanted true, else false.
+		 * @return a reference to this object.
+		 */
+		public Settings setContentCompression(boolean contentCompression) {
+			this.contentCompression = contentCompression;
+			return this;
+		}
+
+		public int getMaxTotal() {
+			return maxTotal;
+		}
+
+		public int getMaxPerRoute() {
+			return maxPerRoute;
+		}
+
+		public int getConnectTimeout() {
+			return connectTimeoutMillis;
+		}
+
+		public int getSocketTimeout() {
+			return socketTimeoutMillis;
+		}
+	}
+}
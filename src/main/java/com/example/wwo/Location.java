@@ -1,63 +1,465 @@
 package com.example.wwo;
 
-public class Location {
+import java.math.BigDecimal;
 
-	public static void validateLocation(LocationType type, String location)
+/**
+ * A validated location of a request. The validators are hand-written for each
+ * {@link LocationType} and allocate nothing, so a bulk input file can be
+ * checked with {@link #isValid(LocationType, String)} at the speed it is read.
+ * A latitude and longitude is parsed once into doubles.
+ *
+ * The canonical form identifies the place regardless of how it was typed, to
+ * be used as the <code>q</code> parameter when responses are cached: cities
+ * lower case with single spaces and ", " between parts, IP addresses without
+ * leading zeros, postal codes upper case with a space before the inward code,
+ * coordinates as the shortest decimals of the parsed doubles.
+ *
+ * Locations are immutable and equal if their type and canonical form are.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public final class Location {
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15 };
+
+	private final LocationType type;
+	private final String value;
+	private final String canonicalForm;
+	private final double latitude;
+	private final double longitude;
+
+	private Location(LocationType type, String value, String canonicalForm,
+			double latitude, double longitude) {
+		this.type = type;
+		this.value = value;
+		this.canonicalForm = canonicalForm;
+		this.latitude = latitude;
+		this.longitude = longitude;
+	}
+
+	/**
+	 * Validates a location.
+	 *
+	 * @param type
+	 *            the location type.
+	 * @param location
+	 *            the location.
+	 * @return the location.
+	 * @throws IllegalArgumentException
+	 *             if the location is not valid for the type.
+	 */
+	public static Location of(LocationType type, String location)
 			throws IllegalArgumentException {
+		validateLocation(type, location);
 		switch (type) {
 		case CITY:
-			if (!location.matches("^[a-zA-Z0-9, ]*$")) {
-				throw new IllegalArgumentException(
-						"With CITY type the location should contains only letters, numbers, comma and space.");
-			}
-			break;
+			return new Location(type, location, canonicalCity(location),
+					Double.NaN, Double.NaN);
 		case IP_ADDRESS:
-			if (!location
-					.matches("^(([01]?[0-9][0-9]?|2[0-4][0-9]|25[0-5])[.]([01]?[0-9][0-9]?|2[0-4][0-9]|25[0-5])[.]([01]?[0-9][0-9]?|2[0-4][0-9]|25[0-5])[.]([01]?[0-9][0-9]?|2[0-4][0-9]|25[0-5]))$")) {
-				throw new IllegalArgumentException(
-						"IP address need to match XXX.XXX.XXX.XXX where all XXX are between 0 and 255");
-			}
-			break;
+			return new Location(type, location, canonicalIpAddress(location),
+					Double.NaN, Double.NaN);
 		case UK_POSTAL_CODE:
-			if (!location
-					.matches("[A-Z]{1,2}[0-9R][0-9A-Z]? ?[0-9][A-Z-[CIKMOV]]{2}")) {
-				throw new IllegalArgumentException("Invalid UK postal code");
-			}
-			break;
 		case CANADA_POSTAL_CODE:
-			if (!location
-					.matches("[ABCEFGHJKLMNPRSTVXY][0-9][ABCEFGHJKLMNPRSTVWXYZ] ?[0-9][ABCEFGHJKLMNPRSTVWXYZ][0-9]")) {
-				throw new IllegalArgumentException("Invalid Canada postal code");
+			return new Location(type, location, canonicalPostalCode(location),
+					Double.NaN, Double.NaN);
+		case LAT_AND_LONG:
+			int comma = location.indexOf(',');
+			double latitude = parseDecimal(location, 0, comma);
+			int start = comma + 1;
+			while (isBlank(location.charAt(start))) {
+				start++;
 			}
-			break;
+			double longitude = parseDecimal(location, start, location.length());
+			return new Location(type, location, canonicalCoordinates(latitude,
+					longitude), latitude, longitude);
+		default:
+			return new Location(type, location, location, Double.NaN,
+					Double.NaN);
+		}
+	}
+
+	/**
+	 * A location of a latitude and longitude.
+	 *
+	 * @param latitude
+	 *            between -90 and 90.
+	 * @param longitude
+	 *            between -180 and 180.
+	 * @return the location.
+	 * @throws IllegalArgumentException
+	 *             if a coordinate is out of range.
+	 */
+	public static Location of(double latitude, double longitude)
+			throws IllegalArgumentException {
+		if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+			throw new IllegalArgumentException(
+					"Latitude must be between -90 and 90, longitude between -180 and 180.");
+		}
+		String value = canonicalCoordinates(latitude, longitude);
+		return new Location(LocationType.LAT_AND_LONG, value, value, latitude,
+				longitude);
+	}
+
+	/**
+	 * Whether a location is valid for the type, without allocating.
+	 *
+	 * @param type
+	 *            the location type.
+	 * @param location
+	 *            the location.
+	 * @return true if valid.
+	 */
+	public static boolean isValid(LocationType type, String location) {
+		if (location == null) {
+			return false;
+		}
+		switch (type) {
+		case CITY:
+			return isCity(location);
+		case IP_ADDRESS:
+			return isIpAddress(location);
+		case UK_POSTAL_CODE:
+			return isUkPostalCode(location);
+		case CANADA_POSTAL_CODE:
+			return isCanadaPostalCode(location);
 		case US_ZIPCODE:
-			if (!location.matches("^[0-9]{5}(?:-[0-9]{4})?$")) {
-				throw new IllegalArgumentException("Invalid US zip code");
-			}
-			break;
+			return isUsZipcode(location);
 		case LAT_AND_LONG:
-			if (!location
-					.matches("[-+]?([1-8]?[0-9](.[0-9]{3})?|90(.0+)?),[ \t\n\b\r\f]*[-+]?(180(.0+)?|((1[0-7][0-9])|([1-9]?[0-9]))(.[0-9]{3})?)")) {
-				throw new IllegalArgumentException("Invalid Canada postal code");
+			return isLatAndLong(location);
+		default:
+			return false;
+		}
+	}
+
+	public static void validateLocation(LocationType type, String location)
+			throws IllegalArgumentException {
+		if (isValid(type, location)) {
+			return;
+		}
+		switch (type) {
+		case CITY:
+			throw new IllegalArgumentException(
+					"With CITY type the location should contains only letters, numbers, comma and space.");
+		case IP_ADDRESS:
+			throw new IllegalArgumentException(
+					"IP address need to match XXX.XXX.XXX.XXX where all XXX are between 0 and 255");
+		case UK_POSTAL_CODE:
+			throw new IllegalArgumentException("Invalid UK postal code");
+		case CANADA_POSTAL_CODE:
+			throw new IllegalArgumentException("Invalid Canada postal code");
+		case US_ZIPCODE:
+			throw new IllegalArgumentException("Invalid US zip code");
+		default:
+			throw new IllegalArgumentException(
+					"Latitude and longitude need to match LAT,LONG where LAT is between -90 and 90 and LONG between -180 and 180");
+		}
+	}
+
+	public LocationType getType() {
+		return type;
+	}
+
+	/**
+	 * The location as it was given.
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * The location in the canonical form of its type.
+	 */
+	public String getCanonicalForm() {
+		return canonicalForm;
+	}
+
+	/**
+	 * The latitude of a {@link LocationType#LAT_AND_LONG} location, else NaN.
+	 */
+	public double getLatitude() {
+		return latitude;
+	}
+
+	/**
+	 * The longitude of a {@link LocationType#LAT_AND_LONG} location, else
+	 * NaN.
+	 */
+	public double getLongitude() {
+		return longitude;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Location)) {
+			return false;
+		}
+		Location other = (Location) obj;
+		return type == other.type && canonicalForm.equals(other.canonicalForm);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * type.hashCode() + canonicalForm.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return canonicalForm;
+	}
+
+	/**
+	 * Letters, numbers, comma and space.
+	 */
+	private static boolean isCity(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (!isLetter(c) && !isDigit(c) && c != ',' && c != ' ') {
+				return false;
 			}
-			break;
 		}
+		return true;
 	}
 
 	/**
-	 * UK: [A-Z]{1,2}[0-9R][0-9A-Z]? ?[0-9][A-Z-[CIKMOV]]{2} Canada:
-	 * [ABCEFGHJKLMNPRSTVXY][0-9][ABCEFGHJKLMNPRSTVWXYZ]
-	 * ?[0-9][ABCEFGHJKLMNPRSTVWXYZ][0-9] US: ^[0-9]{5}(?:-[0-9]{4})?$ lat and
-	 * long:
-	 * [-+]?([1-8]?\d(\.\d{3})?|90(\.0+)?),\s*[-+]?(180(\.0+)?|((1[0-7]\d)|
-	 * ([1-9]?\d))(\.\d{3})?)
+	 * Four numbers of one to three digits between 0 and 255, separated by
+	 * dots.
 	 */
+	private static boolean isIpAddress(String s) {
+		int i = 0;
+		for (int octet = 0; octet < 4; octet++) {
+			if (octet > 0) {
+				if (i == s.length() || s.charAt(i) != '.') {
+					return false;
+				}
+				i++;
+			}
+			int start = i;
+			int value = 0;
+			while (i < s.length() && i - start < 3 && isDigit(s.charAt(i))) {
+				value = value * 10 + s.charAt(i) - '0';
+				i++;
+			}
+			if (i == start || value > 255) {
+				return false;
+			}
+		}
+		return i == s.length();
+	}
+
+	/**
+	 * An outward code of one or two letters, a digit or R and an optional
+	 * digit or letter, an optional space and an inward code of a digit and
+	 * two letters other than C, I, K, M, O and V.
+	 */
+	private static boolean isUkPostalCode(String s) {
+		int length = s.length();
+		if (length < 5) {
+			return false;
+		}
+		int inward = length - 3;
+		if (!isDigit(s.charAt(inward)) || !isInwardLetter(s.charAt(inward + 1))
+				|| !isInwardLetter(s.charAt(inward + 2))) {
+			return false;
+		}
+		int outwardEnd = s.charAt(inward - 1) == ' ' ? inward - 1 : inward;
+		for (int letters = 1; letters <= 2; letters++) {
+			int i = letters;
+			if (i >= outwardEnd || !isUpper(s.charAt(letters - 1))) {
+				return false;
+			}
+			char c = s.charAt(i);
+			if (!isDigit(c) && c != 'R') {
+				continue;
+			}
+			int rest = outwardEnd - i - 1;
+			if (rest == 0
+					|| (rest == 1 && (isDigit(s.charAt(i + 1)) || isUpper(s
+							.charAt(i + 1))))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A letter, digit, letter, an optional space and a digit, letter, digit,
+	 * with the letters used by Canada Post.
+	 */
+	private static boolean isCanadaPostalCode(String s) {
+		int length = s.length();
+		int second = length == 7 && s.charAt(3) == ' ' ? 4 : 3;
+		if (length != second + 3) {
+			return false;
+		}
+		return "ABCEFGHJKLMNPRSTVXY".indexOf(s.charAt(0)) >= 0
+				&& isDigit(s.charAt(1)) && isCanadaLetter(s.charAt(2))
+				&& isDigit(s.charAt(second))
+				&& isCanadaLetter(s.charAt(second + 1))
+				&& isDigit(s.charAt(second + 2));
+	}
+
+	/**
+	 * Five digits, optionally followed by a dash and four digits.
+	 */
+	private static boolean isUsZipcode(String s) {
+		int length = s.length();
+		if (length != 5 && length != 10) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (i == 5 ? s.charAt(i) != '-' : !isDigit(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A latitude between -90 and 90, a comma, optional white space and a
+	 * longitude between -180 and 180, both decimal numbers.
+	 */
+	private static boolean isLatAndLong(String s) {
+		int comma = s.indexOf(',');
+		if (comma < 0) {
+			return false;
+		}
+		double latitude = parseDecimal(s, 0, comma);
+		if (!(latitude >= -90 && latitude <= 90)) {
+			return false;
+		}
+		int start = comma + 1;
+		while (start < s.length() && isBlank(s.charAt(start))) {
+			start++;
+		}
+		double longitude = parseDecimal(s, start, s.length());
+		return longitude >= -180 && longitude <= 180;
+	}
+
+	/**
+	 * Parses an optionally signed decimal number with at most 15 digits.
+	 *
+	 * @return the number, or NaN if malformed.
+	 */
+	private static double parseDecimal(String s, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+			negative = s.charAt(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int integerDigits = -1;
+		for (; i < to; i++) {
+			char c = s.charAt(i);
+			if (c == '.' && integerDigits < 0 && digits > 0) {
+				integerDigits = digits;
+			} else if (isDigit(c) && digits < 15) {
+				mantissa = mantissa * 10 + c - '0';
+				digits++;
+			} else {
+				return Double.NaN;
+			}
+		}
+		if (digits == 0 || integerDigits == digits) {
+			return Double.NaN;
+		}
+		double value = mantissa
+				/ POWERS_OF_TEN[integerDigits < 0 ? 0 : digits - integerDigits];
+		return negative ? -value : value;
+	}
+
+	private static String canonicalCoordinates(double latitude,
+			double longitude) {
+		return canonicalCoordinate(latitude) + ","
+				+ canonicalCoordinate(longitude);
+	}
+
+	/**
+	 * The shortest decimal of a coordinate, never in scientific notation,
+	 * which the API and {@link #isValid(LocationType, String)} do not accept.
+	 */
+	private static String canonicalCoordinate(double value) {
+		// adding 0.0 turns -0.0 into 0.0
+		String s = Double.toString(value + 0.0);
+		if (s.indexOf('E') < 0) {
+			return s;
+		}
+		return new BigDecimal(s).stripTrailingZeros().toPlainString();
+	}
+
+	private static String canonicalCity(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		boolean space = false;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == ' ') {
+				space = sb.length() > 0;
+			} else if (c == ',') {
+				sb.append(',');
+				space = true;
+			} else {
+				if (space) {
+					sb.append(' ');
+					space = false;
+				}
+				sb.append(Character.toLowerCase(c));
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String canonicalIpAddress(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (String octet : s.split("\\.")) {
+			if (sb.length() > 0) {
+				sb.append('.');
+			}
+			sb.append(Integer.parseInt(octet));
+		}
+		return sb.toString();
+	}
+
+	private static String canonicalPostalCode(String s) {
+		String compact = s.replace(" ", "");
+		int inward = compact.length() - 3;
+		return compact.substring(0, inward) + ' ' + compact.substring(inward);
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isUpper(char c) {
+		return c >= 'A' && c <= 'Z';
+	}
+
+	private static boolean isLetter(char c) {
+		return isUpper(c) || (c >= 'a' && c <= 'z');
+	}
+
+	private static boolean isInwardLetter(char c) {
+		return isUpper(c) && "CIKMOV".indexOf(c) < 0;
+	}
+
+	private static boolean isCanadaLetter(char c) {
+		return "ABCEFGHJKLMNPRSTVWXYZ".indexOf(c) >= 0;
+	}
+
+	private static boolean isBlank(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\b' || c == '\r'
+				|| c == '\f';
+	}
 
 	/**
 	 * Location type
-	 * 
+	 *
 	 * @author Fanni_Varga
-	 * 
+	 *
 	 */
 	public static enum LocationType {
 		/**
@@ -1,44 +1,1023 @@
 package com.example.wwo;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.RequestBuilder;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.util.EntityUtils;
+
+import com.example.wwo.cache.ResponseCache;
+import com.example.wwo.cache.SpatialKeys;
+import com.example.wwo.circuit.CircuitBreaker;
+import com.example.wwo.circuit.CircuitBreakerRegistry;
+import com.example.wwo.parser.DelimitedParser;
+import com.example.wwo.parser.JsonWeatherParser;
+import com.example.wwo.parser.Projection;
+import com.example.wwo.parser.RecordHandler;
+import com.example.wwo.parser.WeatherHandler;
+import com.example.wwo.parser.WeatherParser;
+import com.example.wwo.parser.XmlWeatherParser;
+import com.example.wwo.quota.QuotaGovernor;
+import com.example.wwo.quota.Tier;
 
 public class Request {
+	private static final WeatherParser JSON_PARSER = new JsonWeatherParser();
+	private static final WeatherParser XML_PARSER = new XmlWeatherParser();
+	private static final DelimitedParser CSV_PARSER = DelimitedParser.csv();
+	private static final DelimitedParser TAB_PARSER = DelimitedParser.tab();
+
 	private Map<String, String> requestParams;
 	private String baseUrl;
 	private String hostUrl;
 	private String scheme;
+	private HttpTransport transport;
+	private RequestTemplate template;
+	private String[] templateValues;
+	private String url;
 
 	public Request(Map<String, String> requestParams, String baseUrl,
 			String hostUrl, String scheme) {
+		this(requestParams, baseUrl, hostUrl, scheme, HttpTransport
+				.getDefault());
+	}
+
+	public Request(Map<String, String> requestParams, String baseUrl,
+			String hostUrl, String scheme, HttpTransport transport) {
 		this.requestParams = requestParams;
 		this.baseUrl = baseUrl;
 		this.hostUrl = hostUrl;
 		this.scheme = scheme;
+		this.transport = transport;
 	}
 
+	/**
+	 * A request of a template; the parameters are built only if asked for.
+	 */
+	Request(RequestTemplate template, String[] values) {
+		this.template = template;
+		this.templateValues = values;
+		this.baseUrl = template.getBaseUrl();
+		this.hostUrl = template.getHostUrl();
+		this.scheme = template.getScheme();
+		this.transport = template.getTransport();
+	}
+
+	/**
+	 * Executes the request on the shared transport. The returned stream must
+	 * be closed to give the connection back to the pool. When the transport
+	 * has a response cache, a request coalescer or a hedging retry policy, the
+	 * body is buffered and served through them.
+	 *
+	 * @return the response body.
+	 * @throws ClientProtocolException
+	 * @throws IOException
+	 */
 	public InputStream run() throws ClientProtocolException, IOException {
+		if (isBuffered()) {
+			return new ByteArrayInputStream(load());
+		}
+		RetryPolicy policy = transport.getRetryPolicy();
+		for (int attempt = 1;; attempt++) {
+			CircuitBreaker.Permit permit = acquire();
+			CloseableHttpResponse httpResponse;
+			try {
+				httpResponse = send();
+			} catch (IOException e) {
+				complete(permit, true);
+				retryAfterFailure(policy, attempt, e);
+				continue;
+			}
+			if (permit != null) {
+				permit.responded();
+			}
+			int status = httpResponse.getStatusLine().getStatusCode();
+			if (httpResponse.getEntity() == null) {
+				complete(permit, isServerError(status));
+				httpResponse.close();
+				throw new ClientProtocolException(
+						"Response contains no content: "
+								+ httpResponse.getStatusLine());
+			}
+			long delay = policy == null ? -1 : policy.getRetryDelay(attempt,
+					status, getRetryAfter(httpResponse));
+			if (delay < 0) {
+				InputStream content = httpResponse.getEntity().getContent();
+				return permit == null ? content : new PermitInputStream(
+						content, permit, isServerError(status));
+			}
+			complete(permit, isServerError(status));
+			httpResponse.close();
+			pause(delay);
+		}
+	}
+
+	/**
+	 * Executes the request and decodes the body into model objects while it
+	 * is read, passing them to the handler. The format of the request must be
+	 * XML, the default, or JSON.
+	 *
+	 * @param handler
+	 *            receives the decoded objects.
+	 * @throws IllegalStateException
+	 *             if the format of the request cannot be decoded.
+	 * @throws IOException
+	 */
+	public void parse(WeatherHandler handler) throws IllegalStateException,
+			IOException {
+		parse(handler, null);
+	}
+
+	/**
+	 * Executes the request and decodes the parts of the body in the
+	 * projection, skipping the rest. The format of the request must be XML,
+	 * the default, or JSON.
+	 *
+	 * @param handler
+	 *            receives the decoded objects.
+	 * @param projection
+	 *            the sections and fields to decode, or null for all.
+	 * @throws IllegalStateException
+	 *             if the format of the request cannot be decoded.
+	 * @throws IOException
+	 */
+	public void parse(WeatherHandler handler, Projection projection)
+			throws IllegalStateException, IOException {
+		String format = getParameter("format");
+		WeatherParser parser;
+		if (format == null || "xml".equals(format)) {
+			parser = projection == null ? XML_PARSER : new XmlWeatherParser(
+					projection);
+		} else if ("json".equals(format)) {
+			parser = projection == null ? JSON_PARSER : new JsonWeatherParser(
+					projection);
+		} else {
+			throw new IllegalStateException("Cannot decode the format "
+					+ format + ", request XML or JSON.");
+		}
+		parser.parse(run(), handler);
+	}
+
+	/**
+	 * Executes the request and tokenizes the body line by line while it is
+	 * read. The format of the request must be CSV or TAB.
+	 *
+	 * @param handler
+	 *            receives the lines.
+	 * @throws IllegalStateException
+	 *             if the format of the request is not CSV or TAB.
+	 * @throws IOException
+	 */
+	public void parse(RecordHandler handler) throws IllegalStateException,
+			IOException {
+		String format = getParameter("format");
+		DelimitedParser parser;
+		if ("csv".equals(format)) {
+			parser = CSV_PARSER;
+		} else if ("tab".equals(format)) {
+			parser = TAB_PARSER;
+		} else {
+			throw new IllegalStateException("Cannot tokenize the format "
+					+ format + ", request CSV or TAB.");
+		}
+		parser.parse(run(), handler);
+	}
+
+	/**
+	 * Executes the request and reads the whole body into memory. The
+	 * connection is given back to the pool before returning.
+	 *
+	 * @return the response body, a private copy of the caller.
+	 * @throws ClientProtocolException
+	 * @throws IOException
+	 */
+	public byte[] fetchBytes() throws ClientProtocolException, IOException {
+		if (isBuffered()) {
+			return load().clone();
+		}
+		return exchange().body;
+	}
+
+	/**
+	 * Executes the request and reads the whole body into memory, like
+	 * {@link #fetchBytes()}, but fails unless the status is 2xx, so the caller
+	 * can tell a response worth keeping from an error page. A response served
+	 * from the cache is always a success. The request is not coalesced with
+	 * identical concurrent ones, as they would share the body but not the
+	 * status.
+	 *
+	 * @return the response body, a private copy of the caller.
+	 * @throws HttpResponseException
+	 *             if the status of the response is not 2xx.
+	 * @throws IOException
+	 */
+	public byte[] fetchSuccessBytes() throws HttpResponseException,
+			IOException {
+		ResponseCache cache = transport.getResponseCache();
+		String key = cache == null ? null : getCacheKey();
+		if (cache != null) {
+			byte[] cached = cache.get(key);
+			if (cached != null) {
+				return cached.clone();
+			}
+		}
+		BufferedResponse response = loadUpstreamResponse(key);
+		if (!isSuccess(response.status)) {
+			throw new HttpResponseException(response.status, "HTTP "
+					+ response.status + " from " + hostUrl + baseUrl);
+		}
+		return cache == null ? response.body : response.body.clone();
+	}
+
+	/**
+	 * Executes the request on the non-blocking client of the transport without
+	 * a timeout.
+	 *
+	 * @return the future of the buffered response body.
+	 * @see #runAsync(long, TimeUnit)
+	 */
+	public CompletableFuture<InputStream> runAsync() {
+		return runAsync(0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Executes the request on the non-blocking client of the transport. No
+	 * thread is held while waiting for the response; the body is buffered in
+	 * memory when the future completes. Cancelling the future aborts the HTTP
+	 * exchange, unless other callers share it through the request coalescer.
+	 *
+	 * @param timeout
+	 *            the timeout of the whole call, 0 or less means no timeout.
+	 * @param unit
+	 *            the unit of the timeout.
+	 * @return the future of the buffered response body. It completes
+	 *         exceptionally with a {@link TimeoutException} when the timeout
+	 *         elapses first.
+	 */
+	public CompletableFuture<InputStream> runAsync(final long timeout,
+			final TimeUnit unit) {
+		final CompletableFuture<InputStream> result = new CompletableFuture<InputStream>();
+		final ResponseCache cache = transport.getResponseCache();
+		final String key = isBuffered() ? getCacheKey() : null;
+		if (cache != null) {
+			byte[] cached = cache.get(key);
+			if (cached != null) {
+				result.complete(new ByteArrayInputStream(cached));
+				return result;
+			}
+		}
+		RequestCoalescer coalescer = transport.getRequestCoalescer();
+		final CompletableFuture<byte[]> body;
+		if (coalescer != null) {
+			body = coalescer.executeAsync(key,
+					new Supplier<CompletableFuture<byte[]>>() {
+						@Override
+						public CompletableFuture<byte[]> get() {
+							return loadAsync(key);
+						}
+					});
+		} else {
+			body = loadAsync(key);
+		}
+		body.whenComplete(new BiConsumer<byte[], Throwable>() {
+			@Override
+			public void accept(byte[] bytes, Throwable failure) {
+				if (failure != null) {
+					result.completeExceptionally(failure);
+				} else {
+					result.complete(new ByteArrayInputStream(bytes));
+				}
+			}
+		});
+
+		final ScheduledFuture<?> timer;
+		if (timeout > 0) {
+			timer = transport.getScheduler().schedule(new Runnable() {
+				@Override
+				public void run() {
+					result.completeExceptionally(new TimeoutException(
+							"No response from " + hostUrl + baseUrl
+									+ " within " + timeout + " " + unit));
+				}
+			}, timeout, unit);
+		} else {
+			timer = null;
+		}
+		result.whenComplete(new BiConsumer<InputStream, Throwable>() {
+			@Override
+			public void accept(InputStream stream, Throwable failure) {
+				if (failure != null) {
+					body.cancel(true);
+				}
+				if (timer != null) {
+					timer.cancel(false);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Identifies the response of this request: the scheme, host and base URL
+	 * followed by the parameters sorted by name. Two requests with the same key
+	 * get the same response.
+	 *
+	 * @return the canonical key.
+	 */
+	public String getCanonicalKey() {
+		if (template != null) {
+			return getUrl();
+		}
+		return buildCanonicalKey(requestParams);
+	}
+
+	/**
+	 * The canonical key of this request with another value of a parameter,
+	 * e.g. of another location.
+	 *
+	 * @param name
+	 *            the name of the parameter.
+	 * @param value
+	 *            the value of the parameter.
+	 * @return the canonical key.
+	 */
+	public String getCanonicalKey(String name, String value) {
+		Map<String, String> params = new TreeMap<String, String>(
+				getRequestParams());
+		params.put(name, value);
+		return buildCanonicalKey(params);
+	}
+
+	private String buildCanonicalKey(Map<String, String> params) {
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(scheme).append("://").append(hostUrl).append(baseUrl);
+		char separator = '?';
+		SortedMap<String, String> sorted = params instanceof SortedMap
+				? (SortedMap<String, String>) params
+				: new TreeMap<String, String>(params);
+		for (Map.Entry<String, String> param : sorted.entrySet()) {
+			sb.append(separator).append(encode(param.getKey())).append('=')
+					.append(encode(param.getValue()));
+			separator = '&';
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The key of the response in the cache and the coalescer: the canonical
+	 * key, or the key of the weather point of a coordinate lookup once the
+	 * spatial keys have learned it.
+	 */
+	private String getCacheKey() {
+		SpatialKeys spatialKeys = transport.getSpatialKeys();
+		String key = spatialKeys == null ? null : spatialKeys.keyOf(this);
+		return key != null ? key : getCanonicalKey();
+	}
+
+	/**
+	 * The key to cache a successful response under, after the spatial keys
+	 * have learned the weather point it names.
+	 */
+	private String learnKey(String key, byte[] body) {
+		SpatialKeys spatialKeys = transport.getSpatialKeys();
+		String learned = spatialKeys == null ? null : spatialKeys.learn(this,
+				body);
+		return learned != null ? learned : key;
+	}
+
+	/**
+	 * Whether the body has to be buffered, because it is cached, shared
+	 * between coalesced callers or raced by hedged attempts.
+	 */
+	private boolean isBuffered() {
+		RetryPolicy policy = transport.getRetryPolicy();
+		return transport.getResponseCache() != null
+				|| transport.getRequestCoalescer() != null
+				|| (policy != null && policy.isHedging());
+	}
+
+	/**
+	 * Serves the body from the response cache, or executes the request once
+	 * for all concurrent identical callers and caches a successful response.
+	 * The returned array may be shared and must not be modified.
+	 */
+	private byte[] load() throws IOException {
+		ResponseCache cache = transport.getResponseCache();
+		final String key = getCacheKey();
+		if (cache != null) {
+			byte[] cached = cache.get(key);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		RequestCoalescer coalescer = transport.getRequestCoalescer();
+		if (coalescer == null) {
+			return loadUpstream(key);
+		}
+		return coalescer.execute(key, new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				return loadUpstream(key);
+			}
+		});
+	}
+
+	private byte[] loadUpstream(String key) throws IOException {
+		return loadUpstreamResponse(key).body;
+	}
+
+	/**
+	 * Executes the request and caches a successful response.
+	 */
+	private BufferedResponse loadUpstreamResponse(String key)
+			throws IOException {
+		BufferedResponse response = exchange();
+		ResponseCache cache = transport.getResponseCache();
+		if (isSuccess(response.status)) {
+			String learnedKey = learnKey(key, response.body);
+			if (cache != null) {
+				cache.put(learnedKey, response.body, cache.getPolicy()
+						.getTtlMillis(this));
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Executes the request on the non-blocking client and caches a successful
+	 * response. Cancelling the returned future aborts the exchange.
+	 */
+	private CompletableFuture<byte[]> loadAsync(final String key) {
+		final CompletableFuture<byte[]> result = new CompletableFuture<byte[]>();
+		final CompletableFuture<BufferedResponse> exchange = exchangeAsync();
+		exchange.whenComplete(new BiConsumer<BufferedResponse, Throwable>() {
+			@Override
+			public void accept(BufferedResponse response, Throwable failure) {
+				if (failure != null) {
+					result.completeExceptionally(failure);
+					return;
+				}
+				ResponseCache cache = transport.getResponseCache();
+				if (isSuccess(response.status)) {
+					String learnedKey = learnKey(key, response.body);
+					if (cache != null) {
+						cache.put(learnedKey, response.body, cache.getPolicy()
+								.getTtlMillis(Request.this));
+					}
+				}
+				result.complete(response.body);
+			}
+		});
+		result.whenComplete(new BiConsumer<byte[], Throwable>() {
+			@Override
+			public void accept(byte[] body, Throwable failure) {
+				if (failure != null) {
+					exchange.cancel(true);
+				}
+			}
+		});
+		return result;
+	}
+
+	private CompletableFuture<BufferedResponse> exchangeAsync() {
+		RetryPolicy policy = transport.getRetryPolicy();
+		if (policy == null) {
+			return attemptAsync();
+		}
+		return new RetryingExchange(policy).start();
+	}
+
+	/**
+	 * Starts the exchange on the non-blocking client once the quota governor
+	 * gives a permit; a permit reserved ahead delays the start on the
+	 * scheduler instead of blocking. An open circuit is checked before the
+	 * quota is used, the permit of the breaker is taken when the exchange
+	 * starts. Cancelling the returned future aborts the exchange.
+	 */
+	private CompletableFuture<BufferedResponse> attemptAsync() {
+		final CompletableFuture<BufferedResponse> result = new CompletableFuture<BufferedResponse>();
+		CircuitBreakerRegistry breakers = transport.getCircuitBreakers();
+		final CircuitBreaker breaker = breakers == null ? null : breakers
+				.forEndpoint(baseUrl);
+		long waitNanos = 0;
+		try {
+			if (breaker != null) {
+				breaker.check();
+			}
+			QuotaGovernor governor = transport.getQuotaGovernor();
+			if (governor != null) {
+				waitNanos = governor.reserve(getApiKey(), Tier.of(baseUrl));
+			}
+		} catch (IOException e) {
+			result.completeExceptionally(e);
+			return result;
+		}
+		if (waitNanos > 0) {
+			transport.getScheduler().schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (!result.isDone()) {
+						startExchangeAsync(breaker, result);
+					}
+				}
+			}, waitNanos, TimeUnit.NANOSECONDS);
+		} else {
+			startExchangeAsync(breaker, result);
+		}
+		return result;
+	}
+
+	private void startExchangeAsync(CircuitBreaker breaker,
+			final CompletableFuture<BufferedResponse> result) {
+		if (breaker != null) {
+			final CircuitBreaker.Permit permit;
+			try {
+				permit = breaker.acquire();
+			} catch (IOException e) {
+				result.completeExceptionally(e);
+				return;
+			}
+			result.whenComplete(new BiConsumer<BufferedResponse, Throwable>() {
+				@Override
+				public void accept(BufferedResponse response, Throwable failure) {
+					if (failure instanceof CancellationException) {
+						permit.release();
+					} else {
+						permit.complete(failure != null
+								|| isServerError(response.status));
+					}
+				}
+			});
+		}
+		final Future<HttpResponse> exchange;
+		try {
+			exchange = transport.getAsyncClient().execute(buildHost(),
+					buildHttpRequest(), new FutureCallback<HttpResponse>() {
+						@Override
+						public void completed(HttpResponse response) {
+							try {
+								transport.decode(response);
+								HttpEntity entity = response.getEntity();
+								if (entity == null) {
+									throw new ClientProtocolException(
+											"Response contains no content: "
+													+ response.getStatusLine());
+								}
+								result.complete(new BufferedResponse(response
+										.getStatusLine().getStatusCode(),
+										getRetryAfter(response), EntityUtils
+												.toByteArray(entity)));
+							} catch (IOException e) {
+								result.completeExceptionally(e);
+							}
+						}
+
+						@Override
+						public void failed(Exception ex) {
+							result.completeExceptionally(ex);
+						}
+
+						@Override
+						public void cancelled() {
+							result.cancel(false);
+						}
+					});
+		} catch (IOException e) {
+			result.completeExceptionally(e);
+			return;
+		}
+		result.whenComplete(new BiConsumer<BufferedResponse, Throwable>() {
+			@Override
+			public void accept(BufferedResponse response, Throwable failure) {
+				if (failure != null) {
+					exchange.cancel(true);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Executes the request on the blocking client, retrying it as the retry
+	 * policy allows. A hedging policy runs the attempts on the non-blocking
+	 * client, and this thread waits for the winner.
+	 */
+	private BufferedResponse exchange() throws IOException {
+		RetryPolicy policy = transport.getRetryPolicy();
+		if (policy != null && policy.isHedging()) {
+			return await(exchangeAsync());
+		}
+		for (int attempt = 1;; attempt++) {
+			long start = System.nanoTime();
+			BufferedResponse response;
+			try {
+				response = attempt();
+			} catch (IOException e) {
+				retryAfterFailure(policy, attempt, e);
+				continue;
+			}
+			if (policy == null) {
+				return response;
+			}
+			policy.recordLatency(baseUrl, millisSince(start));
+			long delay = policy.getRetryDelay(attempt, response.status,
+					response.retryAfter);
+			if (delay < 0) {
+				return response;
+			}
+			pause(delay);
+		}
+	}
+
+	private BufferedResponse attempt() throws IOException {
+		CircuitBreaker.Permit permit = acquire();
+		boolean failed = true;
+		try {
+			CloseableHttpResponse httpResponse = send();
+			try {
+				if (httpResponse.getEntity() == null) {
+					failed = isServerError(httpResponse.getStatusLine()
+							.getStatusCode());
+					throw new ClientProtocolException(
+							"Response contains no content: "
+									+ httpResponse.getStatusLine());
+				}
+				BufferedResponse response = new BufferedResponse(httpResponse
+						.getStatusLine().getStatusCode(),
+						getRetryAfter(httpResponse),
+						EntityUtils.toByteArray(httpResponse.getEntity()));
+				failed = isServerError(response.status);
+				return response;
+			} finally {
+				httpResponse.close();
+			}
+		} finally {
+			complete(permit, failed);
+		}
+	}
 
+	/**
+	 * Checks the circuit breaker of the endpoint, so an open circuit does not
+	 * use the quota, then waits for a permit of the quota governor and takes
+	 * the permit of the breaker last. The time spent waiting for the quota is
+	 * neither timed as a slow call nor holds a bulkhead slot.
+	 *
+	 * @return the permit of the breaker, or null if there are no breakers.
+	 */
+	private CircuitBreaker.Permit acquire() throws IOException {
+		CircuitBreakerRegistry breakers = transport.getCircuitBreakers();
+		CircuitBreaker breaker = breakers == null ? null : breakers
+				.forEndpoint(baseUrl);
+		if (breaker != null) {
+			breaker.check();
+		}
+		QuotaGovernor governor = transport.getQuotaGovernor();
+		if (governor != null) {
+			governor.acquire(getApiKey(), Tier.of(baseUrl));
+		}
+		return breaker == null ? null : breaker.acquire();
+	}
+
+	private CloseableHttpResponse send() throws IOException {
+		return transport.getClient().execute(buildHost(), buildHttpRequest());
+	}
+
+	private static void complete(CircuitBreaker.Permit permit, boolean failed) {
+		if (permit != null) {
+			permit.complete(failed);
+		}
+	}
+
+	/**
+	 * Waits before the next attempt after an error, or rethrows the error if
+	 * it is final.
+	 */
+	private static void retryAfterFailure(RetryPolicy policy, int attempt,
+			IOException failure) throws IOException {
+		long delay = policy == null ? -1 : policy.getRetryDelay(attempt,
+				failure);
+		if (delay < 0) {
+			throw failure;
+		}
+		pause(delay);
+	}
+
+	private static void pause(long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting to retry a request.");
+		}
+	}
+
+	private static BufferedResponse await(
+			CompletableFuture<BufferedResponse> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for a response.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private static String getRetryAfter(HttpResponse response) {
+		Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+		return header == null ? null : header.getValue();
+	}
+
+	private static long millisSince(long startNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+
+	private static boolean isSuccess(int status) {
+		return status >= 200 && status < 300;
+	}
+
+	private static boolean isServerError(int status) {
+		return status >= 500;
+	}
+
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(String.valueOf(value), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private HttpHost buildHost() {
+		return new HttpHost(hostUrl, -1, scheme);
+	}
+
+	private HttpRequest buildHttpRequest() {
+		if (template != null) {
+			return new HttpGet(getUrl().substring(template.getPathOffset()));
+		}
 		RequestBuilder requestBuilder = RequestBuilder.get().setUri(baseUrl);
 		for (String key : requestParams.keySet()) {
 			requestBuilder.addParameter(key, requestParams.get(key).toString());
 		}
-		HttpRequest request = requestBuilder.build();
-		HttpHost host = new HttpHost(hostUrl, -1, scheme);
-		CloseableHttpClient client = HttpClients.custom()
-				.disableCookieManagement().build();
+		return requestBuilder.build();
+	}
+
+	private String getUrl() {
+		if (url == null) {
+			url = template.url(templateValues);
+		}
+		return url;
+	}
+
+	private String getApiKey() {
+		return getParameter("key");
+	}
+
+	/**
+	 * The value of a parameter.
+	 *
+	 * @param name
+	 *            the name of the parameter.
+	 * @return the value, or null if not set.
+	 */
+	public String getParameter(String name) {
+		if (template != null) {
+			return template.getParameter(name, templateValues);
+		}
+		return requestParams.get(name);
+	}
+
+	public Map<String, String> getRequestParams() {
+		if (requestParams == null) {
+			requestParams = template.getParameters(templateValues);
+		}
+		return requestParams;
+	}
+
+	public String getBaseUrl() {
+		return baseUrl;
+	}
+
+	public String getHostUrl() {
+		return hostUrl;
+	}
+
+	public String getScheme() {
+		return scheme;
+	}
+
+	public HttpTransport getTransport() {
+		return transport;
+	}
+
+	private static class BufferedResponse {
+		final int status;
+		final String retryAfter;
+		final byte[] body;
+
+		BufferedResponse(int status, String retryAfter, byte[] body) {
+			this.status = status;
+			this.retryAfter = retryAfter;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * Response body stream holding the circuit breaker permit of its request
+	 * until closed or read to the end, as the connection is in use until then.
+	 * The latency of the request was taken when the headers arrived.
+	 */
+	private static class PermitInputStream extends FilterInputStream {
+		private final CircuitBreaker.Permit permit;
+		private final boolean failed;
+
+		PermitInputStream(InputStream in, CircuitBreaker.Permit permit,
+				boolean failed) {
+			super(in);
+			this.permit = permit;
+			this.failed = failed;
+		}
 
-		CloseableHttpResponse httpResponse = client.execute(host, request);
-		return httpResponse.getEntity().getContent();
+		@Override
+		public int read() throws IOException {
+			return completeOnEnd(super.read());
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return completeOnEnd(super.read(b, off, len));
+		}
+
+		private int completeOnEnd(int n) {
+			if (n == -1) {
+				permit.complete(failed);
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				permit.complete(failed);
+			}
+		}
+	}
+
+	/**
+	 * The attempts of one request on the non-blocking client: retries after
+	 * the backoff of the policy, and a hedged attempt when the running one is
+	 * slower than the hedge delay. The first final response wins and the other
+	 * attempts are cancelled. A failed attempt leaves the decision to the
+	 * attempts still running.
+	 */
+	private class RetryingExchange {
+		private final RetryPolicy policy;
+		private final CompletableFuture<BufferedResponse> result = new CompletableFuture<BufferedResponse>();
+		private final List<CompletableFuture<BufferedResponse>> running = new ArrayList<CompletableFuture<BufferedResponse>>();
+		private int attempts;
+
+		RetryingExchange(RetryPolicy policy) {
+			this.policy = policy;
+		}
+
+		CompletableFuture<BufferedResponse> start() {
+			result.whenComplete(new BiConsumer<BufferedResponse, Throwable>() {
+				@Override
+				public void accept(BufferedResponse response, Throwable failure) {
+					List<CompletableFuture<BufferedResponse>> losers;
+					synchronized (RetryingExchange.this) {
+						losers = new ArrayList<CompletableFuture<BufferedResponse>>(
+								running);
+						running.clear();
+					}
+					for (CompletableFuture<BufferedResponse> loser : losers) {
+						loser.cancel(true);
+					}
+				}
+			});
+			launch();
+			return result;
+		}
+
+		private void launch() {
+			final CompletableFuture<BufferedResponse> attempt;
+			final ScheduledFuture<?> hedge;
+			synchronized (this) {
+				// a hedge and a retry of the same attempt may both get here;
+				// the later one is dropped, the running attempt decides
+				if (result.isDone() || attempts >= policy.getMaxAttempts()) {
+					return;
+				}
+				attempts++;
+				attempt = attemptAsync();
+				running.add(attempt);
+				hedge = scheduleHedge(attempt);
+			}
+			final long start = System.nanoTime();
+			attempt.whenComplete(new BiConsumer<BufferedResponse, Throwable>() {
+				@Override
+				public void accept(BufferedResponse response, Throwable failure) {
+					if (hedge != null) {
+						hedge.cancel(false);
+					}
+					completed(attempt, response, failure, start);
+				}
+			});
+		}
+
+		private ScheduledFuture<?> scheduleHedge(
+				final CompletableFuture<BufferedResponse> attempt) {
+			long delay = policy.getHedgeDelay(baseUrl);
+			if (delay < 0 || attempts >= policy.getMaxAttempts()) {
+				return null;
+			}
+			return transport.getScheduler().schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (!attempt.isDone()) {
+						launch();
+					}
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+
+		private void completed(CompletableFuture<BufferedResponse> attempt,
+				BufferedResponse response, Throwable failure, long start) {
+			long delay;
+			synchronized (this) {
+				running.remove(attempt);
+				if (result.isDone()) {
+					return;
+				}
+				if (failure == null) {
+					policy.recordLatency(baseUrl, millisSince(start));
+					delay = policy.getRetryDelay(attempts, response.status,
+							response.retryAfter);
+				} else {
+					delay = policy.getRetryDelay(attempts, failure);
+				}
+				boolean success = failure == null && isSuccess(response.status);
+				if (!success && !running.isEmpty()) {
+					return;
+				}
+			}
+			if (delay < 0) {
+				if (failure == null) {
+					result.complete(response);
+				} else {
+					result.completeExceptionally(failure);
+				}
+				return;
+			}
+			transport.getScheduler().schedule(new Runnable() {
+				@Override
+				public void run() {
+					launch();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
 	}
 
 }
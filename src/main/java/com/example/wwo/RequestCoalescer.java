@@ -0,0 +1,161 @@
+package com.example.wwo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution of identical requests. While a request is in flight,
+ * concurrent calls with the same canonical key wait for it instead of sending
+ * their own, so a popular location produces one upstream exchange however many
+ * threads ask for it at the same moment. The buffered body is shared by the
+ * waiters and must be treated as read-only; {@link Request} hands every caller
+ * its own stream or copy of it.
+ *
+ * Attach it to a transport with
+ * {@link HttpTransport#setRequestCoalescer(RequestCoalescer)}.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class RequestCoalescer {
+	private final ConcurrentMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<String, CompletableFuture<byte[]>>();
+	private final AtomicLong executions = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Runs the loader, or waits for the identical call already in flight.
+	 *
+	 * @param key
+	 *            the canonical request key.
+	 * @param loader
+	 *            executes the request.
+	 * @return the body.
+	 * @throws IOException
+	 *             if the shared call failed.
+	 */
+	public byte[] execute(String key, Callable<byte[]> loader)
+			throws IOException {
+		CompletableFuture<byte[]> mine = new CompletableFuture<byte[]>();
+		CompletableFuture<byte[]> shared = inFlight.putIfAbsent(key, mine);
+		if (shared == null) {
+			executions.incrementAndGet();
+			try {
+				mine.complete(loader.call());
+			} catch (Exception e) {
+				mine.completeExceptionally(e);
+			} finally {
+				inFlight.remove(key, mine);
+			}
+			shared = mine;
+		} else {
+			coalesced.incrementAndGet();
+		}
+		try {
+			return shared.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for a coalesced request.");
+		} catch (CancellationException e) {
+			throw new InterruptedIOException("The coalesced request was cancelled.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Starts the loader, or joins the identical call already in flight. The
+	 * returned future is private to the caller: cancelling it or letting it
+	 * time out does not affect the other waiters.
+	 *
+	 * @param key
+	 *            the canonical request key.
+	 * @param loader
+	 *            starts the request.
+	 * @return the future of the body.
+	 */
+	public CompletableFuture<byte[]> executeAsync(final String key,
+			Supplier<CompletableFuture<byte[]>> loader) {
+		final CompletableFuture<byte[]> mine = new CompletableFuture<byte[]>();
+		CompletableFuture<byte[]> shared = inFlight.putIfAbsent(key, mine);
+		if (shared == null) {
+			executions.incrementAndGet();
+			CompletableFuture<byte[]> started;
+			try {
+				started = loader.get();
+			} catch (RuntimeException e) {
+				started = new CompletableFuture<byte[]>();
+				started.completeExceptionally(e);
+			}
+			started.whenComplete(new BiConsumer<byte[], Throwable>() {
+				@Override
+				public void accept(byte[] body, Throwable failure) {
+					inFlight.remove(key, mine);
+					if (failure != null) {
+						mine.completeExceptionally(failure);
+					} else {
+						mine.complete(body);
+					}
+				}
+			});
+			shared = mine;
+		} else {
+			coalesced.incrementAndGet();
+		}
+		final CompletableFuture<byte[]> waiter = new CompletableFuture<byte[]>();
+		shared.whenComplete(new BiConsumer<byte[], Throwable>() {
+			@Override
+			public void accept(byte[] body, Throwable failure) {
+				if (failure != null) {
+					waiter.completeExceptionally(failure);
+				} else {
+					waiter.complete(body);
+				}
+			}
+		});
+		return waiter;
+	}
+
+	/**
+	 * The number of requests currently in flight.
+	 *
+	 * @return the number of distinct keys being loaded.
+	 */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+
+	/**
+	 * The number of upstream exchanges started.
+	 *
+	 * @return the number of executions.
+	 */
+	public long getExecutionCount() {
+		return executions.get();
+	}
+
+	/**
+	 * The number of calls which joined an exchange already in flight.
+	 *
+	 * @return the number of coalesced calls.
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+}
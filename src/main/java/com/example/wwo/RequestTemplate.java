@@ -0,0 +1,244 @@
+package com.example.wwo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A request compiled once and executed many times with different values of a
+ * few parameters, e.g. the location of a bulk fetch. The parameters that never
+ * change, the API key, format and options among them, are URL-encoded into the
+ * query once; building a request only encodes the varying values into a
+ * reused buffer.
+ *
+ * <pre>
+ * RequestTemplate template = RequestTemplate.compile(new LocalWeather(
+ * 		PackageType.PREMIUM, key, LocationType.CITY, &quot;London&quot;, 5)
+ * 		.setFormat(Format.JSON).buildRequestAttributes(&quot;http&quot;), &quot;q&quot;);
+ * Request request = template.newRequest(&quot;Paris&quot;);
+ * </pre>
+ *
+ * The query has the parameters sorted by name, so it is also the canonical
+ * key of {@link Request#getCanonicalKey()}, and templated requests share cache
+ * entries with the others. Values passed to {@link #newRequest(String...)}
+ * are not validated. A template is immutable and thread-safe.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public final class RequestTemplate {
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	private final String scheme;
+	private final String hostUrl;
+	private final String baseUrl;
+	private final HttpTransport transport;
+	private final Map<String, String> fixedParams;
+	private final String[] varyingParams;
+	/**
+	 * The encoded query in order: chunks[i] comes before the value of
+	 * varyingParams[slots[i]], the last chunk after every value.
+	 */
+	private final String[] chunks;
+	private final int[] slots;
+	private final int fixedLength;
+
+	private RequestTemplate(Request prototype, String[] varyingParams) {
+		this.scheme = prototype.getScheme();
+		this.hostUrl = prototype.getHostUrl();
+		this.baseUrl = prototype.getBaseUrl();
+		this.transport = prototype.getTransport();
+		this.varyingParams = varyingParams.clone();
+		Map<String, String> sorted = new TreeMap<String, String>(
+				prototype.getRequestParams());
+		List<String> varying = Arrays.asList(this.varyingParams);
+		for (String name : varying) {
+			sorted.put(name, null);
+		}
+		List<String> chunkList = new ArrayList<String>();
+		List<Integer> slotList = new ArrayList<Integer>();
+		StringBuilder chunk = new StringBuilder(scheme).append("://")
+				.append(hostUrl).append(baseUrl);
+		char separator = '?';
+		for (Map.Entry<String, String> param : sorted.entrySet()) {
+			chunk.append(separator);
+			encode(param.getKey(), chunk);
+			chunk.append('=');
+			if (varying.contains(param.getKey())) {
+				chunkList.add(chunk.toString());
+				slotList.add(varying.indexOf(param.getKey()));
+				chunk.setLength(0);
+			} else {
+				encode(param.getValue(), chunk);
+			}
+			separator = '&';
+		}
+		chunkList.add(chunk.toString());
+		this.chunks = chunkList.toArray(new String[chunkList.size()]);
+		this.slots = new int[slotList.size()];
+		int length = 0;
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = slotList.get(i);
+		}
+		for (String c : chunks) {
+			length += c.length();
+		}
+		this.fixedLength = length;
+		for (String name : varying) {
+			sorted.remove(name);
+		}
+		this.fixedParams = sorted;
+	}
+
+	/**
+	 * Compiles the parameters of a request built by an endpoint class into a
+	 * template.
+	 *
+	 * @param prototype
+	 *            the request; its values of the varying parameters are
+	 *            ignored.
+	 * @param varyingParams
+	 *            the names of the parameters given to each request, e.g.
+	 *            <code>q</code> and <code>date</code>.
+	 * @return the template.
+	 * @throws IllegalArgumentException
+	 *             if a varying parameter is named twice.
+	 */
+	public static RequestTemplate compile(Request prototype,
+			String... varyingParams) throws IllegalArgumentException {
+		for (int i = 0; i < varyingParams.length; i++) {
+			for (int j = 0; j < i; j++) {
+				if (varyingParams[i].equals(varyingParams[j])) {
+					throw new IllegalArgumentException("The parameter "
+							+ varyingParams[i] + " is named twice.");
+				}
+			}
+		}
+		return new RequestTemplate(prototype, varyingParams);
+	}
+
+	/**
+	 * A request with the given values of the varying parameters.
+	 *
+	 * @param values
+	 *            the values, in the order of the names given to
+	 *            {@link #compile(Request, String...)}.
+	 * @return the request.
+	 * @throws IllegalArgumentException
+	 *             if the number of values is wrong or a value is null.
+	 */
+	public Request newRequest(String... values) throws IllegalArgumentException {
+		if (values.length != varyingParams.length) {
+			throw new IllegalArgumentException("Expected "
+					+ varyingParams.length + " values, got " + values.length
+					+ ".");
+		}
+		for (String value : values) {
+			if (value == null) {
+				throw new IllegalArgumentException(
+						"The values must not be null.");
+			}
+		}
+		return new Request(this, values.clone());
+	}
+
+	/**
+	 * The URL of a request, scheme, host and base URL followed by the sorted
+	 * query.
+	 */
+	String url(String[] values) {
+		StringBuilder sb = BUFFER.get();
+		sb.setLength(0);
+		sb.ensureCapacity(fixedLength + 16 * values.length);
+		for (int i = 0; i < slots.length; i++) {
+			sb.append(chunks[i]);
+			encode(values[slots[i]], sb);
+		}
+		sb.append(chunks[slots.length]);
+		return sb.toString();
+	}
+
+	/**
+	 * The offset of the path in the URLs built by {@link #url(String[])}.
+	 */
+	int getPathOffset() {
+		return scheme.length() + 3 + hostUrl.length();
+	}
+
+	String getParameter(String name, String[] values) {
+		for (int i = 0; i < varyingParams.length; i++) {
+			if (varyingParams[i].equals(name)) {
+				return values[i];
+			}
+		}
+		return fixedParams.get(name);
+	}
+
+	Map<String, String> getParameters(String[] values) {
+		Map<String, String> params = new TreeMap<String, String>(fixedParams);
+		for (int i = 0; i < varyingParams.length; i++) {
+			params.put(varyingParams[i], values[i]);
+		}
+		return params;
+	}
+
+	public String getScheme() {
+		return scheme;
+	}
+
+	public String getHostUrl() {
+		return hostUrl;
+	}
+
+	public String getBaseUrl() {
+		return baseUrl;
+	}
+
+	public HttpTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Appends a value encoded as {@link java.net.URLEncoder} does with UTF-8,
+	 * without creating a string when the value has nothing to escape.
+	 */
+	static void encode(String value, StringBuilder sb) {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+					|| (c >= '0' && c <= '9') || c == '.' || c == '-'
+					|| c == '*' || c == '_') {
+				sb.append(c);
+			} else if (c == ' ') {
+				sb.append('+');
+			} else if (c < 0x80) {
+				appendEscaped(c, sb);
+			} else {
+				int end = i + 1;
+				if (Character.isHighSurrogate(c) && end < length
+						&& Character.isLowSurrogate(value.charAt(end))) {
+					end++;
+				}
+				for (byte b : value.substring(i, end).getBytes(
+						StandardCharsets.UTF_8)) {
+					appendEscaped(b & 0xff, sb);
+				}
+				i = end - 1;
+			}
+		}
+	}
+
+	private static void appendEscaped(int b, StringBuilder sb) {
+		sb.append('%').append(HEX[b >> 4]).append(HEX[b & 0xf]);
+	}
+}
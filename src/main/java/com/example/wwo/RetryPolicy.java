@@ -0,0 +1,336 @@
+package com.example.wwo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLException;
+
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import com.example.wwo.circuit.BulkheadFullException;
+import com.example.wwo.circuit.CircuitOpenException;
+import com.example.wwo.quota.QuotaExceededException;
+
+/**
+ * Retries of failed requests and hedging of slow ones. Every request of the
+ * API is an idempotent GET, so it is safe to send it again.
+ *
+ * A request is retried after an I/O error, or when the response status is one
+ * of the retryable statuses (429 and 5xx gateway errors by default), waiting
+ * an exponentially growing backoff with full jitter between the attempts. A
+ * <code>Retry-After</code> header of the response replaces the backoff; if it
+ * asks for longer than {@link #setMaxRetryAfter(long)} the response is
+ * returned as is. When the attempts run out the last response is returned, or
+ * the last error thrown.
+ *
+ * With hedging on, a second attempt is sent when the first has not answered
+ * within the hedge delay, and the first response wins. The delay is either
+ * fixed, or a percentile of the recent latencies of the endpoint. Hedged
+ * attempts count towards the maximum attempts.
+ *
+ * Attach it to a transport with
+ * {@link HttpTransport#setRetryPolicy(RetryPolicy)}.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class RetryPolicy {
+	private static final int MIN_LATENCY_SAMPLES = 20;
+
+	private int maxAttempts = 3;
+	private long initialBackoffMillis = 100;
+	private long maxBackoffMillis = 5000;
+	private long maxRetryAfterMillis = 30000;
+	private Set<Integer> retryableStatuses = new HashSet<Integer>(
+			Arrays.asList(429, 500, 502, 503, 504));
+	private long hedgeDelayMillis = -1;
+	private double hedgePercentile = -1;
+	private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<String, LatencyWindow>();
+
+	/**
+	 * The number of attempts of a request, including the first one and the
+	 * hedged ones. Default is 3.
+	 *
+	 * @param maxAttempts
+	 *            the maximum attempts, at least 1.
+	 * @return a reference to this object.
+	 * @throws IllegalArgumentException
+	 *             if less than 1.
+	 */
+	public RetryPolicy setMaxAttempts(int maxAttempts)
+			throws IllegalArgumentException {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException(
+					"At least one attempt is needed.");
+		}
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	/**
+	 * The backoff before the first retry, doubled for every further retry up
+	 * to the maximum. The actual wait is a random time up to the backoff.
+	 * Default is 100 milliseconds up to 5 seconds.
+	 *
+	 * @param initialMillis
+	 *            the backoff before the first retry.
+	 * @param maxMillis
+	 *            the longest backoff.
+	 * @return a reference to this object.
+	 * @throws IllegalArgumentException
+	 *             if negative, or the maximum is less than the initial.
+	 */
+	public RetryPolicy setBackoff(long initialMillis, long maxMillis)
+			throws IllegalArgumentException {
+		if (initialMillis < 0 || maxMillis < initialMillis) {
+			throw new IllegalArgumentException("Invalid backoff: "
+					+ initialMillis + ".." + maxMillis);
+		}
+		this.initialBackoffMillis = initialMillis;
+		this.maxBackoffMillis = maxMillis;
+		return this;
+	}
+
+	/**
+	 * The longest <code>Retry-After</code> to wait for. Default is 30
+	 * seconds.
+	 *
+	 * @param maxRetryAfterMillis
+	 *            the longest wait in milliseconds.
+	 * @return a reference to this object.
+	 */
+	public RetryPolicy setMaxRetryAfter(long maxRetryAfterMillis) {
+		this.maxRetryAfterMillis = maxRetryAfterMillis;
+		return this;
+	}
+
+	/**
+	 * The response statuses to retry. Default is 429, 500, 502, 503 and 504.
+	 *
+	 * @param statuses
+	 *            the statuses.
+	 * @return a reference to this object.
+	 */
+	public RetryPolicy setRetryableStatuses(int... statuses) {
+		Set<Integer> set = new HashSet<Integer>();
+		for (int status : statuses) {
+			set.add(status);
+		}
+		this.retryableStatuses = set;
+		return this;
+	}
+
+	/**
+	 * Hedges requests without answer after a fixed delay.
+	 *
+	 * @param hedgeDelayMillis
+	 *            the delay in milliseconds, or a negative value to turn
+	 *            hedging off.
+	 * @return a reference to this object.
+	 */
+	public RetryPolicy setHedgeDelay(long hedgeDelayMillis) {
+		this.hedgeDelayMillis = hedgeDelayMillis;
+		this.hedgePercentile = -1;
+		return this;
+	}
+
+	/**
+	 * Hedges requests slower than a percentile of the recent latencies of
+	 * their endpoint, e.g. 0.95. Requests are not hedged until enough
+	 * latencies are known.
+	 *
+	 * @param percentile
+	 *            the percentile between 0 and 1.
+	 * @return a reference to this object.
+	 * @throws IllegalArgumentException
+	 *             if not between 0 and 1.
+	 */
+	public RetryPolicy setHedgePercentile(double percentile)
+			throws IllegalArgumentException {
+		if (!(percentile > 0 && percentile < 1)) {
+			throw new IllegalArgumentException(
+					"The percentile must be between 0 and 1: " + percentile);
+		}
+		this.hedgePercentile = percentile;
+		this.hedgeDelayMillis = -1;
+		return this;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Whether slow requests are hedged.
+	 *
+	 * @return true if hedging is on.
+	 */
+	public boolean isHedging() {
+		return hedgeDelayMillis >= 0 || hedgePercentile > 0;
+	}
+
+	/**
+	 * A percentile of the recent latencies of an endpoint.
+	 *
+	 * @param baseUrl
+	 *            the base URL of the endpoint.
+	 * @param percentile
+	 *            the percentile between 0 and 1.
+	 * @return the latency in milliseconds, or -1 if nothing is known yet.
+	 */
+	public long getLatencyPercentile(String baseUrl, double percentile) {
+		LatencyWindow window = latencies.get(baseUrl);
+		return window == null ? -1 : window.percentile(percentile, 1);
+	}
+
+	/**
+	 * The time to wait before the next attempt after a response.
+	 *
+	 * @param attempt
+	 *            the number of attempts made so far.
+	 * @param status
+	 *            the status of the response.
+	 * @param retryAfter
+	 *            the value of the <code>Retry-After</code> header, or null.
+	 * @return the delay in milliseconds, or -1 if the response is final.
+	 */
+	long getRetryDelay(int attempt, int status, String retryAfter) {
+		if (attempt >= maxAttempts || !retryableStatuses.contains(status)) {
+			return -1;
+		}
+		if (retryAfter != null) {
+			long delay = parseRetryAfter(retryAfter);
+			if (delay >= 0) {
+				return delay <= maxRetryAfterMillis ? delay : -1;
+			}
+		}
+		return backoff(attempt);
+	}
+
+	/**
+	 * The time to wait before the next attempt after an error.
+	 *
+	 * @param attempt
+	 *            the number of attempts made so far.
+	 * @param failure
+	 *            the error.
+	 * @return the delay in milliseconds, or -1 if the error is final.
+	 */
+	long getRetryDelay(int attempt, Throwable failure) {
+		if (attempt >= maxAttempts || !isRetryable(failure)) {
+			return -1;
+		}
+		return backoff(attempt);
+	}
+
+	/**
+	 * The time after which an attempt of the endpoint is hedged.
+	 *
+	 * @return the delay in milliseconds, or -1 if not hedged.
+	 */
+	long getHedgeDelay(String baseUrl) {
+		if (hedgeDelayMillis >= 0) {
+			return hedgeDelayMillis;
+		}
+		if (hedgePercentile > 0) {
+			LatencyWindow window = latencies.get(baseUrl);
+			if (window != null) {
+				return window.percentile(hedgePercentile, MIN_LATENCY_SAMPLES);
+			}
+		}
+		return -1;
+	}
+
+	void recordLatency(String baseUrl, long millis) {
+		LatencyWindow window = latencies.get(baseUrl);
+		if (window == null) {
+			LatencyWindow created = new LatencyWindow();
+			window = latencies.putIfAbsent(baseUrl, created);
+			if (window == null) {
+				window = created;
+			}
+		}
+		window.record(millis);
+	}
+
+	private long backoff(int attempt) {
+		long backoff = initialBackoffMillis << Math.min(attempt - 1, 30);
+		if (backoff > maxBackoffMillis || backoff < 0) {
+			backoff = maxBackoffMillis;
+		}
+		return ThreadLocalRandom.current().nextLong(backoff + 1);
+	}
+
+	private static boolean isRetryable(Throwable failure) {
+		if (!(failure instanceof IOException)
+				|| failure instanceof QuotaExceededException
+				|| failure instanceof CircuitOpenException
+				|| failure instanceof BulkheadFullException
+				|| failure instanceof UnknownHostException
+				|| failure instanceof SSLException) {
+			return false;
+		}
+		// an interrupt is not retried, but a timeout is
+		return !(failure instanceof InterruptedIOException)
+				|| failure instanceof SocketTimeoutException
+				|| failure instanceof ConnectTimeoutException;
+	}
+
+	/**
+	 * Parses delay-seconds or an HTTP date.
+	 */
+	private static long parseRetryAfter(String value) {
+		String trimmed = value.trim();
+		try {
+			return Math.max(0, Long.parseLong(trimmed) * 1000);
+		} catch (NumberFormatException e) {
+			Date date = DateUtils.parseDate(trimmed);
+			if (date == null) {
+				return -1;
+			}
+			return Math.max(0, date.getTime() - System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * The latest latencies of an endpoint. The percentiles are sorted out
+	 * again after every few new samples only.
+	 */
+	private static class LatencyWindow {
+		private static final int SIZE = 256;
+		private static final int RESORT_INTERVAL = 16;
+
+		private final long[] samples = new long[SIZE];
+		private long count;
+		private long[] sorted = new long[0];
+		private long sortedAt;
+
+		synchronized void record(long millis) {
+			samples[(int) (count % SIZE)] = millis;
+			count++;
+		}
+
+		synchronized long percentile(double percentile, int minSamples) {
+			if (count < minSamples || count == 0) {
+				return -1;
+			}
+			if (sorted.length == 0 || count - sortedAt >= RESORT_INTERVAL) {
+				sorted = Arrays.copyOf(samples, (int) Math.min(count, SIZE));
+				Arrays.sort(sorted);
+				sortedAt = count;
+			}
+			int index = (int) Math.ceil(percentile * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.example.wwo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte counters of the responses received on a transport: the bytes on the
+ * wire (compressed, as sent by the server) and the bytes after decoding.
+ * Bytes are counted as the response bodies are read.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class TransferMetrics {
+	private final AtomicLong responses = new AtomicLong();
+	private final AtomicLong compressedResponses = new AtomicLong();
+	private final AtomicLong wireBytes = new AtomicLong();
+	private final AtomicLong decodedBytes = new AtomicLong();
+
+	void responseReceived(boolean compressed) {
+		responses.incrementAndGet();
+		if (compressed) {
+			compressedResponses.incrementAndGet();
+		}
+	}
+
+	void wireBytesRead(long count) {
+		wireBytes.addAndGet(count);
+	}
+
+	void decodedBytesRead(long count) {
+		decodedBytes.addAndGet(count);
+	}
+
+	/**
+	 * The number of responses with a body.
+	 *
+	 * @return the number of responses.
+	 */
+	public long getResponseCount() {
+		return responses.get();
+	}
+
+	/**
+	 * The number of responses the server sent gzip or deflate encoded.
+	 *
+	 * @return the number of compressed responses.
+	 */
+	public long getCompressedResponseCount() {
+		return compressedResponses.get();
+	}
+
+	/**
+	 * The body bytes read from the network.
+	 *
+	 * @return the number of bytes on the wire.
+	 */
+	public long getWireBytes() {
+		return wireBytes.get();
+	}
+
+	/**
+	 * The body bytes handed to the callers after decompression.
+	 *
+	 * @return the number of decoded bytes.
+	 */
+	public long getDecodedBytes() {
+		return decodedBytes.get();
+	}
+
+	/**
+	 * Decoded bytes per byte on the wire.
+	 *
+	 * @return the compression ratio, 1 if nothing was read yet.
+	 */
+	public double getCompressionRatio() {
+		long wire = wireBytes.get();
+		return wire == 0 ? 1 : (double) decodedBytes.get() / wire;
+	}
+
+	@Override
+	public String toString() {
+		return "responses=" + getResponseCount() + ", compressed="
+				+ getCompressedResponseCount() + ", wireBytes="
+				+ getWireBytes() + ", decodedBytes=" + getDecodedBytes();
+	}
+}
@@ -0,0 +1,268 @@
+package com.example.wwo.batch;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.example.wwo.bulk.LocationQuery;
+
+/**
+ * The response of a {@link LocationBatch} request split back per location.
+ * The premium API returns one <code>area</code> element per requested location
+ * in request order; each of them is re-wrapped into a <code>data</code>
+ * element, so a per-location body looks like the response of a single
+ * location request. JSON and XML responses are supported and detected from
+ * the body.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class BatchResponse {
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory
+			.newInstance();
+	private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory
+			.newInstance();
+	private static final XMLEventFactory XML_EVENT_FACTORY = XMLEventFactory
+			.newInstance();
+
+	private final Map<LocationQuery, byte[]> bodies;
+
+	private BatchResponse(Map<LocationQuery, byte[]> bodies) {
+		this.bodies = Collections.unmodifiableMap(bodies);
+	}
+
+	/**
+	 * Splits a combined response. The stream is read to the end but not
+	 * closed.
+	 *
+	 * @param input
+	 *            the combined response body.
+	 * @param batch
+	 *            the batch the request was built from.
+	 * @return the per-location responses.
+	 * @throws IOException
+	 *             if the body cannot be parsed, or the number of areas does not
+	 *             match the batch.
+	 */
+	public static BatchResponse split(InputStream input, LocationBatch batch)
+			throws IOException {
+		BufferedInputStream in = new BufferedInputStream(input);
+		List<byte[]> areas;
+		if (firstSignificantByte(in) == '<') {
+			areas = splitXml(in);
+		} else {
+			areas = splitJson(in);
+		}
+		List<LocationQuery> queries = batch.getQueries();
+		if (areas.size() != queries.size()) {
+			throw new IOException("Expected " + queries.size()
+					+ " locations in the response, but got " + areas.size()
+					+ ".");
+		}
+		Map<LocationQuery, byte[]> bodies = new LinkedHashMap<LocationQuery, byte[]>();
+		for (int i = 0; i < queries.size(); i++) {
+			bodies.put(queries.get(i), areas.get(i));
+		}
+		return new BatchResponse(bodies);
+	}
+
+	/**
+	 * The response of one location.
+	 *
+	 * @param query
+	 *            the location.
+	 * @return the body, or null if the location was not in the batch.
+	 */
+	public byte[] getBody(LocationQuery query) {
+		return bodies.get(query);
+	}
+
+	/**
+	 * The response of one location as a stream.
+	 *
+	 * @param query
+	 *            the location.
+	 * @return the body stream, or null if the location was not in the batch.
+	 */
+	public InputStream openStream(LocationQuery query) {
+		byte[] body = bodies.get(query);
+		return body == null ? null : new ByteArrayInputStream(body);
+	}
+
+	/**
+	 * Every per-location response in request order.
+	 *
+	 * @return the bodies by location.
+	 */
+	public Map<LocationQuery, byte[]> getBodies() {
+		return bodies;
+	}
+
+	private static int firstSignificantByte(BufferedInputStream in)
+			throws IOException {
+		in.mark(256);
+		try {
+			int b;
+			while ((b = in.read()) != -1) {
+				// skip whitespace and a UTF-8 byte order mark
+				if (!Character.isWhitespace(b) && b != 0xEF && b != 0xBB
+						&& b != 0xBF) {
+					return b;
+				}
+			}
+			return -1;
+		} finally {
+			in.reset();
+		}
+	}
+
+	private static List<byte[]> splitJson(InputStream in) throws IOException {
+		JsonParser parser = JSON_FACTORY.createJsonParser(in);
+		List<byte[]> areas = new ArrayList<byte[]>();
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new IOException("Not a JSON object.");
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if (!"data".equals(name)) {
+				parser.skipChildren();
+			} else if (value == JsonToken.START_ARRAY) {
+				splitJsonArray(parser, areas);
+			} else if (value == JsonToken.START_OBJECT) {
+				splitJsonData(parser, areas);
+			} else {
+				throw new IOException("Unexpected data element: " + value);
+			}
+		}
+		parser.close();
+		return areas;
+	}
+
+	private static void splitJsonData(JsonParser parser, List<byte[]> areas)
+			throws IOException {
+		ByteArrayOutputStream rest = new ByteArrayOutputStream();
+		JsonGenerator restGenerator = JSON_FACTORY.createJsonGenerator(rest);
+		restGenerator.writeStartObject();
+		restGenerator.writeFieldName("data");
+		restGenerator.writeStartObject();
+		boolean foundArea = false;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if ("area".equals(name) && value == JsonToken.START_ARRAY) {
+				foundArea = true;
+				splitJsonArray(parser, areas);
+			} else {
+				restGenerator.writeFieldName(name);
+				restGenerator.copyCurrentStructure(parser);
+			}
+		}
+		restGenerator.writeEndObject();
+		restGenerator.writeEndObject();
+		restGenerator.close();
+		if (!foundArea) {
+			// a single location is answered without the area wrapper
+			areas.add(rest.toByteArray());
+		}
+	}
+
+	private static void splitJsonArray(JsonParser parser, List<byte[]> areas)
+			throws IOException {
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			JsonGenerator generator = JSON_FACTORY.createJsonGenerator(out);
+			generator.writeStartObject();
+			generator.writeFieldName("data");
+			generator.copyCurrentStructure(parser);
+			generator.writeEndObject();
+			generator.close();
+			areas.add(out.toByteArray());
+		}
+	}
+
+	private static List<byte[]> splitXml(InputStream in) throws IOException {
+		List<byte[]> areas = new ArrayList<byte[]>();
+		ByteArrayOutputStream rest = new ByteArrayOutputStream();
+		try {
+			XMLEventReader reader = XML_INPUT_FACTORY.createXMLEventReader(in);
+			XMLEventWriter restWriter = XML_OUTPUT_FACTORY
+					.createXMLEventWriter(rest, "UTF-8");
+			restWriter.add(XML_EVENT_FACTORY.createStartDocument("UTF-8"));
+			int depth = 0;
+			while (reader.hasNext()) {
+				XMLEvent event = reader.nextEvent();
+				if (event.isStartElement()) {
+					depth++;
+					if (depth == 2
+							&& "area".equals(event.asStartElement().getName()
+									.getLocalPart())) {
+						areas.add(copyXmlArea(reader));
+						depth--;
+						continue;
+					}
+				} else if (event.isEndElement()) {
+					depth--;
+				} else if (event.isStartDocument() || event.isEndDocument()) {
+					continue;
+				}
+				if (depth > 0 || event.isEndElement()) {
+					restWriter.add(event);
+				}
+			}
+			restWriter.add(XML_EVENT_FACTORY.createEndDocument());
+			restWriter.close();
+			reader.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Cannot parse the XML response.", e);
+		}
+		if (areas.isEmpty()) {
+			areas.add(rest.toByteArray());
+		}
+		return areas;
+	}
+
+	private static byte[] copyXmlArea(XMLEventReader reader)
+			throws XMLStreamException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLEventWriter writer = XML_OUTPUT_FACTORY.createXMLEventWriter(out,
+				"UTF-8");
+		writer.add(XML_EVENT_FACTORY.createStartDocument("UTF-8"));
+		writer.add(XML_EVENT_FACTORY.createStartElement("", "", "data"));
+		int depth = 1;
+		while (reader.hasNext()) {
+			XMLEvent event = reader.nextEvent();
+			if (event.isStartElement()) {
+				depth++;
+			} else if (event.isEndElement() && --depth == 0) {
+				break;
+			}
+			writer.add(event);
+		}
+		writer.add(XML_EVENT_FACTORY.createEndElement("", "", "data"));
+		writer.add(XML_EVENT_FACTORY.createEndDocument());
+		writer.close();
+		return out.toByteArray();
+	}
+}
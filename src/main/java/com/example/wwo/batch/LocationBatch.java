@@ -0,0 +1,142 @@
+package com.example.wwo.batch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.example.wwo.Location;
+import com.example.wwo.Location.LocationType;
+import com.example.wwo.bulk.LocationQuery;
+
+/**
+ * Validated locations sent together in one premium API call. The locations are
+ * joined with ';' into the <code>q</code> parameter, and the combined response
+ * is split back per location by {@link BatchResponse}.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class LocationBatch {
+	/**
+	 * The maximum number of locations the premium API accepts in one request.
+	 */
+	public static final int MAX_SIZE = 50;
+
+	private final List<LocationQuery> queries;
+
+	/**
+	 * Creates a batch. Every location is validated, duplicates are sent once.
+	 *
+	 * @param queries
+	 *            the locations.
+	 * @throws IllegalArgumentException
+	 *             if a location is not valid, contains ';', or there are no or
+	 *             more than {@link #MAX_SIZE} distinct locations.
+	 */
+	public LocationBatch(Collection<LocationQuery> queries)
+			throws IllegalArgumentException {
+		Set<LocationQuery> distinct = new LinkedHashSet<LocationQuery>(queries);
+		if (distinct.isEmpty()) {
+			throw new IllegalArgumentException(
+					"The batch must contain at least one location.");
+		}
+		if (distinct.size() > MAX_SIZE) {
+			throw new IllegalArgumentException("The batch can contain at most "
+					+ MAX_SIZE + " locations.");
+		}
+		for (LocationQuery query : distinct) {
+			Location.validateLocation(query.getLocationType(),
+					query.getLocation());
+			if (query.getLocation().indexOf(';') >= 0) {
+				throw new IllegalArgumentException(
+						"The location must not contain ';': "
+								+ query.getLocation());
+			}
+		}
+		this.queries = Collections
+				.unmodifiableList(new ArrayList<LocationQuery>(distinct));
+	}
+
+	/**
+	 * Creates a batch of locations of the same type.
+	 *
+	 * @param locationType
+	 *            the location type.
+	 * @param locations
+	 *            the locations.
+	 * @return the batch.
+	 * @throws IllegalArgumentException
+	 *             if the batch is not valid.
+	 */
+	public static LocationBatch of(LocationType locationType,
+			String... locations) throws IllegalArgumentException {
+		List<LocationQuery> queries = new ArrayList<LocationQuery>(
+				locations.length);
+		for (String location : locations) {
+			queries.add(new LocationQuery(locationType, location));
+		}
+		return new LocationBatch(queries);
+	}
+
+	/**
+	 * Splits any number of locations into batches of at most
+	 * <code>batchSize</code> locations.
+	 *
+	 * @param queries
+	 *            the locations.
+	 * @param batchSize
+	 *            the number of locations per batch.
+	 * @return the batches.
+	 * @throws IllegalArgumentException
+	 *             if batchSize is not between 1 and {@link #MAX_SIZE} or a
+	 *             location is not valid.
+	 */
+	public static List<LocationBatch> partition(
+			Collection<LocationQuery> queries, int batchSize)
+			throws IllegalArgumentException {
+		if (batchSize < 1 || batchSize > MAX_SIZE) {
+			throw new IllegalArgumentException(
+					"The batch size must be between 1 and " + MAX_SIZE + ".");
+		}
+		List<LocationQuery> distinct = new ArrayList<LocationQuery>(
+				new LinkedHashSet<LocationQuery>(queries));
+		List<LocationBatch> batches = new ArrayList<LocationBatch>();
+		for (int from = 0; from < distinct.size(); from += batchSize) {
+			int to = Math.min(from + batchSize, distinct.size());
+			batches.add(new LocationBatch(distinct.subList(from, to)));
+		}
+		return batches;
+	}
+
+	/**
+	 * The value of the <code>q</code> parameter.
+	 *
+	 * @return the locations joined with ';'.
+	 */
+	public String toQuery() {
+		StringBuilder sb = new StringBuilder();
+		for (LocationQuery query : queries) {
+			if (sb.length() > 0) {
+				sb.append(';');
+			}
+			sb.append(query.getLocation());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The locations in request order.
+	 *
+	 * @return the locations.
+	 */
+	public List<LocationQuery> getQueries() {
+		return queries;
+	}
+
+	public int size() {
+		return queries.size();
+	}
+}
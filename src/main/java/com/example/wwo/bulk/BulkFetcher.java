@@ -0,0 +1,331 @@
+package com.example.wwo.bulk;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.wwo.Request;
+
+/**
+ * Fans out the requests of many locations over a bounded executor and streams
+ * the results back in completion order. A failing location never stops the
+ * batch, it is returned as a failed {@link BulkResult}; so is a response whose
+ * status is not 2xx.
+ *
+ * <pre>
+ * BulkFetcher fetcher = new BulkFetcher(32);
+ * BulkFetch fetch = fetcher.fetch(queries, factory);
+ * while (fetch.hasNext()) {
+ * 	BulkResult result = fetch.next();
+ * }
+ * </pre>
+ *
+ * At most <code>parallelism</code> items are outstanding at any time (running
+ * or completed but not yet consumed), so a slow consumer slows the batch down
+ * instead of buffering all bodies in memory.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class BulkFetcher implements Closeable {
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(BulkFetcher.class);
+	/**
+	 * Wakes up the consumer of a closed fetch.
+	 */
+	private static final BulkResult CLOSED = new BulkResult(null, null, null, 0);
+
+	private final int parallelism;
+	private final ExecutorService executor;
+	private final boolean virtualThreads;
+	private final Set<BulkFetch> fetches = Collections
+			.newSetFromMap(new ConcurrentHashMap<BulkFetch, Boolean>());
+
+	/**
+	 * Creates a fetcher running on a fixed pool of platform threads.
+	 *
+	 * @param parallelism
+	 *            the maximum number of concurrent requests.
+	 */
+	public BulkFetcher(int parallelism) {
+		this(parallelism, false);
+	}
+
+	/**
+	 * Creates a fetcher.
+	 *
+	 * @param parallelism
+	 *            the maximum number of concurrent requests.
+	 * @param virtualThreads
+	 *            run each request on its own virtual thread. Needs a Java 21+
+	 *            runtime, on older runtimes a fixed pool of platform threads is
+	 *            used instead.
+	 * @throws IllegalArgumentException
+	 *             if parallelism is less than 1.
+	 */
+	public BulkFetcher(int parallelism, boolean virtualThreads)
+			throws IllegalArgumentException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"The parallelism must be at least 1.");
+		}
+		this.parallelism = parallelism;
+		ExecutorService virtual = virtualThreads ? newVirtualThreadExecutor()
+				: null;
+		if (virtualThreads && virtual == null) {
+			LOGGER.warn("Virtual threads are not available on this runtime, using a fixed thread pool.");
+		}
+		this.virtualThreads = virtual != null;
+		this.executor = virtual != null ? virtual : Executors.newFixedThreadPool(
+				parallelism, new WorkerThreadFactory());
+	}
+
+	/**
+	 * Starts fetching the given locations. Requests are built by the factory on
+	 * the worker threads, so validation errors are reported per item as well.
+	 *
+	 * @param queries
+	 *            the locations to fetch.
+	 * @param factory
+	 *            builds the request of one location.
+	 * @return the results in completion order.
+	 */
+	public BulkFetch fetch(Collection<LocationQuery> queries,
+			RequestFactory factory) {
+		BulkFetch fetch = new BulkFetch(new ArrayList<LocationQuery>(queries),
+				factory);
+		fetches.add(fetch);
+		fetch.start();
+		return fetch;
+	}
+
+	/**
+	 * The maximum number of concurrent requests.
+	 *
+	 * @return the parallelism.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Whether the requests run on virtual threads.
+	 *
+	 * @return true if virtual threads are used, else false.
+	 */
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Stops the worker threads. Running fetches are closed.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		for (BulkFetch fetch : fetches) {
+			fetch.close();
+		}
+	}
+
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+		private final int poolNumber = POOL_NUMBER.incrementAndGet();
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "wwo-bulk-" + poolNumber + "-"
+					+ threadNumber.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 * A running bulk fetch. Iterating blocks until the next result completes.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public class BulkFetch implements Iterator<BulkResult>, Closeable {
+		private final List<LocationQuery> queries;
+		private final RequestFactory factory;
+		private final BlockingQueue<BulkResult> completed;
+		private final Semaphore outstanding;
+		private final List<Future<?>> futures;
+		private final Thread feeder;
+		private volatile boolean closed;
+		private int consumed;
+
+		BulkFetch(List<LocationQuery> queries, RequestFactory factory) {
+			this.queries = queries;
+			this.factory = factory;
+			this.completed = new LinkedBlockingQueue<BulkResult>();
+			this.outstanding = new Semaphore(parallelism);
+			this.futures = new ArrayList<Future<?>>(queries.size());
+			this.feeder = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					feed();
+				}
+			}, "wwo-bulk-feeder");
+			feeder.setDaemon(true);
+		}
+
+		void start() {
+			feeder.start();
+		}
+
+		private void feed() {
+			for (final LocationQuery query : queries) {
+				try {
+					outstanding.acquire();
+				} catch (InterruptedException e) {
+					return;
+				}
+				synchronized (futures) {
+					if (closed) {
+						return;
+					}
+					try {
+						futures.add(executor.submit(new Runnable() {
+							@Override
+							public void run() {
+								completed.add(execute(query));
+							}
+						}));
+					} catch (RejectedExecutionException e) {
+						LOGGER.warn(
+								"The fetcher is closed, stopping the fetch after {} of {} locations.",
+								futures.size(), queries.size());
+						close();
+						return;
+					}
+				}
+			}
+		}
+
+		private BulkResult execute(LocationQuery query) {
+			long start = System.currentTimeMillis();
+			try {
+				Request request = factory.build(query.getLocationType(),
+						query.getLocation());
+				byte[] body = request.fetchSuccessBytes();
+				return new BulkResult(query, body, null,
+						System.currentTimeMillis() - start);
+			} catch (Exception e) {
+				return new BulkResult(query, null, e,
+						System.currentTimeMillis() - start);
+			}
+		}
+
+		/**
+		 * The number of locations in this fetch.
+		 *
+		 * @return the size of the batch.
+		 */
+		public int size() {
+			return queries.size();
+		}
+
+		/**
+		 * Whether another result will be returned. False once the fetch or
+		 * the fetcher is closed.
+		 */
+		@Override
+		public boolean hasNext() {
+			return !closed && consumed < queries.size();
+		}
+
+		/**
+		 * Waits for the next completed item.
+		 *
+		 * @throws NoSuchElementException
+		 *             if all results were returned.
+		 * @throws IllegalStateException
+		 *             if the fetch is closed, also while waiting, or the
+		 *             waiting thread is interrupted.
+		 */
+		@Override
+		public BulkResult next() {
+			if (closed) {
+				throw new IllegalStateException("The fetch is closed.");
+			}
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			BulkResult result;
+			try {
+				result = completed.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(
+						"Interrupted while waiting for the next result.", e);
+			}
+			if (result == CLOSED) {
+				throw new IllegalStateException("The fetch is closed.");
+			}
+			consumed++;
+			outstanding.release();
+			if (consumed == queries.size()) {
+				fetches.remove(this);
+			}
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Stops submitting new items and cancels the running ones. A thread
+		 * waiting in {@link #next()} is woken up.
+		 */
+		@Override
+		public void close() {
+			synchronized (futures) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				for (Future<?> future : futures) {
+					future.cancel(true);
+				}
+			}
+			feeder.interrupt();
+			completed.add(CLOSED);
+			fetches.remove(this);
+		}
+	}
+}
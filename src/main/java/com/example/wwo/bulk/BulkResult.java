@@ -0,0 +1,80 @@
+package com.example.wwo.bulk;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Outcome of one item of a bulk fetch: either the buffered response body or
+ * the failure of that single item.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class BulkResult {
+	private final LocationQuery query;
+	private final byte[] body;
+	private final Throwable failure;
+	private final long elapsedMillis;
+
+	BulkResult(LocationQuery query, byte[] body, Throwable failure,
+			long elapsedMillis) {
+		this.query = query;
+		this.body = body;
+		this.failure = failure;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * The location this result belongs to.
+	 *
+	 * @return the query.
+	 */
+	public LocationQuery getQuery() {
+		return query;
+	}
+
+	/**
+	 * Whether the request of this item succeeded.
+	 *
+	 * @return true if the body is available, false if it failed.
+	 */
+	public boolean isSuccess() {
+		return failure == null;
+	}
+
+	/**
+	 * The buffered response body.
+	 *
+	 * @return the body, or null if the item failed.
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * The response body as a stream.
+	 *
+	 * @return the body stream, or null if the item failed.
+	 */
+	public InputStream openStream() {
+		return body == null ? null : new ByteArrayInputStream(body);
+	}
+
+	/**
+	 * Why the item failed.
+	 *
+	 * @return the failure, or null if the item succeeded.
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Wall clock time spent on this item, including building the request.
+	 *
+	 * @return the elapsed time in milliseconds.
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+}
@@ -0,0 +1,56 @@
+package com.example.wwo.bulk;
+
+import com.example.wwo.Location.LocationType;
+
+/**
+ * A location and its type, one item of a bulk fetch.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class LocationQuery {
+	private final LocationType locationType;
+	private final String location;
+
+	/**
+	 * @param locationType
+	 *            the location type.
+	 * @param location
+	 *            the location.
+	 */
+	public LocationQuery(LocationType locationType, String location) {
+		this.locationType = locationType;
+		this.location = location;
+	}
+
+	public LocationType getLocationType() {
+		return locationType;
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * locationType.hashCode() + location.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof LocationQuery)) {
+			return false;
+		}
+		LocationQuery other = (LocationQuery) obj;
+		return locationType == other.locationType
+				&& location.equals(other.location);
+	}
+
+	@Override
+	public String toString() {
+		return locationType + ":" + location;
+	}
+}
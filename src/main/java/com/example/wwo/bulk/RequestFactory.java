@@ -0,0 +1,40 @@
+package com.example.wwo.bulk;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+import com.example.wwo.Location.LocationType;
+import com.example.wwo.Request;
+
+/**
+ * Endpoint template of a bulk fetch: builds the request of one location, for
+ * example
+ *
+ * <pre>
+ * new LocalWeather(PackageType.PREMIUM, key, type, location, 5).setFormat(
+ * 		Format.JSON).buildRequestAttributes(&quot;http&quot;)
+ * </pre>
+ *
+ * Implementations are called concurrently from the worker threads.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public interface RequestFactory {
+
+	/**
+	 * Builds the request for one location.
+	 *
+	 * @param locationType
+	 *            the location type.
+	 * @param location
+	 *            the location.
+	 * @return the request.
+	 * @throws IllegalArgumentException
+	 *             if location is not valid.
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	Request build(LocationType locationType, String location)
+			throws IllegalArgumentException, IOException, URISyntaxException;
+}
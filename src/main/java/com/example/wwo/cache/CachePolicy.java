@@ -0,0 +1,148 @@
+package com.example.wwo.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import com.example.wwo.Request;
+
+/**
+ * Decides how long the response of a request may be reused. The time to live
+ * depends on the endpoint: current conditions change within minutes, search
+ * and time zone results within days, and past weather of a date which has
+ * already passed never changes.
+ *
+ * Endpoints are matched on the last segment of the base URL, e.g.
+ * <code>weather.ashx</code>, so free and premium requests share a setting.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class CachePolicy {
+	/**
+	 * Time to live of responses that are kept until evicted.
+	 */
+	public static final long FOREVER = Long.MAX_VALUE;
+
+	private static final String PAST_WEATHER = "past-weather.ashx";
+
+	private final Map<String, Long> ttlByEndpoint = new LinkedHashMap<String, Long>();
+	private long defaultTtlMillis = 0;
+	private long currentPastWeatherTtlMillis = TimeUnit.HOURS.toMillis(1);
+
+	/**
+	 * Creates a policy with the default time to live of every endpoint.
+	 */
+	public CachePolicy() {
+		ttlByEndpoint.put("weather.ashx", TimeUnit.MINUTES.toMillis(5));
+		ttlByEndpoint.put("marine.ashx", TimeUnit.MINUTES.toMillis(30));
+		ttlByEndpoint.put("ski.ashx", TimeUnit.MINUTES.toMillis(30));
+		ttlByEndpoint.put("search.ashx", TimeUnit.DAYS.toMillis(7));
+		ttlByEndpoint.put("tz.ashx", TimeUnit.DAYS.toMillis(1));
+	}
+
+	/**
+	 * Sets the time to live of an endpoint. 0 disables caching for it.
+	 *
+	 * @param endpoint
+	 *            the last segment of the base URL, e.g. "weather.ashx".
+	 * @param ttl
+	 *            the time to live.
+	 * @param unit
+	 *            the unit of ttl.
+	 * @return a reference to this object.
+	 */
+	public CachePolicy setTtl(String endpoint, long ttl, TimeUnit unit) {
+		ttlByEndpoint.put(endpoint, unit.toMillis(ttl));
+		return this;
+	}
+
+	/**
+	 * Sets the time to live of endpoints without own setting. Default is 0
+	 * (not cached).
+	 *
+	 * @param ttl
+	 *            the time to live.
+	 * @param unit
+	 *            the unit of ttl.
+	 * @return a reference to this object.
+	 */
+	public CachePolicy setDefaultTtl(long ttl, TimeUnit unit) {
+		this.defaultTtlMillis = unit.toMillis(ttl);
+		return this;
+	}
+
+	/**
+	 * Sets the time to live of past weather responses which include today, as
+	 * those can still change. Default is 1 hour. Responses of past dates are
+	 * always kept {@link #FOREVER}.
+	 *
+	 * @param ttl
+	 *            the time to live.
+	 * @param unit
+	 *            the unit of ttl.
+	 * @return a reference to this object.
+	 */
+	public CachePolicy setCurrentPastWeatherTtl(long ttl, TimeUnit unit) {
+		this.currentPastWeatherTtlMillis = unit.toMillis(ttl);
+		return this;
+	}
+
+	/**
+	 * The time to live of the response of a request.
+	 *
+	 * @param request
+	 *            the request.
+	 * @return the time to live in milliseconds, 0 if it must not be cached, or
+	 *         {@link #FOREVER}.
+	 */
+	public long getTtlMillis(Request request) {
+		String endpoint = endpointOf(request.getBaseUrl());
+		if (PAST_WEATHER.equals(endpoint)) {
+			return isPast(request.getRequestParams())
+					? FOREVER : currentPastWeatherTtlMillis;
+		}
+		Long ttl = ttlByEndpoint.get(endpoint);
+		return ttl == null ? defaultTtlMillis : ttl.longValue();
+	}
+
+	private static String endpointOf(String baseUrl) {
+		return baseUrl.substring(baseUrl.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * Whether every requested date of a past weather request is before today
+	 * in every time zone, so the observations are final.
+	 *
+	 * @param params
+	 *            the request parameters.
+	 * @return true if the response can never change, else false.
+	 */
+	public static boolean isPast(Map<String, String> params) {
+		LocalDate lastFinal = getLastFinalDate();
+		String date = params.get("date");
+		String endDate = params.get("enddate");
+		try {
+			return date != null
+					&& !LocalDate.parse(date).isAfter(lastFinal)
+					&& (endDate == null || !LocalDate.parse(endDate).isAfter(
+							lastFinal));
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * The last date which has passed in every time zone, the last one whose
+	 * observations are final.
+	 *
+	 * @return the date.
+	 */
+	public static LocalDate getLastFinalDate() {
+		// UTC-12 is the last zone to finish a day, its yesterday is final
+		return LocalDate.now(DateTimeZone.forOffsetHours(-12)).minusDays(1);
+	}
+}
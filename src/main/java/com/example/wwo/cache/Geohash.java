@@ -0,0 +1,81 @@
+package com.example.wwo.cache;
+
+/**
+ * Geohash encoding of coordinates: the cell of a given number of base 32
+ * characters containing a point. Each character halves the cell five times,
+ * alternately in longitude and latitude; 5 characters are a cell of about
+ * 4.9 x 4.9 km, 6 of about 1.2 x 0.6 km, 7 of about 150 x 150 m.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public final class Geohash {
+	/**
+	 * The longest hash, cells of a few centimetres.
+	 */
+	public static final int MAX_PRECISION = 12;
+
+	private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz"
+			.toCharArray();
+
+	private Geohash() {
+	}
+
+	/**
+	 * The cell containing a point.
+	 *
+	 * @param latitude
+	 *            between -90 and 90.
+	 * @param longitude
+	 *            between -180 and 180.
+	 * @param precision
+	 *            the number of characters, between 1 and
+	 *            {@link #MAX_PRECISION}.
+	 * @return the geohash of the cell.
+	 * @throws IllegalArgumentException
+	 *             if a coordinate or the precision is out of range.
+	 */
+	public static String encode(double latitude, double longitude,
+			int precision) throws IllegalArgumentException {
+		if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+			throw new IllegalArgumentException("Coordinates out of range: "
+					+ latitude + "," + longitude);
+		}
+		if (precision < 1 || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("The precision must be between 1 and "
+					+ MAX_PRECISION + ".");
+		}
+		double minLatitude = -90;
+		double maxLatitude = 90;
+		double minLongitude = -180;
+		double maxLongitude = 180;
+		char[] hash = new char[precision];
+		boolean even = true;
+		for (int i = 0; i < precision; i++) {
+			int index = 0;
+			for (int bit = 0; bit < 5; bit++) {
+				index <<= 1;
+				if (even) {
+					double mid = (minLongitude + maxLongitude) / 2;
+					if (longitude >= mid) {
+						index |= 1;
+						minLongitude = mid;
+					} else {
+						maxLongitude = mid;
+					}
+				} else {
+					double mid = (minLatitude + maxLatitude) / 2;
+					if (latitude >= mid) {
+						index |= 1;
+						minLatitude = mid;
+					} else {
+						maxLatitude = mid;
+					}
+				}
+				even = !even;
+			}
+			hash[i] = BASE32[index];
+		}
+		return new String(hash);
+	}
+}
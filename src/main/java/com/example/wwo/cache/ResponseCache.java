@@ -0,0 +1,343 @@
+package com.example.wwo.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, concurrent in-process cache of response bodies. It is split into
+ * independently locked segments; each segment is a segmented LRU: new entries
+ * start in a probation area and are promoted to a protected area on their
+ * second hit, so one-off lookups (e.g. a bulk refresh) cannot flush the
+ * popular entries. Entries are bounded both by count and by weight (the size
+ * of the body in bytes), and expire after the time to live given on
+ * {@link #put(String, byte[], long)}.
+ *
+ * Attach it to a transport with
+ * {@link com.example.wwo.HttpTransport#setResponseCache(ResponseCache)}.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class ResponseCache {
+	private static final int SEGMENTS = 16;
+	private static final int ENTRY_OVERHEAD = 64;
+	private static final double PROTECTED_SHARE = 0.8;
+
+	private final Segment[] segments;
+	private final CachePolicy policy;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates a cache with the default policy.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of entries.
+	 * @param maxWeightBytes
+	 *            the maximum total size of the cached bodies.
+	 */
+	public ResponseCache(long maxEntries, long maxWeightBytes) {
+		this(maxEntries, maxWeightBytes, new CachePolicy());
+	}
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of entries.
+	 * @param maxWeightBytes
+	 *            the maximum total size of the cached bodies.
+	 * @param policy
+	 *            the time to live of each endpoint.
+	 * @throws IllegalArgumentException
+	 *             if a limit is not positive.
+	 */
+	public ResponseCache(long maxEntries, long maxWeightBytes,
+			CachePolicy policy) throws IllegalArgumentException {
+		if (maxEntries < 1 || maxWeightBytes < 1) {
+			throw new IllegalArgumentException(
+					"The cache limits must be positive.");
+		}
+		this.policy = policy;
+		this.segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(Math.max(1, maxEntries / SEGMENTS),
+					Math.max(1, maxWeightBytes / SEGMENTS));
+		}
+	}
+
+	/**
+	 * The policy deciding the time to live of each request.
+	 *
+	 * @return the policy.
+	 */
+	public CachePolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Returns a cached body. The caller must not modify the returned array.
+	 *
+	 * @param key
+	 *            the canonical request key.
+	 * @return the body, or null if not cached or expired.
+	 */
+	public byte[] get(String key) {
+		byte[] value = segmentFor(key).get(key, System.currentTimeMillis());
+		if (value == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * Caches a body.
+	 *
+	 * @param key
+	 *            the canonical request key.
+	 * @param body
+	 *            the body, must not be modified afterwards.
+	 * @param ttlMillis
+	 *            the time to live, 0 or less is not cached.
+	 */
+	public void put(String key, byte[] body, long ttlMillis) {
+		if (ttlMillis <= 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long expiresAt = ttlMillis >= CachePolicy.FOREVER - now
+				? CachePolicy.FOREVER : now + ttlMillis;
+		segmentFor(key).put(key,
+				new Entry(body, weightOf(key, body), expiresAt));
+	}
+
+	/**
+	 * Removes an entry.
+	 *
+	 * @param key
+	 *            the canonical request key.
+	 */
+	public void invalidate(String key) {
+		segmentFor(key).remove(key);
+	}
+
+	/**
+	 * Removes every entry.
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * The number of cached entries, including expired ones not yet removed.
+	 *
+	 * @return the number of entries.
+	 */
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * The total weight of the cached entries.
+	 *
+	 * @return the weight in bytes.
+	 */
+	public long weight() {
+		long weight = 0;
+		for (Segment segment : segments) {
+			weight += segment.weight();
+		}
+		return weight;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	private Segment segmentFor(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (SEGMENTS - 1)];
+	}
+
+	private static long weightOf(String key, byte[] body) {
+		return ENTRY_OVERHEAD + 2L * key.length() + body.length;
+	}
+
+	private static class Entry {
+		final byte[] value;
+		final long weight;
+		final long expiresAt;
+
+		Entry(byte[] value, long weight, long expiresAt) {
+			this.value = value;
+			this.weight = weight;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private class Segment {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<String, Entry>(
+				16, 0.75f, true);
+		private final LinkedHashMap<String, Entry> protectedArea = new LinkedHashMap<String, Entry>(
+				16, 0.75f, true);
+		private final long maxEntries;
+		private final long maxWeight;
+		private final long maxProtectedWeight;
+		private long weight;
+		private long protectedWeight;
+
+		Segment(long maxEntries, long maxWeight) {
+			this.maxEntries = maxEntries;
+			this.maxWeight = maxWeight;
+			this.maxProtectedWeight = (long) (maxWeight * PROTECTED_SHARE);
+		}
+
+		byte[] get(String key, long now) {
+			lock.lock();
+			try {
+				Entry entry = protectedArea.get(key);
+				if (entry != null) {
+					if (entry.expiresAt <= now) {
+						protectedArea.remove(key);
+						protectedWeight -= entry.weight;
+						weight -= entry.weight;
+						return null;
+					}
+					return entry.value;
+				}
+				entry = probation.remove(key);
+				if (entry == null) {
+					return null;
+				}
+				if (entry.expiresAt <= now) {
+					weight -= entry.weight;
+					return null;
+				}
+				// second hit: promote, demoting the protected LRU if needed
+				protectedArea.put(key, entry);
+				protectedWeight += entry.weight;
+				demote();
+				return entry.value;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void put(String key, Entry entry) {
+			lock.lock();
+			try {
+				removeLocked(key);
+				if (entry.weight > maxWeight) {
+					return;
+				}
+				probation.put(key, entry);
+				weight += entry.weight;
+				evict();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void remove(String key) {
+			lock.lock();
+			try {
+				removeLocked(key);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void clear() {
+			lock.lock();
+			try {
+				probation.clear();
+				protectedArea.clear();
+				weight = 0;
+				protectedWeight = 0;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		long size() {
+			lock.lock();
+			try {
+				return probation.size() + protectedArea.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		long weight() {
+			lock.lock();
+			try {
+				return weight;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void removeLocked(String key) {
+			Entry old = probation.remove(key);
+			if (old == null) {
+				old = protectedArea.remove(key);
+				if (old != null) {
+					protectedWeight -= old.weight;
+				}
+			}
+			if (old != null) {
+				weight -= old.weight;
+			}
+		}
+
+		private void demote() {
+			Iterator<Map.Entry<String, Entry>> it = protectedArea.entrySet()
+					.iterator();
+			while (protectedWeight > maxProtectedWeight && it.hasNext()) {
+				Map.Entry<String, Entry> eldest = it.next();
+				it.remove();
+				protectedWeight -= eldest.getValue().weight;
+				probation.put(eldest.getKey(), eldest.getValue());
+			}
+		}
+
+		private void evict() {
+			while (weight > maxWeight
+					|| probation.size() + protectedArea.size() > maxEntries) {
+				Map<String, Entry> victims = probation.isEmpty()
+						? protectedArea : probation;
+				Iterator<Map.Entry<String, Entry>> it = victims.entrySet()
+						.iterator();
+				Entry eldest = it.next().getValue();
+				it.remove();
+				weight -= eldest.weight;
+				if (victims == protectedArea) {
+					protectedWeight -= eldest.weight;
+				}
+				evictions.incrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package com.example.wwo.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.example.wwo.Location;
+import com.example.wwo.Location.LocationType;
+import com.example.wwo.Request;
+import com.example.wwo.model.SearchHit;
+import com.example.wwo.parser.JsonWeatherParser;
+import com.example.wwo.parser.Projection;
+import com.example.wwo.parser.WeatherHandlerAdapter;
+import com.example.wwo.parser.WeatherParser;
+import com.example.wwo.parser.XmlWeatherParser;
+
+/**
+ * Keys the cached responses of latitude and longitude lookups by the weather
+ * point the API resolves them to, so nearby coordinates share one entry. The
+ * API answers a coordinate with the weather of its nearest grid point, which
+ * the response names as its <code>nearest_area</code> when the location is
+ * requested to be included, e.g. with
+ * <code>LocalWeather.isIncludeLocation(true)</code>.
+ *
+ * Coordinates are snapped to geohash cells of the configured precision. Once
+ * a response has named the weather point of a coordinate, the whole cell of
+ * the coordinate is mapped to that point, and the requests of every
+ * coordinate of the cell are keyed with the point as their <code>q</code>.
+ * Until then, and for responses without the nearest area, the exact request
+ * is the key. A cell crossing the boundary between two weather points is
+ * served the weather of the point learned last; a higher precision makes that
+ * rarer at the cost of more upstream requests.
+ *
+ * Applies to the local and marine weather endpoints; attach it with
+ * {@link com.example.wwo.HttpTransport#setSpatialKeys(SpatialKeys)}. The
+ * mapping of the least recently used cells is forgotten beyond the
+ * configured number of cells. Thread-safe.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class SpatialKeys {
+	private static final Projection NEAREST_AREA = new Projection()
+			.nearestArea("latitude", "longitude");
+	private static final WeatherParser JSON_PARSER = new JsonWeatherParser(
+			NEAREST_AREA);
+	private static final WeatherParser XML_PARSER = new XmlWeatherParser(
+			NEAREST_AREA);
+
+	private final int precision;
+	private final Map<String, String> pointByCell;
+	private final AtomicLong snapped = new AtomicLong();
+	private final AtomicLong learned = new AtomicLong();
+
+	/**
+	 * Creates keys of 6 character cells, about 1.2 x 0.6 km, remembering up
+	 * to 100000 cells.
+	 */
+	public SpatialKeys() {
+		this(6, 100000);
+	}
+
+	/**
+	 * @param precision
+	 *            the length of the geohash of a cell, see {@link Geohash}.
+	 * @param maxCells
+	 *            the number of cells to remember.
+	 * @throws IllegalArgumentException
+	 *             if the precision is out of range or maxCells is not
+	 *             positive.
+	 */
+	public SpatialKeys(int precision, final int maxCells)
+			throws IllegalArgumentException {
+		if (precision < 1 || precision > Geohash.MAX_PRECISION) {
+			throw new IllegalArgumentException("The precision must be between 1 and "
+					+ Geohash.MAX_PRECISION + ".");
+		}
+		if (maxCells < 1) {
+			throw new IllegalArgumentException(
+					"The number of cells must be positive.");
+		}
+		this.precision = precision;
+		this.pointByCell = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > maxCells;
+			}
+		};
+	}
+
+	/**
+	 * The key of a request snapped to the weather point of its cell.
+	 *
+	 * @param request
+	 *            the request.
+	 * @return the key, or null if the request is not a coordinate lookup or
+	 *         the point of its cell is not known yet.
+	 */
+	public String keyOf(Request request) {
+		String cell = cellOf(request);
+		if (cell == null) {
+			return null;
+		}
+		String point;
+		synchronized (pointByCell) {
+			point = pointByCell.get(cell);
+		}
+		if (point == null) {
+			return null;
+		}
+		snapped.incrementAndGet();
+		return request.getCanonicalKey("q", point);
+	}
+
+	/**
+	 * Maps the cell of a request to the weather point named by its response.
+	 *
+	 * @param request
+	 *            the request.
+	 * @param body
+	 *            the successful response body.
+	 * @return the key of the response under its weather point, or null if the
+	 *         request is not a coordinate lookup or the response does not name
+	 *         its point.
+	 */
+	public String learn(Request request, byte[] body) {
+		String cell = cellOf(request);
+		if (cell == null) {
+			return null;
+		}
+		Location point = nearestPoint(request.getParameter("format"), body);
+		if (point == null) {
+			return null;
+		}
+		String q = point.getCanonicalForm();
+		String previous;
+		synchronized (pointByCell) {
+			previous = pointByCell.put(cell, q);
+		}
+		if (!q.equals(previous)) {
+			learned.incrementAndGet();
+		}
+		return request.getCanonicalKey("q", q);
+	}
+
+	/**
+	 * Forgets every learned cell.
+	 */
+	public void clear() {
+		synchronized (pointByCell) {
+			pointByCell.clear();
+		}
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * The number of cells with a known weather point.
+	 */
+	public int size() {
+		synchronized (pointByCell) {
+			return pointByCell.size();
+		}
+	}
+
+	/**
+	 * The number of requests keyed with the weather point of their cell.
+	 */
+	public long getSnappedCount() {
+		return snapped.get();
+	}
+
+	/**
+	 * The number of times a cell was mapped to a new weather point.
+	 */
+	public long getLearnedCount() {
+		return learned.get();
+	}
+
+	/**
+	 * The geohash cell of a local or marine weather request of a single
+	 * coordinate, else null.
+	 */
+	private String cellOf(Request request) {
+		String baseUrl = request.getBaseUrl();
+		if (!baseUrl.endsWith("/weather.ashx")
+				&& !baseUrl.endsWith("/marine.ashx")) {
+			return null;
+		}
+		String q = request.getParameter("q");
+		if (!Location.isValid(LocationType.LAT_AND_LONG, q)) {
+			return null;
+		}
+		Location location = Location.of(LocationType.LAT_AND_LONG, q);
+		return Geohash.encode(location.getLatitude(), location.getLongitude(),
+				precision);
+	}
+
+	private static Location nearestPoint(String format, byte[] body) {
+		WeatherParser parser;
+		if (format == null || "xml".equals(format)) {
+			parser = XML_PARSER;
+		} else if ("json".equals(format)) {
+			parser = JSON_PARSER;
+		} else {
+			return null;
+		}
+		final SearchHit[] area = new SearchHit[1];
+		try {
+			parser.parse(new ByteArrayInputStream(body),
+					new WeatherHandlerAdapter() {
+						@Override
+						public void nearestArea(SearchHit hit) {
+							if (area[0] == null) {
+								area[0] = hit;
+							}
+						}
+					});
+		} catch (IOException e) {
+			return null;
+		}
+		if (area[0] == null) {
+			return null;
+		}
+		try {
+			return Location.of(area[0].getLatitude(), area[0].getLongitude());
+		} catch (IllegalArgumentException e) {
+			// NaN or out of range
+			return null;
+		}
+	}
+}
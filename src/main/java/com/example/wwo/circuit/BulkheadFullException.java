@@ -0,0 +1,18 @@
+package com.example.wwo.circuit;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is not sent because its endpoint already has the
+ * maximum number of requests in flight.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class BulkheadFullException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public BulkheadFullException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,489 @@
+package com.example.wwo.circuit;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker and bulkhead of one endpoint.
+ *
+ * The breaker records the outcome of the latest requests: a request fails on
+ * an I/O error, a 5xx response, or when it takes longer than the slow call
+ * threshold from taking the permit to the response. When the failure rate of
+ * the window reaches the threshold the circuit opens and requests are rejected
+ * with a {@link CircuitOpenException} without being sent. After the open
+ * duration a few trial requests are let through; if they all succeed the
+ * circuit closes, otherwise it opens again.
+ *
+ * The bulkhead limits the requests in flight on the endpoint, so a slow
+ * endpoint cannot take every thread and pooled connection; requests above the
+ * limit are rejected with a {@link BulkheadFullException}.
+ *
+ * Created by a {@link CircuitBreakerRegistry} for each base URL.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class CircuitBreaker {
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(CircuitBreaker.class);
+
+	private final String baseUrl;
+	private final Settings settings;
+	private final CircuitBreakerRegistry registry;
+	private final Semaphore bulkhead;
+	private final boolean[] window;
+	private int windowCalls;
+	private int windowFailures;
+	private int windowIndex;
+	private State state = State.CLOSED;
+	private long openUntilNanos;
+	private int trialPermits;
+	private int trialSuccesses;
+	private final AtomicLong successes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+	private final AtomicLong openings = new AtomicLong();
+
+	CircuitBreaker(String baseUrl, Settings settings,
+			CircuitBreakerRegistry registry) {
+		this.baseUrl = baseUrl;
+		this.settings = settings;
+		this.registry = registry;
+		this.bulkhead = new Semaphore(settings.maxConcurrentCalls);
+		this.window = new boolean[settings.windowSize];
+	}
+
+	/**
+	 * Rejects a request while the circuit is open, without taking a permit,
+	 * e.g. before waiting for the rate limiter. The permit is taken with
+	 * {@link #acquire()} right before the request is sent.
+	 *
+	 * @throws CircuitOpenException
+	 *             if the circuit is open.
+	 */
+	public void check() throws CircuitOpenException {
+		synchronized (this) {
+			long now = System.nanoTime();
+			if (state == State.OPEN && now - openUntilNanos < 0) {
+				rejections.incrementAndGet();
+				throw new CircuitOpenException("The circuit of " + baseUrl
+						+ " is open.", TimeUnit.NANOSECONDS
+						.toMillis(openUntilNanos - now) + 1);
+			}
+		}
+	}
+
+	/**
+	 * Takes a permit to send a request. The permit must be completed or
+	 * released when the request is done.
+	 *
+	 * @return the permit.
+	 * @throws CircuitOpenException
+	 *             if the circuit is open.
+	 * @throws BulkheadFullException
+	 *             if the endpoint has the maximum requests in flight.
+	 */
+	public Permit acquire() throws CircuitOpenException, BulkheadFullException {
+		boolean trial;
+		State from = null;
+		synchronized (this) {
+			long now = System.nanoTime();
+			if (state == State.OPEN) {
+				if (now - openUntilNanos < 0) {
+					rejections.incrementAndGet();
+					throw new CircuitOpenException("The circuit of " + baseUrl
+							+ " is open.", TimeUnit.NANOSECONDS
+							.toMillis(openUntilNanos - now) + 1);
+				}
+				from = transition(State.HALF_OPEN);
+				trialPermits = settings.halfOpenCalls;
+				trialSuccesses = 0;
+			}
+			trial = state == State.HALF_OPEN;
+			if (trial) {
+				if (trialPermits == 0) {
+					rejections.incrementAndGet();
+					throw new CircuitOpenException("The circuit of " + baseUrl
+							+ " is half open, waiting for the trial requests.",
+							0);
+				}
+				trialPermits--;
+			}
+		}
+		notifyListeners(from, State.HALF_OPEN);
+		if (!bulkhead.tryAcquire()) {
+			if (trial) {
+				synchronized (this) {
+					if (state == State.HALF_OPEN) {
+						trialPermits++;
+					}
+				}
+			}
+			rejections.incrementAndGet();
+			throw new BulkheadFullException(baseUrl + " already has "
+					+ settings.maxConcurrentCalls + " requests in flight.");
+		}
+		return new Permit(trial);
+	}
+
+	private void record(Permit permit, boolean failed) {
+		if (failed) {
+			failures.incrementAndGet();
+		} else {
+			successes.incrementAndGet();
+		}
+		State from = null;
+		State to = null;
+		synchronized (this) {
+			if (state == State.HALF_OPEN && permit.trial) {
+				if (failed) {
+					from = open();
+				} else if (++trialSuccesses >= settings.halfOpenCalls) {
+					from = transition(State.CLOSED);
+					resetWindow();
+				}
+			} else if (state == State.CLOSED) {
+				if (windowCalls == window.length) {
+					if (window[windowIndex]) {
+						windowFailures--;
+					}
+				} else {
+					windowCalls++;
+				}
+				window[windowIndex] = failed;
+				if (failed) {
+					windowFailures++;
+				}
+				windowIndex = (windowIndex + 1) % window.length;
+				if (windowCalls >= settings.minimumCalls
+						&& windowFailures >= settings.failureRateThreshold
+								* windowCalls) {
+					from = open();
+				}
+			}
+			to = state;
+		}
+		notifyListeners(from, to);
+	}
+
+	/**
+	 * Opens the circuit, called holding the lock.
+	 */
+	private State open() {
+		openUntilNanos = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(settings.openMillis);
+		openings.incrementAndGet();
+		resetWindow();
+		return transition(State.OPEN);
+	}
+
+	private State transition(State to) {
+		State from = state;
+		state = to;
+		return from;
+	}
+
+	private void resetWindow() {
+		windowCalls = 0;
+		windowFailures = 0;
+		windowIndex = 0;
+	}
+
+	private void notifyListeners(State from, State to) {
+		if (from == null || from == to) {
+			return;
+		}
+		if (to == State.OPEN) {
+			LOGGER.warn("Circuit of {} opened, rejecting requests for {} ms.",
+					baseUrl, settings.openMillis);
+		} else {
+			LOGGER.info("Circuit of {} changed from {} to {}.", baseUrl, from,
+					to);
+		}
+		for (CircuitBreakerListener listener : registry.getListeners()) {
+			listener.stateChanged(this, from, to);
+		}
+	}
+
+	public String getBaseUrl() {
+		return baseUrl;
+	}
+
+	public Settings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * The current state. An open circuit whose open duration has elapsed
+	 * reports {@link State#OPEN} until the next request.
+	 *
+	 * @return the state.
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * The failure rate of the window of latest requests while closed.
+	 *
+	 * @return the rate between 0 and 1.
+	 */
+	public synchronized double getFailureRate() {
+		return windowCalls == 0 ? 0 : (double) windowFailures / windowCalls;
+	}
+
+	/**
+	 * The requests in flight on the endpoint.
+	 *
+	 * @return the number of requests.
+	 */
+	public int getConcurrentCalls() {
+		return settings.maxConcurrentCalls - bulkhead.availablePermits();
+	}
+
+	public long getSuccessCount() {
+		return successes.get();
+	}
+
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * The requests rejected by the open circuit or the full bulkhead.
+	 *
+	 * @return the number of rejected requests.
+	 */
+	public long getRejectedCount() {
+		return rejections.get();
+	}
+
+	/**
+	 * How many times the circuit opened.
+	 *
+	 * @return the number of openings.
+	 */
+	public long getOpenedCount() {
+		return openings.get();
+	}
+
+	@Override
+	public String toString() {
+		return baseUrl + ": state=" + getState() + ", failureRate="
+				+ getFailureRate() + ", concurrent=" + getConcurrentCalls()
+				+ ", rejected=" + getRejectedCount();
+	}
+
+	/**
+	 * State of a circuit.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public static enum State {
+		/**
+		 * Requests are sent and their outcomes recorded.
+		 */
+		CLOSED,
+		/**
+		 * Requests are rejected.
+		 */
+		OPEN,
+		/**
+		 * A few trial requests are sent to decide whether to close.
+		 */
+		HALF_OPEN
+	}
+
+	/**
+	 * Permission to send one request. Completing or releasing it again has no
+	 * effect.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public class Permit {
+		private final boolean trial;
+		private final long startNanos = System.nanoTime();
+		private final AtomicBoolean done = new AtomicBoolean();
+		private volatile long respondedNanos;
+		private volatile boolean responded;
+
+		Permit(boolean trial) {
+			this.trial = trial;
+		}
+
+		/**
+		 * Stops the latency clock when the response headers arrive, so the
+		 * time the caller takes to read a streamed body does not make the
+		 * request slow. The bulkhead slot is held until the permit is
+		 * completed.
+		 */
+		public void responded() {
+			if (!responded) {
+				respondedNanos = System.nanoTime();
+				responded = true;
+			}
+		}
+
+		/**
+		 * Records the outcome of the request and frees its bulkhead slot. A
+		 * request slower than the slow call threshold is a failure.
+		 *
+		 * @param failed
+		 *            whether the request failed.
+		 */
+		public void complete(boolean failed) {
+			if (done.compareAndSet(false, true)) {
+				bulkhead.release();
+				long elapsed = (responded ? respondedNanos : System.nanoTime())
+						- startNanos;
+				record(this, failed
+						|| (settings.slowCallMillis >= 0 && elapsed > TimeUnit.MILLISECONDS
+								.toNanos(settings.slowCallMillis)));
+			}
+		}
+
+		/**
+		 * Frees the bulkhead slot without recording an outcome, e.g. for a
+		 * cancelled request. A released trial permit is given back.
+		 */
+		public void release() {
+			if (done.compareAndSet(false, true)) {
+				bulkhead.release();
+				if (trial) {
+					synchronized (CircuitBreaker.this) {
+						if (state == State.HALF_OPEN) {
+							trialPermits++;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Thresholds of a circuit breaker.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public static class Settings {
+		private double failureRateThreshold = 0.5;
+		private int windowSize = 50;
+		private int minimumCalls = 20;
+		private long slowCallMillis = 10000;
+		private long openMillis = 30000;
+		private int halfOpenCalls = 3;
+		private int maxConcurrentCalls = 25;
+
+		/**
+		 * The failure rate which opens the circuit. Default is 0.5.
+		 *
+		 * @param failureRateThreshold
+		 *            the rate between 0 and 1.
+		 * @return a reference to this object.
+		 */
+		public Settings setFailureRateThreshold(double failureRateThreshold) {
+			if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)) {
+				throw new IllegalArgumentException(
+						"The threshold must be between 0 and 1: "
+								+ failureRateThreshold);
+			}
+			this.failureRateThreshold = failureRateThreshold;
+			return this;
+		}
+
+		/**
+		 * The number of latest requests the failure rate is computed over,
+		 * and the number of them needed before the circuit may open. Default
+		 * is 50 and 20.
+		 *
+		 * @param windowSize
+		 *            the size of the window.
+		 * @param minimumCalls
+		 *            the minimum requests in the window.
+		 * @return a reference to this object.
+		 */
+		public Settings setWindow(int windowSize, int minimumCalls) {
+			if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+				throw new IllegalArgumentException("Invalid window: "
+						+ minimumCalls + " of " + windowSize);
+			}
+			this.windowSize = windowSize;
+			this.minimumCalls = minimumCalls;
+			return this;
+		}
+
+		/**
+		 * Requests slower than this are failures. Default is 10000.
+		 *
+		 * @param slowCallMillis
+		 *            the threshold in milliseconds, or a negative value to
+		 *            ignore the latency.
+		 * @return a reference to this object.
+		 */
+		public Settings setSlowCallThreshold(long slowCallMillis) {
+			this.slowCallMillis = slowCallMillis;
+			return this;
+		}
+
+		/**
+		 * How long an open circuit rejects requests. Default is 30000.
+		 *
+		 * @param openMillis
+		 *            the duration in milliseconds.
+		 * @return a reference to this object.
+		 */
+		public Settings setOpenDuration(long openMillis) {
+			this.openMillis = openMillis;
+			return this;
+		}
+
+		/**
+		 * The trial requests of a half open circuit. Default is 3.
+		 *
+		 * @param halfOpenCalls
+		 *            the number of trial requests.
+		 * @return a reference to this object.
+		 */
+		public Settings setHalfOpenCalls(int halfOpenCalls) {
+			if (halfOpenCalls < 1) {
+				throw new IllegalArgumentException(
+						"At least one trial request is needed.");
+			}
+			this.halfOpenCalls = halfOpenCalls;
+			return this;
+		}
+
+		/**
+		 * The size of the bulkhead: the maximum requests in flight on the
+		 * endpoint. Default is 25.
+		 *
+		 * @param maxConcurrentCalls
+		 *            the limit.
+		 * @return a reference to this object.
+		 */
+		public Settings setMaxConcurrentCalls(int maxConcurrentCalls) {
+			if (maxConcurrentCalls < 1) {
+				throw new IllegalArgumentException(
+						"At least one concurrent request is needed.");
+			}
+			this.maxConcurrentCalls = maxConcurrentCalls;
+			return this;
+		}
+
+		public int getMaxConcurrentCalls() {
+			return maxConcurrentCalls;
+		}
+
+		public long getOpenDuration() {
+			return openMillis;
+		}
+	}
+}
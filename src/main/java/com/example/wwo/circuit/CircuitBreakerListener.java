@@ -0,0 +1,15 @@
+package com.example.wwo.circuit;
+
+/**
+ * Notified when a circuit breaker changes state, e.g. to export it as a
+ * metric. Called on the thread of the request which caused the change, after
+ * the change; must not block.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public interface CircuitBreakerListener {
+
+	void stateChanged(CircuitBreaker breaker, CircuitBreaker.State from,
+			CircuitBreaker.State to);
+}
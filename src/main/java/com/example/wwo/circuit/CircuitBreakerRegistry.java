@@ -0,0 +1,115 @@
+package com.example.wwo.circuit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The circuit breakers of a transport, one per endpoint. An endpoint is
+ * identified by its base URL, as returned by the <code>getBaseUrl()</code>
+ * method of the <code>PackageType</code> enums, e.g.
+ * "/premium/v1/past-weather.ashx"; so the free and the premium variant of an
+ * endpoint are broken separately.
+ *
+ * Attach it to a transport with
+ * {@link com.example.wwo.HttpTransport#setCircuitBreakers(CircuitBreakerRegistry)}.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class CircuitBreakerRegistry {
+	private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	private final ConcurrentMap<String, CircuitBreaker.Settings> endpointSettings = new ConcurrentHashMap<String, CircuitBreaker.Settings>();
+	private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<CircuitBreakerListener>();
+	private final CircuitBreaker.Settings defaultSettings;
+
+	/**
+	 * Creates a registry with the default settings.
+	 */
+	public CircuitBreakerRegistry() {
+		this(new CircuitBreaker.Settings());
+	}
+
+	/**
+	 * Creates a registry.
+	 *
+	 * @param defaultSettings
+	 *            the settings of the endpoints without own settings.
+	 */
+	public CircuitBreakerRegistry(CircuitBreaker.Settings defaultSettings) {
+		this.defaultSettings = defaultSettings;
+	}
+
+	/**
+	 * Sets the thresholds of one endpoint. Must be called before its first
+	 * request.
+	 *
+	 * @param baseUrl
+	 *            the base URL of the endpoint.
+	 * @param settings
+	 *            the settings.
+	 * @return a reference to this object.
+	 */
+	public CircuitBreakerRegistry setSettings(String baseUrl,
+			CircuitBreaker.Settings settings) {
+		endpointSettings.put(baseUrl, settings);
+		return this;
+	}
+
+	/**
+	 * Adds a listener of the state changes of every breaker.
+	 *
+	 * @param listener
+	 *            the listener.
+	 * @return a reference to this object.
+	 */
+	public CircuitBreakerRegistry addListener(CircuitBreakerListener listener) {
+		listeners.add(listener);
+		return this;
+	}
+
+	public void removeListener(CircuitBreakerListener listener) {
+		listeners.remove(listener);
+	}
+
+	List<CircuitBreakerListener> getListeners() {
+		return listeners;
+	}
+
+	/**
+	 * The breaker of an endpoint, created on first use.
+	 *
+	 * @param baseUrl
+	 *            the base URL of the endpoint.
+	 * @return the breaker.
+	 */
+	public CircuitBreaker forEndpoint(String baseUrl) {
+		CircuitBreaker breaker = breakers.get(baseUrl);
+		if (breaker == null) {
+			CircuitBreaker.Settings settings = endpointSettings.get(baseUrl);
+			CircuitBreaker created = new CircuitBreaker(baseUrl,
+					settings != null ? settings : defaultSettings, this);
+			breaker = breakers.putIfAbsent(baseUrl, created);
+			if (breaker == null) {
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+	/**
+	 * The breakers of the endpoints used so far, e.g. to export their
+	 * metrics.
+	 *
+	 * @return the breakers sorted by base URL.
+	 */
+	public List<CircuitBreaker> getBreakers() {
+		Map<String, CircuitBreaker> sorted = new TreeMap<String, CircuitBreaker>(
+				breakers);
+		return new ArrayList<CircuitBreaker>(sorted.values());
+	}
+}
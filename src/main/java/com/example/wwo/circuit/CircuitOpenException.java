@@ -0,0 +1,30 @@
+package com.example.wwo.circuit;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is not sent because the circuit breaker of its
+ * endpoint is open.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class CircuitOpenException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final long retryAfterMillis;
+
+	public CircuitOpenException(String message, long retryAfterMillis) {
+		super(message);
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	/**
+	 * How long until the breaker lets trial requests through again.
+	 *
+	 * @return the delay in milliseconds.
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+}
@@ -0,0 +1,527 @@
+package com.example.wwo.historicalweather;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.wwo.Request;
+import com.example.wwo.RequestTemplate;
+import com.example.wwo.batch.BatchResponse;
+import com.example.wwo.batch.LocationBatch;
+import com.example.wwo.bulk.LocationQuery;
+import com.example.wwo.cache.CachePolicy;
+import com.example.wwo.quota.QuotaExceededException;
+import com.example.wwo.quota.QuotaGovernor;
+import com.example.wwo.quota.Tier;
+
+/**
+ * Resumable download of the past weather of many locations, one request per
+ * location and calendar month, the most a request can return. Every completed
+ * (month, location) cell is appended to a checkpoint log and synced to disk
+ * after its body was handed to the {@link Sink}, so a run stopped by a crash
+ * or a used up quota continues where it stopped and never requests a
+ * completed cell again.
+ *
+ * <pre>
+ * HistoricalBackfill backfill = HistoricalBackfill.open(new File(&quot;backfill.log&quot;));
+ * Result result = backfill.run(prototype, locations, HistoricalBackfill.FIRST_DATE,
+ * 		HistoricalBackfill.into(store));
+ * </pre>
+ *
+ * The most recent months are requested first, so a run stopped early has the
+ * data most likely to be needed. Only months which have passed everywhere are
+ * requested, their observations never change. Premium API locations may be
+ * sent together, see {@link #setBatchSize(int)}, which divides the number of
+ * requests by the batch size.
+ *
+ * When the transport has a {@link QuotaGovernor}, the daily quota of the API
+ * key is checked before every request. A used up quota either ends the run,
+ * with the time it resets in the {@link Result}, or with
+ * {@link #setWaitForQuota(boolean)} waits for the reset.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class HistoricalBackfill implements Closeable {
+	/**
+	 * The first date the API has past weather of.
+	 */
+	public static final LocalDate FIRST_DATE = new LocalDate(2008, 7, 1);
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(HistoricalBackfill.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final FileChannel log;
+	private final Set<String> completed = new HashSet<String>();
+	private int batchSize = 1;
+	private boolean waitForQuota;
+
+	private HistoricalBackfill(File file, FileChannel log) {
+		this.file = file;
+		this.log = log;
+	}
+
+	/**
+	 * Opens or creates a checkpoint log. A record cut off by a crash is
+	 * dropped.
+	 *
+	 * @param file
+	 *            the checkpoint log.
+	 * @return the backfill.
+	 * @throws IOException
+	 *             if the log cannot be read or created.
+	 */
+	public static HistoricalBackfill open(File file) throws IOException {
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		HistoricalBackfill backfill = new HistoricalBackfill(file, channel);
+		try {
+			backfill.load();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return backfill;
+	}
+
+	/**
+	 * Sends up to the given number of locations in one request. Only the
+	 * premium API accepts more than one location. Default is 1.
+	 *
+	 * @param batchSize
+	 *            the locations per request, between 1 and
+	 *            {@link LocationBatch#MAX_SIZE}.
+	 * @return a reference to this object.
+	 * @throws IllegalArgumentException
+	 *             if batchSize is out of range.
+	 */
+	public HistoricalBackfill setBatchSize(int batchSize)
+			throws IllegalArgumentException {
+		if (batchSize < 1 || batchSize > LocationBatch.MAX_SIZE) {
+			throw new IllegalArgumentException(
+					"The batch size must be between 1 and "
+							+ LocationBatch.MAX_SIZE + ".");
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Whether a used up quota is waited for instead of ending the run.
+	 * Default is false.
+	 *
+	 * @param waitForQuota
+	 *            true to wait for the quota to reset.
+	 * @return a reference to this object.
+	 */
+	public HistoricalBackfill setWaitForQuota(boolean waitForQuota) {
+		this.waitForQuota = waitForQuota;
+		return this;
+	}
+
+	public boolean isWaitForQuota() {
+		return waitForQuota;
+	}
+
+	/**
+	 * Downloads every month from the given date up to the last month which
+	 * has passed, skipping the completed cells.
+	 *
+	 * @see #run(Request, Collection, LocalDate, LocalDate, Sink)
+	 */
+	public Result run(Request prototype, Collection<LocationQuery> locations,
+			LocalDate from, Sink sink) throws IllegalArgumentException,
+			IOException {
+		LocalDate lastFinal = CachePolicy.getLastFinalDate();
+		return run(prototype, locations, from, lastFinal.plusDays(1)
+				.withDayOfMonth(1).minusDays(1), sink);
+	}
+
+	/**
+	 * Downloads the months of a date range, most recent first, skipping the
+	 * completed cells. A cell whose request fails, whose status is not 2xx,
+	 * or whose response is an error, is logged and left for the next run.
+	 *
+	 * @param prototype
+	 *            a past weather request; its location, date and end date are
+	 *            replaced by those of each cell.
+	 * @param locations
+	 *            the locations.
+	 * @param from
+	 *            a date of the first month.
+	 * @param to
+	 *            a date of the last month.
+	 * @param sink
+	 *            stores the bodies.
+	 * @return the progress of the run.
+	 * @throws IllegalArgumentException
+	 *             if a location is not valid.
+	 * @throws IOException
+	 *             if the sink or the checkpoint log fails.
+	 */
+	public Result run(Request prototype, Collection<LocationQuery> locations,
+			LocalDate from, LocalDate to, Sink sink)
+			throws IllegalArgumentException, IOException {
+		RequestTemplate template = RequestTemplate.compile(prototype, "q",
+				"date", "enddate");
+		String apiKey = prototype.getParameter("key");
+		Tier tier = Tier.of(prototype.getBaseUrl());
+		QuotaGovernor governor = prototype.getTransport() == null ? null
+				: prototype.getTransport().getQuotaGovernor();
+		List<LocationQuery> distinct = new ArrayList<LocationQuery>(
+				new LinkedHashSet<LocationQuery>(locations));
+		LocalDate first = (from.isBefore(FIRST_DATE) ? FIRST_DATE : from)
+				.withDayOfMonth(1);
+		Result result = new Result();
+		for (LocalDate month = to.withDayOfMonth(1); !month.isBefore(first); month = month
+				.minusMonths(1)) {
+			String date = month.toString();
+			String endDate = month.dayOfMonth().withMaximumValue().toString();
+			List<LocationQuery> pending = new ArrayList<LocationQuery>();
+			for (LocationQuery location : distinct) {
+				if (isCompleted(month, location)) {
+					result.skipped++;
+				} else {
+					pending.add(location);
+				}
+			}
+			if (pending.isEmpty()) {
+				continue;
+			}
+			List<LocationBatch> batches = LocationBatch.partition(pending,
+					batchSize);
+			for (int i = 0; i < batches.size(); i++) {
+				LocationBatch batch = batches.get(i);
+				if (governor != null
+						&& !awaitQuota(governor, apiKey, tier, result)) {
+					result.remaining = countRemaining(distinct, month, first);
+					return result;
+				}
+				byte[] body;
+				try {
+					result.requests++;
+					body = template.newRequest(batch.toQuery(), date, endDate)
+							.fetchSuccessBytes();
+				} catch (QuotaExceededException e) {
+					result.requests--;
+					if (!waitForQuota) {
+						result.quotaExhausted = true;
+						result.resumeAfterMillis = e.getRetryAfterMillis();
+						result.remaining = countRemaining(distinct, month, first);
+						return result;
+					}
+					sleep(e.getRetryAfterMillis());
+					i--;
+					continue;
+				} catch (IOException e) {
+					LOGGER.warn("Past weather of {} from {} failed: {}",
+							batch.toQuery(), date, e.toString());
+					result.failed += batch.size();
+					continue;
+				}
+				complete(template, batch, date, endDate, body, sink, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Whether a cell was completed by this or an earlier run.
+	 *
+	 * @param month
+	 *            a date of the month.
+	 * @param location
+	 *            the location.
+	 * @return true if completed, else false.
+	 */
+	public synchronized boolean isCompleted(LocalDate month,
+			LocationQuery location) {
+		return completed.contains(cellOf(month.withDayOfMonth(1).toString(),
+				location.getLocation()));
+	}
+
+	/**
+	 * The number of completed cells.
+	 */
+	public synchronized int size() {
+		return completed.size();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public void close() throws IOException {
+		log.close();
+	}
+
+	/**
+	 * A sink storing the bodies in a store, under the key of the single
+	 * location request of the month, so
+	 * {@link HistoricalWeatherStore#run(HistoricalWeather, String)} serves
+	 * them.
+	 *
+	 * @param store
+	 *            the store.
+	 * @return the sink.
+	 */
+	public static Sink into(final HistoricalWeatherStore store) {
+		return new Sink() {
+			@Override
+			public void month(LocationQuery location, Request request,
+					byte[] body) throws IOException {
+				store.put(HistoricalWeatherStore.keyOf(request
+						.getRequestParams()), body);
+			}
+		};
+	}
+
+	private void complete(RequestTemplate template, LocationBatch batch,
+			String date, String endDate, byte[] body, Sink sink, Result result)
+			throws IOException {
+		List<LocationQuery> queries = batch.getQueries();
+		byte[][] bodies = new byte[queries.size()][];
+		if (queries.size() == 1) {
+			bodies[0] = body;
+		} else {
+			BatchResponse split;
+			try {
+				split = BatchResponse.split(new ByteArrayInputStream(body),
+						batch);
+			} catch (IOException e) {
+				LOGGER.warn("Past weather of {} from {} failed: {}",
+						batch.toQuery(), date, e.toString());
+				result.failed += queries.size();
+				return;
+			}
+			for (int i = 0; i < bodies.length; i++) {
+				bodies[i] = split.getBody(queries.get(i));
+			}
+		}
+		StringBuilder records = new StringBuilder();
+		for (int i = 0; i < bodies.length; i++) {
+			LocationQuery location = queries.get(i);
+			if (HistoricalWeatherStore.isError(bodies[i])) {
+				LOGGER.warn("Past weather of {} from {} is an error: {}",
+						location.getLocation(), date, new String(bodies[i], 0,
+								Math.min(bodies[i].length, 200), UTF_8));
+				result.failed++;
+				continue;
+			}
+			sink.month(location, template.newRequest(location.getLocation(),
+					date, endDate), bodies[i]);
+			records.append(cellOf(date, location.getLocation())).append('\n');
+			result.completed++;
+		}
+		append(records.toString());
+	}
+
+	/**
+	 * Waits for the daily quota if asked to, else reports it used up.
+	 */
+	private boolean awaitQuota(QuotaGovernor governor, String apiKey,
+			Tier tier, Result result) throws InterruptedIOException {
+		while (governor.getRemainingDailyQuota(apiKey, tier) <= 0) {
+			long reset = governor.getMillisUntilDailyReset();
+			if (!waitForQuota) {
+				result.quotaExhausted = true;
+				result.resumeAfterMillis = reset;
+				return false;
+			}
+			LOGGER.info("Daily quota used up, waiting {} ms.", reset);
+			sleep(reset);
+		}
+		return true;
+	}
+
+	private static void sleep(long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(Math.max(1, millis));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the quota.");
+		}
+	}
+
+	private int countRemaining(List<LocationQuery> locations, LocalDate month,
+			LocalDate first) {
+		int remaining = 0;
+		for (LocalDate m = month; !m.isBefore(first); m = m.minusMonths(1)) {
+			for (LocationQuery location : locations) {
+				if (!isCompleted(m, location)) {
+					remaining++;
+				}
+			}
+		}
+		return remaining;
+	}
+
+	private synchronized void append(String records) throws IOException {
+		if (records.isEmpty()) {
+			return;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(UTF_8));
+		long position = log.size();
+		while (buffer.hasRemaining()) {
+			position += log.write(buffer, position);
+		}
+		log.force(false);
+		int start = 0;
+		int end;
+		while ((end = records.indexOf('\n', start)) >= 0) {
+			completed.add(records.substring(start, end));
+			start = end + 1;
+		}
+	}
+
+	private void load() throws IOException {
+		long size = log.size();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("The checkpoint log is too large: " + file);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		while (buffer.hasRemaining()) {
+			if (log.read(buffer, buffer.position()) < 0) {
+				break;
+			}
+		}
+		String records = new String(buffer.array(), 0, buffer.position(),
+				UTF_8);
+		int start = 0;
+		int end;
+		while ((end = records.indexOf('\n', start)) >= 0) {
+			completed.add(records.substring(start, end));
+			start = end + 1;
+		}
+		if (start < records.length()) {
+			// a record was cut off by a crash
+			log.truncate(records.substring(0, start).getBytes(UTF_8).length);
+		}
+	}
+
+	private static String cellOf(String month, String location) {
+		return month.substring(0, 7) + '\t' + location;
+	}
+
+	/**
+	 * Stores the body of a completed cell. Called before the cell is
+	 * checkpointed, so the body must be durable when it returns.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public interface Sink {
+
+		/**
+		 * The response of one location and month.
+		 *
+		 * @param location
+		 *            the location.
+		 * @param request
+		 *            the single location request of the month, not executed.
+		 * @param body
+		 *            the response body.
+		 * @throws IOException
+		 *             if the body cannot be stored; ends the run.
+		 */
+		void month(LocationQuery location, Request request, byte[] body)
+				throws IOException;
+	}
+
+	/**
+	 * The progress of a run.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public static class Result {
+		int requests;
+		int completed;
+		int skipped;
+		int failed;
+		int remaining;
+		boolean quotaExhausted;
+		long resumeAfterMillis;
+
+		/**
+		 * The requests sent.
+		 */
+		public int getRequests() {
+			return requests;
+		}
+
+		/**
+		 * The cells completed by this run.
+		 */
+		public int getCompleted() {
+			return completed;
+		}
+
+		/**
+		 * The cells completed by earlier runs.
+		 */
+		public int getSkipped() {
+			return skipped;
+		}
+
+		/**
+		 * The cells failed in this run, left for the next one.
+		 */
+		public int getFailed() {
+			return failed;
+		}
+
+		/**
+		 * The cells not tried because the quota was used up.
+		 */
+		public int getRemaining() {
+			return remaining;
+		}
+
+		/**
+		 * Whether the run ended because the quota was used up.
+		 */
+		public boolean isQuotaExhausted() {
+			return quotaExhausted;
+		}
+
+		/**
+		 * The milliseconds until the quota allows the run to continue, if it
+		 * was used up.
+		 */
+		public long getResumeAfterMillis() {
+			return resumeAfterMillis;
+		}
+
+		@Override
+		public String toString() {
+			return "requests=" + requests + ", completed=" + completed
+					+ ", skipped=" + skipped + ", failed=" + failed
+					+ ", remaining=" + remaining
+					+ (quotaExhausted ? ", quota exhausted, resume after "
+							+ resumeAfterMillis + " ms" : "");
+		}
+	}
+}
@@ -0,0 +1,370 @@
+package com.example.wwo.historicalweather;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.wwo.HttpTransport;
+import com.example.wwo.Request;
+import com.example.wwo.RequestTemplate;
+import com.example.wwo.model.CurrentCondition;
+import com.example.wwo.model.DailyForecast;
+import com.example.wwo.model.HourlySlot;
+import com.example.wwo.model.SearchHit;
+import com.example.wwo.model.Tide;
+import com.example.wwo.model.TimeZoneInfo;
+import com.example.wwo.parser.WeatherHandler;
+
+/**
+ * Fetches the past weather of any date range. The API answers at most one
+ * calendar month per request, see {@link HistoricalWeather#setEndDate(Date)},
+ * so the range is split into monthly requests, the first and last clipped to
+ * the range, which run in parallel. The decoded responses are passed to the
+ * handler in date order, one month after the other, as if they were one
+ * response.
+ *
+ * <pre>
+ * HistoricalRangeFetcher fetcher = new HistoricalRangeFetcher(4);
+ * HourlySeriesCollector result = new HourlySeriesCollector();
+ * fetcher.fetch(historicalWeather.setFormat(Format.JSON), &quot;http&quot;, from, to,
+ * 		result);
+ * </pre>
+ *
+ * At most <code>parallelism</code> months are requested or waiting to be
+ * passed on at any time, so a slow first month holds back the rest instead of
+ * buffering the whole range. Days and slots outside the range, or of a date
+ * already passed on with an earlier month, are dropped; days missing from the
+ * responses are logged.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class HistoricalRangeFetcher implements Closeable {
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(HistoricalRangeFetcher.class);
+
+	private final int parallelism;
+	private final ExecutorService executor;
+
+	/**
+	 * Creates a fetcher running on a fixed pool of threads.
+	 *
+	 * @param parallelism
+	 *            the maximum number of concurrent monthly requests.
+	 * @throws IllegalArgumentException
+	 *             if parallelism is less than 1.
+	 */
+	public HistoricalRangeFetcher(int parallelism)
+			throws IllegalArgumentException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"The parallelism must be at least 1.");
+		}
+		this.parallelism = parallelism;
+		this.executor = Executors.newFixedThreadPool(parallelism,
+				new WorkerThreadFactory());
+	}
+
+	/**
+	 * Fetches a date range on the default transport.
+	 *
+	 * @see #fetch(Request, LocalDate, LocalDate, WeatherHandler)
+	 */
+	public int fetch(HistoricalWeather weather, String scheme, Date start,
+			Date end, WeatherHandler handler) throws IOException,
+			URISyntaxException {
+		return fetch(weather.buildRequestAttributes(scheme,
+				HttpTransport.getDefault()), LocalDate.fromDateFields(start),
+				LocalDate.fromDateFields(end), handler);
+	}
+
+	/**
+	 * Fetches a date range, passing the decoded days and slots to the handler
+	 * in date order. Returns when every month has been passed on.
+	 *
+	 * @param prototype
+	 *            a past weather request in XML or JSON; its date and end date
+	 *            are replaced by those of each month.
+	 * @param start
+	 *            the first date.
+	 * @param end
+	 *            the last date, inclusive.
+	 * @param handler
+	 *            receives the decoded objects, from the calling thread.
+	 * @return the number of days passed on.
+	 * @throws IllegalArgumentException
+	 *             if end is before start.
+	 * @throws IOException
+	 *             if a monthly request fails; the remaining months are
+	 *             cancelled.
+	 */
+	public int fetch(Request prototype, LocalDate start, LocalDate end,
+			WeatherHandler handler) throws IllegalArgumentException,
+			IOException {
+		if (end.isBefore(start)) {
+			throw new IllegalArgumentException(
+					"The end date must not be before the start date.");
+		}
+		final RequestTemplate template = RequestTemplate.compile(prototype,
+				"date", "enddate");
+		List<LocalDate[]> months = split(start, end);
+		List<Future<MonthEvents>> window = new ArrayList<Future<MonthEvents>>(
+				months.size());
+		Merger merger = new Merger(start, end, handler);
+		try {
+			for (int i = 0; i < months.size(); i++) {
+				while (window.size() < months.size()
+						&& window.size() < i + parallelism) {
+					window.add(submit(template, months.get(window.size())));
+				}
+				MonthEvents events = window.get(i).get();
+				window.set(i, null);
+				merger.replay(events);
+			}
+		} catch (InterruptedException e) {
+			cancel(window);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for a month.");
+		} catch (ExecutionException e) {
+			cancel(window);
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch (RuntimeException e) {
+			cancel(window);
+			throw e;
+		}
+		merger.finish();
+		return merger.days;
+	}
+
+	/**
+	 * The maximum number of concurrent monthly requests.
+	 *
+	 * @return the parallelism.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Stops the worker threads. Running fetches fail.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * The first and last date of each month of a range, clipped to the range.
+	 */
+	static List<LocalDate[]> split(LocalDate start, LocalDate end) {
+		List<LocalDate[]> months = new ArrayList<LocalDate[]>();
+		LocalDate first = start;
+		while (!first.isAfter(end)) {
+			LocalDate last = first.dayOfMonth().withMaximumValue();
+			if (last.isAfter(end)) {
+				last = end;
+			}
+			months.add(new LocalDate[] { first, last });
+			first = last.plusDays(1);
+		}
+		return months;
+	}
+
+	private Future<MonthEvents> submit(final RequestTemplate template,
+			final LocalDate[] month) {
+		return executor.submit(new Callable<MonthEvents>() {
+			@Override
+			public MonthEvents call() throws IOException {
+				MonthEvents events = new MonthEvents();
+				template.newRequest(month[0].toString(), month[1].toString())
+						.parse(events);
+				return events;
+			}
+		});
+	}
+
+	private static void cancel(List<Future<MonthEvents>> window) {
+		for (Future<MonthEvents> future : window) {
+			if (future != null) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * The decoded objects of one month in the order of the response.
+	 */
+	private static class MonthEvents implements WeatherHandler {
+		final List<Object> events = new ArrayList<Object>(32 * 9);
+		String requestType;
+		String query;
+
+		@Override
+		public void request(String type, String query) {
+			this.requestType = type;
+			this.query = query;
+		}
+
+		@Override
+		public void currentCondition(CurrentCondition condition) {
+			events.add(condition);
+		}
+
+		@Override
+		public void hourlySlot(HourlySlot slot) {
+			events.add(slot);
+		}
+
+		@Override
+		public void tide(Tide tide) {
+			events.add(tide);
+		}
+
+		@Override
+		public void dailyForecast(DailyForecast forecast) {
+			events.add(forecast);
+		}
+
+		@Override
+		public void searchHit(SearchHit hit) {
+		}
+
+		@Override
+		public void nearestArea(SearchHit area) {
+			events.add(new SearchHit[] { area });
+		}
+
+		@Override
+		public void timeZone(TimeZoneInfo timeZone) {
+			events.add(timeZone);
+		}
+
+		@Override
+		public void error(String message) {
+			events.add(message);
+		}
+	}
+
+	/**
+	 * Passes the months on in order, keeping the request and nearest area of
+	 * the first month only and dropping repeated or out of range dates.
+	 */
+	private static class Merger {
+		private final LocalDate start;
+		private final LocalDate end;
+		private final WeatherHandler handler;
+		private boolean first = true;
+		/**
+		 * The last date passed on with an earlier month.
+		 */
+		private LocalDate passed;
+		private LocalDate expected;
+		int days;
+
+		Merger(LocalDate start, LocalDate end, WeatherHandler handler) {
+			this.start = start;
+			this.end = end;
+			this.handler = handler;
+			this.expected = start;
+		}
+
+		void replay(MonthEvents month) {
+			if (first && month.requestType != null) {
+				handler.request(month.requestType, month.query);
+			}
+			LocalDate latest = passed;
+			for (Object event : month.events) {
+				if (event instanceof DailyForecast) {
+					DailyForecast day = (DailyForecast) event;
+					if (accepts(day.getDate())) {
+						checkGap(day.getDate());
+						handler.dailyForecast(day);
+						days++;
+						if (latest == null || day.getDate().isAfter(latest)) {
+							latest = day.getDate();
+						}
+					}
+				} else if (event instanceof HourlySlot) {
+					HourlySlot slot = (HourlySlot) event;
+					if (accepts(slot.getDate())) {
+						handler.hourlySlot(slot);
+					}
+				} else if (event instanceof Tide) {
+					handler.tide((Tide) event);
+				} else if (event instanceof CurrentCondition) {
+					handler.currentCondition((CurrentCondition) event);
+				} else if (event instanceof SearchHit[]) {
+					if (first) {
+						handler.nearestArea(((SearchHit[]) event)[0]);
+					}
+				} else if (event instanceof TimeZoneInfo) {
+					if (first) {
+						handler.timeZone((TimeZoneInfo) event);
+					}
+				} else if (event instanceof String) {
+					handler.error((String) event);
+				}
+			}
+			passed = latest;
+			first = false;
+		}
+
+		void finish() {
+			if (expected != null && !expected.isAfter(end)) {
+				LOGGER.warn("No past weather from {} to {}.", expected, end);
+			}
+		}
+
+		private boolean accepts(LocalDate date) {
+			return date == null
+					|| (!date.isBefore(start) && !date.isAfter(end) && (passed == null || date
+							.isAfter(passed)));
+		}
+
+		private void checkGap(LocalDate date) {
+			if (date == null || expected == null) {
+				return;
+			}
+			if (date.isAfter(expected)) {
+				LOGGER.warn("No past weather from {} to {}.", expected,
+						date.minusDays(1));
+			}
+			if (!date.isBefore(expected)) {
+				expected = date.plusDays(1);
+			}
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+		private final int poolNumber = POOL_NUMBER.incrementAndGet();
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "wwo-history-" + poolNumber + "-"
+					+ threadNumber.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -2,15 +2,22 @@ package com.example.wwo.historicalweather;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.example.wwo.HttpTransport;
 import com.example.wwo.Location;
 import com.example.wwo.Request;
 import com.example.wwo.Location.LocationType;
+import com.example.wwo.batch.BatchResponse;
+import com.example.wwo.batch.LocationBatch;
 
 /**
  * The Premium Past Weather REST API method allows you to access weather
@@ -23,8 +30,10 @@ import com.example.wwo.Location.LocationType;
  */
 public class HistoricalWeather {
 	protected static final String HOST_URL = "api.worldweatheronline.com";
-	protected static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(
-			"yyyy-MM-dd");
+	protected static final DateTimeFormatter DATE_FORMAT = ISODateTimeFormat
+			.date();
+	private static final DateTimeFormatter EPOCH_DAY_FORMAT = DATE_FORMAT
+			.withZoneUTC();
 	private Map<String, String> parameters;
 	private PackageType packageType;
 
@@ -55,7 +64,65 @@ public class HistoricalWeather {
 		this.parameters = new HashMap<String, String>();
 		parameters.put("key", key);
 		parameters.put("q", location);
-		parameters.put("date", DATE_FORMAT.format(date));
+		parameters.put("date", DATE_FORMAT.print(date.getTime()));
+	}
+
+	/**
+	 * Requests the past weather of a date given as the days since 1970-01-01,
+	 * e.g. a date decoded by
+	 * {@link com.example.wwo.parser.DelimitedRecord#getEpochDay(int)}.
+	 * 
+	 * @param packageType
+	 *            the package type
+	 * @param key
+	 *            the API key.
+	 * @param locationType
+	 *            the location type
+	 * @param location
+	 *            the location.
+	 * @param epochDay
+	 *            the date to return the weather for.
+	 * @throws IllegalArgumentException
+	 *             if location is not valid.
+	 */
+	public HistoricalWeather(PackageType packageType, String key,
+			LocationType locationType, String location, long epochDay)
+			throws IllegalArgumentException {
+		Location.validateLocation(locationType, location);
+		this.packageType = packageType;
+		this.parameters = new HashMap<String, String>();
+		parameters.put("key", key);
+		parameters.put("q", location);
+		parameters.put("date", formatEpochDay(epochDay));
+	}
+
+	/**
+	 * Requests the past weather of several locations in one call. Only the
+	 * premium API accepts more than one location; split the response with
+	 * {@link BatchResponse#split(java.io.InputStream, LocationBatch)}.
+	 * 
+	 * @param packageType
+	 *            the package type
+	 * @param key
+	 *            the API key.
+	 * @param batch
+	 *            the validated locations.
+	 * @param date
+	 *            the date to return the weather for.
+	 * @throws IllegalArgumentException
+	 *             if the batch has more than one location on the free API.
+	 */
+	public HistoricalWeather(PackageType packageType, String key,
+			LocationBatch batch, Date date) throws IllegalArgumentException {
+		if (packageType == PackageType.FREE && batch.size() > 1) {
+			throw new IllegalArgumentException(
+					"Multiple locations are supported only by the Premium API.");
+		}
+		this.packageType = packageType;
+		this.parameters = new HashMap<String, String>();
+		parameters.put("key", key);
+		parameters.put("q", batch.toQuery());
+		parameters.put("date", DATE_FORMAT.print(date.getTime()));
 	}
 
 	/**
@@ -68,11 +135,36 @@ public class HistoricalWeather {
 	 */
 	public Request buildRequestAttributes(String scheme) throws IOException,
 			URISyntaxException {
+		return buildRequestAttributes(scheme, HttpTransport.getDefault());
+	}
+
+	/**
+	 * Builds the request on the given transport instead of the default one.
+	 * 
+	 * @param scheme
+	 *            http or https.
+	 * @param transport
+	 *            the shared transport to execute the request on.
+	 * @return the request.
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public Request buildRequestAttributes(String scheme, HttpTransport transport)
+			throws IOException, URISyntaxException {
 		Request ret = new Request(parameters, packageType.getBaseUrl(),
-				HOST_URL, scheme);
+				HOST_URL, scheme, transport);
 		return ret;
 	}
 
+	/**
+	 * The request parameters, shared with the built requests.
+	 * 
+	 * @return the parameters.
+	 */
+	Map<String, String> getParameters() {
+		return parameters;
+	}
+
 	/**
 	 * Include extra information.
 	 * 
@@ -116,30 +208,46 @@ public class HistoricalWeather {
 	 *             when the enddate parameter is not in the same month and year
 	 *             as the date parameter, or if the enddate is before date.
 	 */
-	@SuppressWarnings("deprecation")
 	public HistoricalWeather setEndDate(Date endDate) {
-		try {
-			Date date = DATE_FORMAT.parse(parameters.get("date"));
-			if (endDate.before(date)) {
-				throw new IllegalArgumentException(
-						"The enddate must be after the date.");
-			} else {
-				if (endDate.getMonth() != date.getMonth()) {
-					throw new IllegalArgumentException(
-							"The enddate parameter must have the same month as the date parameter.");
-				} else if (endDate.getYear() != date.getYear()) {
-					throw new IllegalArgumentException(
-							"The  enddate parameter must have the same year as the date parameter.");
-				}
-			}
-		} catch (ParseException e) {
-			System.err.println(e.getMessage());
+		return setEndDate(LocalDate.fromDateFields(endDate));
+	}
+
+	/**
+	 * Specifies the ending date as the days since 1970-01-01.
+	 * 
+	 * @param epochDay
+	 *            the end date.
+	 * @return a reference to this object.
+	 * @throws IllegalArgumentException
+	 *             when the enddate parameter is not in the same month and year
+	 *             as the date parameter, or if the enddate is before date.
+	 * @see #setEndDate(Date)
+	 */
+	public HistoricalWeather setEndDate(long epochDay) {
+		return setEndDate(new LocalDate(epochDay
+				* DateTimeConstants.MILLIS_PER_DAY, DateTimeZone.UTC));
+	}
+
+	private HistoricalWeather setEndDate(LocalDate endDate) {
+		LocalDate date = DATE_FORMAT.parseLocalDate(parameters.get("date"));
+		if (endDate.isBefore(date)) {
+			throw new IllegalArgumentException(
+					"The enddate must be after the date.");
+		} else if (endDate.getMonthOfYear() != date.getMonthOfYear()) {
+			throw new IllegalArgumentException(
+					"The enddate parameter must have the same month as the date parameter.");
+		} else if (endDate.getYear() != date.getYear()) {
+			throw new IllegalArgumentException(
+					"The  enddate parameter must have the same year as the date parameter.");
 		}
-		String dateString = DATE_FORMAT.format(endDate);
-		parameters.put("enddate", dateString);
+		parameters.put("enddate", DATE_FORMAT.print(endDate));
 		return this;
 	}
 
+	private static String formatEpochDay(long epochDay) {
+		return EPOCH_DAY_FORMAT.print(epochDay * DateTimeConstants.MILLIS_PER_DAY);
+	}
+
 	/**
 	 * Whether to return the nearest weather point for which the weather data is
 	 * returned for a given postcode, zipcode and lat/lon values. Default is
@@ -0,0 +1,446 @@
+package com.example.wwo.historicalweather;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.client.HttpResponseException;
+
+import com.example.wwo.HttpTransport;
+import com.example.wwo.cache.CachePolicy;
+
+/**
+ * Persistent store of past weather responses. Observations of a date which has
+ * passed never change, so they are downloaded once and then served from disk,
+ * also after a restart.
+ *
+ * Bodies are appended to segment files (<code>segment-NNNNN.dat</code>) which
+ * are read through {@link MappedByteBuffer}s. A compact append-only index file
+ * (<code>index.dat</code>) maps each request key to its segment, offset and
+ * length; it is loaded into memory on open. The key is built from the request
+ * parameters which determine the response (location, date, end date, interval,
+ * extras, format, include location), the API key is not part of it.
+ *
+ * <pre>
+ * HistoricalWeatherStore store = HistoricalWeatherStore.open(new File(&quot;history&quot;));
+ * InputStream in = store.run(historicalWeather, &quot;http&quot;);
+ * </pre>
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class HistoricalWeatherStore implements Closeable {
+	/**
+	 * Default size after which a new segment file is started.
+	 */
+	public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String INDEX_FILE = "index.dat";
+	private static final String[] IGNORED_PARAMETERS = { "key", "callback" };
+
+	private final File directory;
+	private final long segmentSize;
+	private final Map<String, Pointer> index = new ConcurrentHashMap<String, Pointer>();
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private DataOutputStream indexOut;
+	private volatile boolean closed;
+
+	private HistoricalWeatherStore(File directory, long segmentSize) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Opens or creates a store with the default segment size.
+	 *
+	 * @param directory
+	 *            the directory of the store.
+	 * @return the store.
+	 * @throws IOException
+	 *             if the store cannot be opened.
+	 */
+	public static HistoricalWeatherStore open(File directory)
+			throws IOException {
+		return open(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Opens or creates a store.
+	 *
+	 * @param directory
+	 *            the directory of the store.
+	 * @param segmentSize
+	 *            the size after which a new segment file is started.
+	 * @return the store.
+	 * @throws IOException
+	 *             if the store cannot be opened.
+	 * @throws IllegalArgumentException
+	 *             if segmentSize is not between 1 byte and 2 GB.
+	 */
+	public static HistoricalWeatherStore open(File directory, long segmentSize)
+			throws IOException, IllegalArgumentException {
+		if (segmentSize < 1 || segmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					"The segment size must be between 1 byte and 2 GB.");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		HistoricalWeatherStore store = new HistoricalWeatherStore(directory,
+				segmentSize);
+		store.load();
+		return store;
+	}
+
+	/**
+	 * Returns the stored response of a request, or downloads it. Successful
+	 * responses of dates which have passed are stored for later calls.
+	 *
+	 * @param weather
+	 *            the request.
+	 * @param scheme
+	 *            http or https.
+	 * @return the response body.
+	 * @throws HttpResponseException
+	 *             if the status of the response is not 2xx.
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public InputStream run(HistoricalWeather weather, String scheme)
+			throws IOException, URISyntaxException {
+		return run(weather, scheme, HttpTransport.getDefault());
+	}
+
+	/**
+	 * Returns the stored response of a request, or downloads it on the given
+	 * transport. Successful responses of dates which have passed are stored
+	 * for later calls.
+	 *
+	 * @param weather
+	 *            the request.
+	 * @param scheme
+	 *            http or https.
+	 * @param transport
+	 *            the transport to download on.
+	 * @return the response body.
+	 * @throws HttpResponseException
+	 *             if the status of the response is not 2xx; nothing is
+	 *             stored.
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public InputStream run(HistoricalWeather weather, String scheme,
+			HttpTransport transport) throws IOException, URISyntaxException {
+		ByteBuffer stored = get(weather);
+		if (stored != null) {
+			return new ByteBufferInputStream(stored);
+		}
+		byte[] body = weather.buildRequestAttributes(scheme, transport)
+				.fetchSuccessBytes();
+		if (CachePolicy.isPast(weather.getParameters()) && !isError(body)) {
+			put(weather, body);
+		}
+		return new ByteArrayInputStream(body);
+	}
+
+	/**
+	 * Returns a stored response.
+	 *
+	 * @param weather
+	 *            the request.
+	 * @return a read-only view of the mapped body, or null if not stored.
+	 * @throws IOException
+	 *             if the segment cannot be mapped.
+	 */
+	public ByteBuffer get(HistoricalWeather weather) throws IOException {
+		return get(keyOf(weather.getParameters()));
+	}
+
+	/**
+	 * Stores a response. An already stored response of the same request is
+	 * kept.
+	 *
+	 * @param weather
+	 *            the request.
+	 * @param body
+	 *            the response body.
+	 * @throws IOException
+	 *             if the store cannot be written.
+	 */
+	public void put(HistoricalWeather weather, byte[] body) throws IOException {
+		put(keyOf(weather.getParameters()), body);
+	}
+
+	/**
+	 * Whether a response of the request is stored.
+	 *
+	 * @param weather
+	 *            the request.
+	 * @return true if stored, else false.
+	 */
+	public boolean contains(HistoricalWeather weather) {
+		return index.containsKey(keyOf(weather.getParameters()));
+	}
+
+	/**
+	 * The number of stored responses.
+	 *
+	 * @return the number of responses.
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (indexOut != null) {
+				indexOut.close();
+			}
+		} finally {
+			for (Segment segment : segments) {
+				segment.close();
+			}
+		}
+	}
+
+	ByteBuffer get(String key) throws IOException {
+		Pointer pointer = index.get(key);
+		if (pointer == null) {
+			return null;
+		}
+		Segment segment;
+		synchronized (this) {
+			ensureOpen();
+			segment = segments.get(pointer.segment);
+		}
+		return segment.slice(pointer.offset, pointer.length);
+	}
+
+	synchronized void put(String key, byte[] body) throws IOException {
+		ensureOpen();
+		if (index.containsKey(key)) {
+			return;
+		}
+		Segment segment = segments.get(segments.size() - 1);
+		if (segment.size() > 0 && segment.size() + body.length > segmentSize) {
+			segment = openSegment(segments.size());
+			segments.add(segment);
+		}
+		long offset = segment.append(body);
+		Pointer pointer = new Pointer(segments.size() - 1, offset, body.length);
+		// the index record is written after the data, so it never points
+		// to bytes which are not on disk
+		byte[] keyBytes = key.getBytes(UTF_8);
+		indexOut.writeShort(keyBytes.length);
+		indexOut.write(keyBytes);
+		indexOut.writeInt(pointer.segment);
+		indexOut.writeLong(pointer.offset);
+		indexOut.writeInt(pointer.length);
+		indexOut.flush();
+		index.put(key, pointer);
+	}
+
+	private void load() throws IOException {
+		for (int i = 0;; i++) {
+			File file = segmentFile(i);
+			if (i > 0 && !file.exists()) {
+				break;
+			}
+			segments.add(openSegment(i));
+		}
+		File indexFile = new File(directory, INDEX_FILE);
+		long valid = 0;
+		if (indexFile.exists()) {
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(new FileInputStream(
+							indexFile)));
+			try {
+				while (true) {
+					byte[] keyBytes = new byte[in.readUnsignedShort()];
+					in.readFully(keyBytes);
+					Pointer pointer = new Pointer(in.readInt(), in.readLong(),
+							in.readInt());
+					if (pointer.segment >= segments.size()
+							|| pointer.offset + pointer.length > segments.get(
+									pointer.segment).size()) {
+						break;
+					}
+					index.put(new String(keyBytes, UTF_8), pointer);
+					valid += 2 + keyBytes.length + 16;
+				}
+			} catch (EOFException e) {
+				// a record was cut off by a crash, it is dropped below
+			} finally {
+				in.close();
+			}
+		}
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+		try {
+			raf.setLength(valid);
+		} finally {
+			raf.close();
+		}
+		indexOut = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(indexFile, true)));
+	}
+
+	private Segment openSegment(int number) throws IOException {
+		return new Segment(new RandomAccessFile(segmentFile(number), "rw")
+				.getChannel());
+	}
+
+	private File segmentFile(int number) {
+		return new File(directory, String.format("segment-%05d.dat", number));
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("The store is closed.");
+		}
+	}
+
+	static String keyOf(Map<String, String> parameters) {
+		Map<String, String> sorted = new TreeMap<String, String>(parameters);
+		for (String ignored : IGNORED_PARAMETERS) {
+			sorted.remove(ignored);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> param : sorted.entrySet()) {
+			if (sb.length() > 0) {
+				sb.append('&');
+			}
+			sb.append(param.getKey()).append('=').append(param.getValue());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The API answers errors (e.g. invalid key or quota) with an error element
+	 * at the start of the body; those must not be stored forever. A missing
+	 * body is an error as well.
+	 */
+	static boolean isError(byte[] body) {
+		if (body == null) {
+			return true;
+		}
+		String head = new String(body, 0, Math.min(body.length, 64), UTF_8);
+		return head.contains("\"error\"") || head.contains("<error>");
+	}
+
+	private static class Pointer {
+		final int segment;
+		final long offset;
+		final int length;
+
+		Pointer(int segment, long offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * One append-only data file and its current read-only mapping. The mapping
+	 * is extended when a read reaches beyond it.
+	 */
+	private static class Segment {
+		private final FileChannel channel;
+		private long size;
+		private volatile MappedByteBuffer mapped;
+
+		Segment(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+		}
+
+		synchronized long size() {
+			return size;
+		}
+
+		synchronized long append(byte[] body) throws IOException {
+			long offset = size;
+			ByteBuffer buffer = ByteBuffer.wrap(body);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, offset + buffer.position());
+			}
+			size += body.length;
+			return offset;
+		}
+
+		ByteBuffer slice(long offset, int length) throws IOException {
+			MappedByteBuffer view = mapped;
+			if (view == null || offset + length > view.capacity()) {
+				synchronized (this) {
+					view = mapped;
+					if (view == null || offset + length > view.capacity()) {
+						view = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+								size);
+						mapped = view;
+					}
+				}
+			}
+			ByteBuffer slice = view.duplicate();
+			slice.position((int) offset);
+			slice.limit((int) offset + length);
+			return slice.slice().asReadOnlyBuffer();
+		}
+
+		void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
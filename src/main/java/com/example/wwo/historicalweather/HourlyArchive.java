@@ -0,0 +1,852 @@
+package com.example.wwo.historicalweather;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.example.wwo.model.HourlySeries;
+
+/**
+ * Compressed columnar file of the hourly weather of one location, to keep
+ * years of observations in a fraction of the size of the responses and to
+ * scan one variable without decoding the others.
+ *
+ * Rows are appended from {@link HourlySeries} and written in blocks of a
+ * fixed number of rows. A block starts with a header of its row count, time
+ * range and the length of each column, followed by the columns one after the
+ * other:
+ * <ul>
+ * <li>the times as the delta of their deltas, one bit per row while the
+ * interval does not change;</li>
+ * <li>the decimals as the XOR of each value with the previous one, storing
+ * only its meaningful bits, as in Facebook's Gorilla;</li>
+ * <li>the whole numbers as the delta to the previous value, one bit per row
+ * while it does not change.</li>
+ * </ul>
+ *
+ * The file is read through a {@link MappedByteBuffer}. A scan of a variable,
+ * see {@link #scan(Column, long, long, ValueHandler)}, skips the blocks out of
+ * its time range by their header and decodes the times and that column only.
+ *
+ * <pre>
+ * HourlyArchive archive = HourlyArchive.open(new File(&quot;london.wwa&quot;));
+ * archive.append(collector.getSeries());
+ * archive.scan(Column.TEMP_C, from, to, handler);
+ * </pre>
+ *
+ * Rows must be appended in time order; rows at or before the last archived
+ * time are skipped, so appending overlapping ranges adds no duplicates. The
+ * rows of the last, partial block are kept in memory until it is full or
+ * {@link #flush()} is called, and are included in reads. A block cut off by a
+ * crash is dropped on open. Thread-safe; reads run concurrently.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class HourlyArchive implements Closeable {
+	/**
+	 * Default number of rows of a block, about 170 days of hourly rows.
+	 */
+	public static final int DEFAULT_BLOCK_ROWS = 4096;
+
+	private static final int MAGIC = 0x57574F41;
+	private static final int VERSION = 1;
+	private static final int FILE_HEADER = 8;
+	private static final Column[] COLUMNS = Column.values();
+	/**
+	 * Block length, rows, first and last time, then the length of the time
+	 * chunk and of every column.
+	 */
+	private static final int BLOCK_HEADER = 4 + 4 + 8 + 8 + 4 * (1 + COLUMNS.length);
+
+	private final File file;
+	private final FileChannel channel;
+	private final int blockRows;
+	private final List<Block> blocks = new ArrayList<Block>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Object mapLock = new Object();
+	private volatile MappedByteBuffer mapped;
+	private long fileSize;
+	private HourlySeries pending;
+	private long lastTime = Long.MIN_VALUE;
+	private int archivedRows;
+	private boolean closed;
+
+	private HourlyArchive(File file, FileChannel channel, int blockRows) {
+		this.file = file;
+		this.channel = channel;
+		this.blockRows = blockRows;
+		this.pending = new HourlySeries(blockRows);
+	}
+
+	/**
+	 * Opens or creates an archive with the default block size.
+	 *
+	 * @param file
+	 *            the archive file.
+	 * @return the archive.
+	 * @throws IOException
+	 *             if the file cannot be opened or is not an archive.
+	 */
+	public static HourlyArchive open(File file) throws IOException {
+		return open(file, DEFAULT_BLOCK_ROWS);
+	}
+
+	/**
+	 * Opens or creates an archive.
+	 *
+	 * @param file
+	 *            the archive file.
+	 * @param blockRows
+	 *            the number of rows of the blocks written.
+	 * @return the archive.
+	 * @throws IOException
+	 *             if the file cannot be opened or is not an archive.
+	 * @throws IllegalArgumentException
+	 *             if blockRows is less than 1.
+	 */
+	public static HourlyArchive open(File file, int blockRows)
+			throws IOException, IllegalArgumentException {
+		if (blockRows < 1) {
+			throw new IllegalArgumentException(
+					"The block must have at least 1 row.");
+		}
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		HourlyArchive archive = new HourlyArchive(file, channel, blockRows);
+		try {
+			archive.load();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return archive;
+	}
+
+	/**
+	 * Appends the rows of a series after the last archived time.
+	 *
+	 * @param series
+	 *            the rows, in time order.
+	 * @return the number of rows appended.
+	 * @throws IOException
+	 *             if a full block cannot be written.
+	 */
+	public int append(HourlySeries series) throws IOException {
+		lock.writeLock().lock();
+		try {
+			ensureOpen();
+			int appended = 0;
+			for (int row = 0; row < series.size(); row++) {
+				long time = series.getTime(row);
+				if (time <= lastTime) {
+					continue;
+				}
+				int copy = pending.append(time);
+				for (Column column : COLUMNS) {
+					column.set(pending, copy, column.get(series, row));
+				}
+				lastTime = time;
+				appended++;
+				if (pending.size() == blockRows) {
+					writeBlock();
+				}
+			}
+			return appended;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes the rows kept in memory as a partial block.
+	 *
+	 * @throws IOException
+	 *             if the block cannot be written.
+	 */
+	public void flush() throws IOException {
+		lock.writeLock().lock();
+		try {
+			ensureOpen();
+			if (!pending.isEmpty()) {
+				writeBlock();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads every column of the rows in a time range.
+	 *
+	 * @param from
+	 *            the first time, inclusive, see
+	 *            {@link HourlySeries#time(long, int)}.
+	 * @param to
+	 *            the last time, exclusive.
+	 * @return the rows.
+	 * @throws IOException
+	 *             if the file cannot be mapped or is corrupt.
+	 */
+	public HourlySeries read(long from, long to) throws IOException {
+		lock.readLock().lock();
+		try {
+			ensureOpen();
+			HourlySeries result = new HourlySeries();
+			long[] times = new long[0];
+			float[] values = new float[0];
+			for (Block block : blocks) {
+				if (!block.overlaps(from, to)) {
+					continue;
+				}
+				if (times.length < block.rows) {
+					times = new long[block.rows];
+					values = new float[block.rows];
+				}
+				ByteBuffer buffer = map();
+				decodeTimes(buffer, block, times);
+				int first = result.size();
+				int[] rows = new int[block.rows];
+				for (int i = 0; i < block.rows; i++) {
+					rows[i] = times[i] >= from && times[i] < to ? result
+							.append(times[i]) : -1;
+				}
+				for (int c = 0; c < COLUMNS.length; c++) {
+					decodeColumn(buffer, block, c, values);
+					for (int i = 0; i < block.rows; i++) {
+						if (rows[i] >= first) {
+							COLUMNS[c].set(result, rows[i], values[i]);
+						}
+					}
+				}
+			}
+			for (int row = 0; row < pending.size(); row++) {
+				long time = pending.getTime(row);
+				if (time >= from && time < to) {
+					int copy = result.append(time);
+					for (Column column : COLUMNS) {
+						column.set(result, copy, column.get(pending, row));
+					}
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Passes the values of one column in a time range to a handler, decoding
+	 * only the times and that column of the blocks in the range.
+	 *
+	 * @param column
+	 *            the variable.
+	 * @param from
+	 *            the first time, inclusive, see
+	 *            {@link HourlySeries#time(long, int)}.
+	 * @param to
+	 *            the last time, exclusive.
+	 * @param handler
+	 *            receives the values in time order.
+	 * @return the number of values passed.
+	 * @throws IOException
+	 *             if the file cannot be mapped or is corrupt.
+	 */
+	public int scan(Column column, long from, long to, ValueHandler handler)
+			throws IOException {
+		lock.readLock().lock();
+		try {
+			ensureOpen();
+			int count = 0;
+			long[] times = new long[0];
+			float[] values = new float[0];
+			for (Block block : blocks) {
+				if (!block.overlaps(from, to)) {
+					continue;
+				}
+				if (times.length < block.rows) {
+					times = new long[block.rows];
+					values = new float[block.rows];
+				}
+				ByteBuffer buffer = map();
+				decodeTimes(buffer, block, times);
+				decodeColumn(buffer, block, column.ordinal(), values);
+				for (int i = 0; i < block.rows; i++) {
+					if (times[i] >= from && times[i] < to) {
+						handler.value(times[i], values[i]);
+						count++;
+					}
+				}
+			}
+			for (int row = 0; row < pending.size(); row++) {
+				long time = pending.getTime(row);
+				if (time >= from && time < to) {
+					handler.value(time, column.get(pending, row));
+					count++;
+				}
+			}
+			return count;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The number of archived rows, including those kept in memory.
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return archivedRows + pending.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The time of the last row, or {@link Long#MIN_VALUE} if empty.
+	 */
+	public long getLastTime() {
+		lock.readLock().lock();
+		try {
+			return lastTime;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The size of the file, without the rows kept in memory.
+	 */
+	public long getFileSize() {
+		lock.readLock().lock();
+		try {
+			return fileSize;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Writes the rows kept in memory and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (closed) {
+				return;
+			}
+			try {
+				if (!pending.isEmpty()) {
+					writeBlock();
+				}
+			} finally {
+				closed = true;
+				channel.close();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void load() throws IOException {
+		long size = channel.size();
+		if (size == 0) {
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			write(header, 0);
+			fileSize = FILE_HEADER;
+			return;
+		}
+		ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+		read(header, 0, FILE_HEADER);
+		if (header.getInt(0) != MAGIC) {
+			throw new IOException("Not an hourly archive: " + file);
+		}
+		if (header.getInt(4) != VERSION) {
+			throw new IOException("Unsupported archive version "
+					+ header.getInt(4) + ": " + file);
+		}
+		long position = FILE_HEADER;
+		while (position + BLOCK_HEADER <= size) {
+			header.clear();
+			read(header, position, BLOCK_HEADER);
+			int length = header.getInt(0);
+			if (length < BLOCK_HEADER - 4 || position + 4 + length > size) {
+				break;
+			}
+			Block block = new Block(position, header);
+			blocks.add(block);
+			archivedRows += block.rows;
+			lastTime = block.lastTime;
+			position += 4 + length;
+		}
+		if (position < size) {
+			// a block was cut off by a crash
+			channel.truncate(position);
+		}
+		fileSize = position;
+	}
+
+	private void writeBlock() throws IOException {
+		int rows = pending.size();
+		byte[][] chunks = new byte[1 + COLUMNS.length][];
+		chunks[0] = encodeTimes(pending);
+		for (int c = 0; c < COLUMNS.length; c++) {
+			chunks[1 + c] = COLUMNS[c].decimal ? encodeDecimals(pending,
+					COLUMNS[c]) : encodeWholeNumbers(pending, COLUMNS[c]);
+		}
+		int length = BLOCK_HEADER - 4;
+		for (byte[] chunk : chunks) {
+			length += chunk.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+		buffer.putInt(length).putInt(rows).putLong(pending.getTime(0))
+				.putLong(pending.getTime(rows - 1));
+		for (byte[] chunk : chunks) {
+			buffer.putInt(chunk.length);
+		}
+		for (byte[] chunk : chunks) {
+			buffer.put(chunk);
+		}
+		buffer.flip();
+		write(buffer, fileSize);
+		buffer.rewind();
+		blocks.add(new Block(fileSize, buffer));
+		fileSize += buffer.capacity();
+		archivedRows += rows;
+		pending = new HourlySeries(blockRows);
+	}
+
+	private ByteBuffer map() throws IOException {
+		MappedByteBuffer view = mapped;
+		if (view == null || view.capacity() < fileSize) {
+			synchronized (mapLock) {
+				view = mapped;
+				if (view == null || view.capacity() < fileSize) {
+					if (fileSize > Integer.MAX_VALUE) {
+						throw new IOException("The archive is too large: "
+								+ file);
+					}
+					view = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+							fileSize);
+					mapped = view;
+				}
+			}
+		}
+		return view;
+	}
+
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private void read(ByteBuffer buffer, long position, int length)
+			throws IOException {
+		buffer.clear();
+		buffer.limit(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of archive: " + file);
+			}
+		}
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("The archive is closed.");
+		}
+	}
+
+	static byte[] encodeTimes(HourlySeries series) {
+		BitWriter out = new BitWriter(series.size() / 4 + 16);
+		long previous = series.getTime(0);
+		out.write(previous, 64);
+		long previousDelta = 0;
+		for (int row = 1; row < series.size(); row++) {
+			long time = series.getTime(row);
+			long delta = time - previous;
+			out.writeBucketed(delta - previousDelta);
+			previousDelta = delta;
+			previous = time;
+		}
+		return out.toByteArray();
+	}
+
+	static byte[] encodeDecimals(HourlySeries series, Column column) {
+		BitWriter out = new BitWriter(series.size() * 2 + 16);
+		int previous = Float.floatToRawIntBits(column.get(series, 0));
+		out.write(previous, 32);
+		int leading = -1;
+		int trailing = 0;
+		for (int row = 1; row < series.size(); row++) {
+			int value = Float.floatToRawIntBits(column.get(series, row));
+			int xor = value ^ previous;
+			if (xor == 0) {
+				out.write(0, 1);
+			} else {
+				int lead = Math.min(31, Integer.numberOfLeadingZeros(xor));
+				int trail = Integer.numberOfTrailingZeros(xor);
+				if (leading >= 0 && lead >= leading && trail >= trailing) {
+					// the meaningful bits fit in the previous window
+					out.write(2, 2);
+					out.write(xor >>> trailing, 32 - leading - trailing);
+				} else {
+					int meaningful = 32 - lead - trail;
+					out.write(3, 2);
+					out.write(lead, 5);
+					out.write(meaningful - 1, 5);
+					out.write(xor >>> trail, meaningful);
+					leading = lead;
+					trailing = trail;
+				}
+			}
+			previous = value;
+		}
+		return out.toByteArray();
+	}
+
+	static byte[] encodeWholeNumbers(HourlySeries series, Column column) {
+		BitWriter out = new BitWriter(series.size() / 2 + 16);
+		long previous = 0;
+		for (int row = 0; row < series.size(); row++) {
+			long value = (long) column.get(series, row);
+			out.writeBucketed(value - previous);
+			previous = value;
+		}
+		return out.toByteArray();
+	}
+
+	private static void decodeTimes(ByteBuffer buffer, Block block,
+			long[] times) throws IOException {
+		BitReader in = block.reader(buffer, 0);
+		long previous = in.read(64);
+		times[0] = previous;
+		long delta = 0;
+		for (int i = 1; i < block.rows; i++) {
+			delta += in.readBucketed();
+			previous += delta;
+			times[i] = previous;
+		}
+		in.check();
+	}
+
+	private static void decodeColumn(ByteBuffer buffer, Block block,
+			int column, float[] values) throws IOException {
+		BitReader in = block.reader(buffer, 1 + column);
+		if (COLUMNS[column].decimal) {
+			int previous = (int) in.read(32);
+			values[0] = Float.intBitsToFloat(previous);
+			int leading = 0;
+			int meaningful = 0;
+			for (int i = 1; i < block.rows; i++) {
+				if (in.read(1) != 0) {
+					if (in.read(1) != 0) {
+						leading = (int) in.read(5);
+						meaningful = (int) in.read(5) + 1;
+					}
+					int trailing = 32 - leading - meaningful;
+					previous ^= (int) in.read(meaningful) << trailing;
+				}
+				values[i] = Float.intBitsToFloat(previous);
+			}
+		} else {
+			long previous = 0;
+			for (int i = 0; i < block.rows; i++) {
+				previous += in.readBucketed();
+				values[i] = previous;
+			}
+		}
+		in.check();
+	}
+
+	/**
+	 * A variable of the archive.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public static enum Column {
+		TEMP_C(true), FEELS_LIKE_C(true), PRECIP_MM(true), WINDSPEED_KMPH(true), WIND_GUST_KMPH(
+				true), PRESSURE(true), WINDDIR_DEGREE(false), HUMIDITY(false), CLOUDCOVER(
+				false), WEATHER_CODE(false);
+
+		private final boolean decimal;
+
+		private Column(boolean decimal) {
+			this.decimal = decimal;
+		}
+
+		/**
+		 * Whether the values are decimals, else whole numbers.
+		 */
+		public boolean isDecimal() {
+			return decimal;
+		}
+
+		float get(HourlySeries series, int row) {
+			switch (this) {
+			case TEMP_C:
+				return series.getTempC(row);
+			case FEELS_LIKE_C:
+				return series.getFeelsLikeC(row);
+			case PRECIP_MM:
+				return series.getPrecipMM(row);
+			case WINDSPEED_KMPH:
+				return series.getWindspeedKmph(row);
+			case WIND_GUST_KMPH:
+				return series.getWindGustKmph(row);
+			case PRESSURE:
+				return series.getPressure(row);
+			case WINDDIR_DEGREE:
+				return series.getWinddirDegree(row);
+			case HUMIDITY:
+				return series.getHumidity(row);
+			case CLOUDCOVER:
+				return series.getCloudcover(row);
+			default:
+				return series.getWeatherCode(row);
+			}
+		}
+
+		void set(HourlySeries series, int row, float value) {
+			switch (this) {
+			case TEMP_C:
+				series.setTempC(row, value);
+				break;
+			case FEELS_LIKE_C:
+				series.setFeelsLikeC(row, value);
+				break;
+			case PRECIP_MM:
+				series.setPrecipMM(row, value);
+				break;
+			case WINDSPEED_KMPH:
+				series.setWindspeedKmph(row, value);
+				break;
+			case WIND_GUST_KMPH:
+				series.setWindGustKmph(row, value);
+				break;
+			case PRESSURE:
+				series.setPressure(row, value);
+				break;
+			case WINDDIR_DEGREE:
+				series.setWinddirDegree(row, (int) value);
+				break;
+			case HUMIDITY:
+				series.setHumidity(row, (int) value);
+				break;
+			case CLOUDCOVER:
+				series.setCloudcover(row, (int) value);
+				break;
+			default:
+				series.setWeatherCode(row, (int) value);
+			}
+		}
+	}
+
+	/**
+	 * Receives the values of a scan.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public interface ValueHandler {
+
+		/**
+		 * A value of the scanned column.
+		 *
+		 * @param time
+		 *            the time of the row, see
+		 *            {@link HourlySeries#time(long, int)}.
+		 * @param value
+		 *            the value; whole numbers are exact.
+		 */
+		void value(long time, float value);
+	}
+
+	/**
+	 * The header of a written block.
+	 */
+	private static class Block {
+		final int rows;
+		final long firstTime;
+		final long lastTime;
+		/**
+		 * The file position of the time chunk and of every column chunk, and
+		 * the end of the block.
+		 */
+		final long[] chunkStarts = new long[2 + COLUMNS.length];
+
+		Block(long position, ByteBuffer header) {
+			this.rows = header.getInt(4);
+			this.firstTime = header.getLong(8);
+			this.lastTime = header.getLong(16);
+			long start = position + BLOCK_HEADER;
+			for (int i = 0; i <= COLUMNS.length; i++) {
+				chunkStarts[i] = start;
+				start += header.getInt(24 + 4 * i);
+			}
+			chunkStarts[COLUMNS.length + 1] = start;
+		}
+
+		boolean overlaps(long from, long to) {
+			return lastTime >= from && firstTime < to;
+		}
+
+		BitReader reader(ByteBuffer buffer, int chunk) {
+			return new BitReader(buffer, (int) chunkStarts[chunk],
+					(int) chunkStarts[chunk + 1]);
+		}
+	}
+
+	/**
+	 * Appends bits most significant first.
+	 */
+	private static final class BitWriter {
+		private byte[] bytes;
+		private int length;
+		private long bits;
+		private int bitCount;
+
+		BitWriter(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		/**
+		 * Writes the lowest bits of a value, 1 to 64 of them.
+		 */
+		void write(long value, int count) {
+			if (count > 32) {
+				write(value >>> 32, count - 32);
+				count = 32;
+			}
+			bits = (bits << count) | (value & ((1L << count) - 1));
+			bitCount += count;
+			while (bitCount >= 8) {
+				bitCount -= 8;
+				put((byte) (bits >>> bitCount));
+			}
+		}
+
+		/**
+		 * Writes a signed value in as few bits as its size needs: 1 bit for
+		 * 0, up to 69 bits for the largest values.
+		 */
+		void writeBucketed(long value) {
+			if (value == 0) {
+				write(0, 1);
+				return;
+			}
+			long zigzag = (value << 1) ^ (value >> 63);
+			if (zigzag < (1L << 7)) {
+				write(2, 2);
+				write(zigzag, 7);
+			} else if (zigzag < (1L << 9)) {
+				write(6, 3);
+				write(zigzag, 9);
+			} else if (zigzag < (1L << 12)) {
+				write(14, 4);
+				write(zigzag, 12);
+			} else if (zigzag >= 0 && zigzag < (1L << 32)) {
+				write(30, 5);
+				write(zigzag, 32);
+			} else {
+				write(31, 5);
+				write(zigzag, 64);
+			}
+		}
+
+		byte[] toByteArray() {
+			if (bitCount > 0) {
+				put((byte) (bits << (8 - bitCount)));
+				bitCount = 0;
+			}
+			return Arrays.copyOf(bytes, length);
+		}
+
+		private void put(byte b) {
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			bytes[length++] = b;
+		}
+	}
+
+	/**
+	 * Reads the bits of a {@link BitWriter} from a chunk of a buffer.
+	 */
+	private static final class BitReader {
+		private final ByteBuffer buffer;
+		private int position;
+		private final int end;
+		private long bits;
+		private int bitCount;
+		private boolean overrun;
+
+		BitReader(ByteBuffer buffer, int start, int end) {
+			this.buffer = buffer;
+			this.position = start;
+			this.end = end;
+		}
+
+		long read(int count) {
+			if (count > 32) {
+				long high = read(count - 32);
+				return (high << 32) | read(32);
+			}
+			while (bitCount < count) {
+				int b;
+				if (position < end) {
+					b = buffer.get(position++) & 0xFF;
+				} else {
+					b = 0;
+					overrun = true;
+				}
+				bits = (bits << 8) | b;
+				bitCount += 8;
+			}
+			bitCount -= count;
+			return (bits >>> bitCount) & ((1L << count) - 1);
+		}
+
+		long readBucketed() {
+			if (read(1) == 0) {
+				return 0;
+			}
+			long zigzag;
+			if (read(1) == 0) {
+				zigzag = read(7);
+			} else if (read(1) == 0) {
+				zigzag = read(9);
+			} else if (read(1) == 0) {
+				zigzag = read(12);
+			} else if (read(1) == 0) {
+				zigzag = read(32);
+			} else {
+				zigzag = read(64);
+			}
+			return (zigzag >>> 1) ^ -(zigzag & 1);
+		}
+
+		void check() throws IOException {
+			if (overrun) {
+				throw new IOException("Corrupt archive block.");
+			}
+		}
+	}
+}
@@ -2,14 +2,20 @@ package com.example.wwo.localweather;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.joda.time.DateTimeConstants;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.example.wwo.HttpTransport;
 import com.example.wwo.Location;
 import com.example.wwo.Request;
 import com.example.wwo.Location.LocationType;
+import com.example.wwo.batch.BatchResponse;
+import com.example.wwo.batch.LocationBatch;
 
 /**
  * The Premium Local Weather REST API method allows you to access current
@@ -27,8 +33,10 @@ import com.example.wwo.Location.LocationType;
  */
 public class LocalWeather {
 	protected static final String HOST_URL = "api.worldweatheronline.com";
-	protected static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(
-			"yyyy-MM-dd");
+	protected static final DateTimeFormatter DATE_FORMAT = ISODateTimeFormat
+			.date();
+	private static final DateTimeFormatter EPOCH_DAY_FORMAT = DATE_FORMAT
+			.withZoneUTC();
 	private Map<String, String> parameters;
 	private PackageType packageType;
 
@@ -64,6 +72,36 @@ public class LocalWeather {
 		parameters.put("num_of_days", String.valueOf(numberOfDays));
 	}
 
+	/**
+	 * Requests the weather of several locations in one call. Only the premium
+	 * API accepts more than one location; split the response with
+	 * {@link BatchResponse#split(java.io.InputStream, LocationBatch)}.
+	 * 
+	 * @param packageType
+	 *            the package type
+	 * @param key
+	 *            the API key.
+	 * @param batch
+	 *            the validated locations.
+	 * @param numberOfDays
+	 *            number of days of forecast.
+	 * @throws IllegalArgumentException
+	 *             if the batch has more than one location on the free API.
+	 */
+	public LocalWeather(PackageType packageType, String key,
+			LocationBatch batch, int numberOfDays)
+			throws IllegalArgumentException {
+		if (packageType == PackageType.FREE && batch.size() > 1) {
+			throw new IllegalArgumentException(
+					"Multiple locations are supported only by the Premium API.");
+		}
+		this.packageType = packageType;
+		this.parameters = new HashMap<String, String>();
+		parameters.put("key", key);
+		parameters.put("q", batch.toQuery());
+		parameters.put("num_of_days", String.valueOf(numberOfDays));
+	}
+
 	/**
 	 * TODO
 	 * 
@@ -74,8 +112,24 @@ public class LocalWeather {
 	 */
 	public Request buildRequestAttributes(String scheme) throws IOException,
 			URISyntaxException {
+		return buildRequestAttributes(scheme, HttpTransport.getDefault());
+	}
+
+	/**
+	 * Builds the request on the given transport instead of the default one.
+	 * 
+	 * @param scheme
+	 *            http or https.
+	 * @param transport
+	 *            the shared transport to execute the request on.
+	 * @return the request.
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public Request buildRequestAttributes(String scheme, HttpTransport transport)
+			throws IOException, URISyntaxException {
 		Request ret = new Request(parameters, packageType.getBaseUrl(),
-				HOST_URL, scheme);
+				HOST_URL, scheme, transport);
 		return ret;
 	}
 
@@ -120,7 +174,21 @@ public class LocalWeather {
 	 * @return a reference to this object.
 	 */
 	public LocalWeather date(Date date) {
-		String dateString = DATE_FORMAT.format(date);
+		String dateString = DATE_FORMAT.print(date.getTime());
+		parameters.put("date", dateString);
+		return this;
+	}
+
+	/**
+	 * Specifies weather for a date given as the days since 1970-01-01.
+	 * 
+	 * @param epochDay
+	 *            The date which the weather wanted.
+	 * @return a reference to this object.
+	 */
+	public LocalWeather date(long epochDay) {
+		String dateString = EPOCH_DAY_FORMAT.print(epochDay
+				* DateTimeConstants.MILLIS_PER_DAY);
 		parameters.put("date", dateString);
 		return this;
 	}
@@ -2,18 +2,21 @@ package com.example.wwo.marineweather;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.text.SimpleDateFormat;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.example.wwo.HttpTransport;
 import com.example.wwo.Location;
 import com.example.wwo.Request;
 import com.example.wwo.Location.LocationType;
 
 public class MarineWeather {
 	protected static final String HOST_URL = "api.worldweatheronline.com";
-	protected static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(
-			"yyyy-MM-dd");
+	protected static final DateTimeFormatter DATE_FORMAT = ISODateTimeFormat
+			.date();
 	private Map<String, String> parameters;
 	private PackageType packageType;
 
@@ -48,8 +51,24 @@ public class MarineWeather {
 	 */
 	public Request buildRequestAttributes(String scheme) throws IOException,
 			URISyntaxException {
+		return buildRequestAttributes(scheme, HttpTransport.getDefault());
+	}
+
+	/**
+	 * Builds the request on the given transport instead of the default one.
+	 * 
+	 * @param scheme
+	 *            http or https.
+	 * @param transport
+	 *            the shared transport to execute the request on.
+	 * @return the request.
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public Request buildRequestAttributes(String scheme, HttpTransport transport)
+			throws IOException, URISyntaxException {
 		Request ret = new Request(parameters, packageType.getBaseUrl(),
-				HOST_URL, scheme);
+				HOST_URL, scheme, transport);
 		return ret;
 	}
 
@@ -0,0 +1,180 @@
+package com.example.wwo.model;
+
+/**
+ * The current weather of a location, the <code>current_condition</code> element
+ * of a local weather response. Values missing from the response are 0, or NaN
+ * for decimals.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class CurrentCondition {
+	private String observationTime;
+	private int tempC;
+	private int tempF;
+	private int feelsLikeC;
+	private int feelsLikeF;
+	private int weatherCode;
+	private String weatherDescription;
+	private String weatherIconUrl;
+	private int windspeedKmph;
+	private int windspeedMiles;
+	private int winddirDegree;
+	private String winddir16Point;
+	private double precipMM = Double.NaN;
+	private int humidity;
+	private int visibility;
+	private int pressure;
+	private int cloudcover;
+
+	/**
+	 * The UTC time of the observation, e.g. "10:39 AM".
+	 */
+	public String getObservationTime() {
+		return observationTime;
+	}
+
+	public void setObservationTime(String observationTime) {
+		this.observationTime = observationTime;
+	}
+
+	public int getTempC() {
+		return tempC;
+	}
+
+	public void setTempC(int tempC) {
+		this.tempC = tempC;
+	}
+
+	public int getTempF() {
+		return tempF;
+	}
+
+	public void setTempF(int tempF) {
+		this.tempF = tempF;
+	}
+
+	public int getFeelsLikeC() {
+		return feelsLikeC;
+	}
+
+	public void setFeelsLikeC(int feelsLikeC) {
+		this.feelsLikeC = feelsLikeC;
+	}
+
+	public int getFeelsLikeF() {
+		return feelsLikeF;
+	}
+
+	public void setFeelsLikeF(int feelsLikeF) {
+		this.feelsLikeF = feelsLikeF;
+	}
+
+	public int getWeatherCode() {
+		return weatherCode;
+	}
+
+	public void setWeatherCode(int weatherCode) {
+		this.weatherCode = weatherCode;
+	}
+
+	public String getWeatherDescription() {
+		return weatherDescription;
+	}
+
+	public void setWeatherDescription(String weatherDescription) {
+		this.weatherDescription = weatherDescription;
+	}
+
+	public String getWeatherIconUrl() {
+		return weatherIconUrl;
+	}
+
+	public void setWeatherIconUrl(String weatherIconUrl) {
+		this.weatherIconUrl = weatherIconUrl;
+	}
+
+	public int getWindspeedKmph() {
+		return windspeedKmph;
+	}
+
+	public void setWindspeedKmph(int windspeedKmph) {
+		this.windspeedKmph = windspeedKmph;
+	}
+
+	public int getWindspeedMiles() {
+		return windspeedMiles;
+	}
+
+	public void setWindspeedMiles(int windspeedMiles) {
+		this.windspeedMiles = windspeedMiles;
+	}
+
+	public int getWinddirDegree() {
+		return winddirDegree;
+	}
+
+	public void setWinddirDegree(int winddirDegree) {
+		this.winddirDegree = winddirDegree;
+	}
+
+	public String getWinddir16Point() {
+		return winddir16Point;
+	}
+
+	public void setWinddir16Point(String winddir16Point) {
+		this.winddir16Point = winddir16Point;
+	}
+
+	public double getPrecipMM() {
+		return precipMM;
+	}
+
+	public void setPrecipMM(double precipMM) {
+		this.precipMM = precipMM;
+	}
+
+	/**
+	 * Humidity in percent.
+	 */
+	public int getHumidity() {
+		return humidity;
+	}
+
+	public void setHumidity(int humidity) {
+		this.humidity = humidity;
+	}
+
+	/**
+	 * Visibility in kilometres.
+	 */
+	public int getVisibility() {
+		return visibility;
+	}
+
+	public void setVisibility(int visibility) {
+		this.visibility = visibility;
+	}
+
+	/**
+	 * Pressure in millibars.
+	 */
+	public int getPressure() {
+		return pressure;
+	}
+
+	public void setPressure(int pressure) {
+		this.pressure = pressure;
+	}
+
+	/**
+	 * Cloud cover in percent.
+	 */
+	public int getCloudcover() {
+		return cloudcover;
+	}
+
+	public void setCloudcover(int cloudcover) {
+		this.cloudcover = cloudcover;
+	}
+}
@@ -0,0 +1,211 @@
+package com.example.wwo.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+
+/**
+ * The weather of one day, a <code>weather</code> element of a local, historical,
+ * marine or ski weather response. The hourly slots and tides of the day are
+ * decoded separately, see {@link HourlySlot} and {@link Tide}; the levels of a
+ * ski resort are kept with the day. Values missing from the response are 0, or
+ * NaN for decimals.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class DailyForecast {
+	private LocalDate date;
+	private int maxTempC;
+	private int maxTempF;
+	private int minTempC;
+	private int minTempF;
+	private int weatherCode;
+	private String weatherDescription;
+	private int windspeedKmph;
+	private int windspeedMiles;
+	private int winddirDegree;
+	private String winddir16Point;
+	private double precipMM = Double.NaN;
+	private double uvIndex = Double.NaN;
+	private String sunrise;
+	private String sunset;
+	private String moonrise;
+	private String moonset;
+	private int chanceOfSnow;
+	private double totalSnowfallCm = Double.NaN;
+	private List<SkiLevel> skiLevels = new ArrayList<SkiLevel>(3);
+
+	public LocalDate getDate() {
+		return date;
+	}
+
+	public void setDate(LocalDate date) {
+		this.date = date;
+	}
+
+	public int getMaxTempC() {
+		return maxTempC;
+	}
+
+	public void setMaxTempC(int maxTempC) {
+		this.maxTempC = maxTempC;
+	}
+
+	public int getMaxTempF() {
+		return maxTempF;
+	}
+
+	public void setMaxTempF(int maxTempF) {
+		this.maxTempF = maxTempF;
+	}
+
+	public int getMinTempC() {
+		return minTempC;
+	}
+
+	public void setMinTempC(int minTempC) {
+		this.minTempC = minTempC;
+	}
+
+	public int getMinTempF() {
+		return minTempF;
+	}
+
+	public void setMinTempF(int minTempF) {
+		this.minTempF = minTempF;
+	}
+
+	public int getWeatherCode() {
+		return weatherCode;
+	}
+
+	public void setWeatherCode(int weatherCode) {
+		this.weatherCode = weatherCode;
+	}
+
+	public String getWeatherDescription() {
+		return weatherDescription;
+	}
+
+	public void setWeatherDescription(String weatherDescription) {
+		this.weatherDescription = weatherDescription;
+	}
+
+	public int getWindspeedKmph() {
+		return windspeedKmph;
+	}
+
+	public void setWindspeedKmph(int windspeedKmph) {
+		this.windspeedKmph = windspeedKmph;
+	}
+
+	public int getWindspeedMiles() {
+		return windspeedMiles;
+	}
+
+	public void setWindspeedMiles(int windspeedMiles) {
+		this.windspeedMiles = windspeedMiles;
+	}
+
+	public int getWinddirDegree() {
+		return winddirDegree;
+	}
+
+	public void setWinddirDegree(int winddirDegree) {
+		this.winddirDegree = winddirDegree;
+	}
+
+	public String getWinddir16Point() {
+		return winddir16Point;
+	}
+
+	public void setWinddir16Point(String winddir16Point) {
+		this.winddir16Point = winddir16Point;
+	}
+
+	public double getPrecipMM() {
+		return precipMM;
+	}
+
+	public void setPrecipMM(double precipMM) {
+		this.precipMM = precipMM;
+	}
+
+	public double getUvIndex() {
+		return uvIndex;
+	}
+
+	public void setUvIndex(double uvIndex) {
+		this.uvIndex = uvIndex;
+	}
+
+	/**
+	 * Local time of the sunrise, e.g. "05:13 AM".
+	 */
+	public String getSunrise() {
+		return sunrise;
+	}
+
+	public void setSunrise(String sunrise) {
+		this.sunrise = sunrise;
+	}
+
+	public String getSunset() {
+		return sunset;
+	}
+
+	public void setSunset(String sunset) {
+		this.sunset = sunset;
+	}
+
+	public String getMoonrise() {
+		return moonrise;
+	}
+
+	public void setMoonrise(String moonrise) {
+		this.moonrise = moonrise;
+	}
+
+	public String getMoonset() {
+		return moonset;
+	}
+
+	public void setMoonset(String moonset) {
+		this.moonset = moonset;
+	}
+
+	/**
+	 * Chance of snow in percent, ski weather only.
+	 */
+	public int getChanceOfSnow() {
+		return chanceOfSnow;
+	}
+
+	public void setChanceOfSnow(int chanceOfSnow) {
+		this.chanceOfSnow = chanceOfSnow;
+	}
+
+	/**
+	 * Snowfall of the day, ski weather only.
+	 */
+	public double getTotalSnowfallCm() {
+		return totalSnowfallCm;
+	}
+
+	public void setTotalSnowfallCm(double totalSnowfallCm) {
+		this.totalSnowfallCm = totalSnowfallCm;
+	}
+
+	/**
+	 * The top, middle and bottom of a ski resort, empty for other endpoints.
+	 */
+	public List<SkiLevel> getSkiLevels() {
+		return skiLevels;
+	}
+
+	public void setSkiLevels(List<SkiLevel> skiLevels) {
+		this.skiLevels = skiLevels;
+	}
+}
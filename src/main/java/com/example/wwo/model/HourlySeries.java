@@ -0,0 +1,386 @@
+package com.example.wwo.model;
+
+import java.util.Arrays;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+
+/**
+ * Hourly weather of one location in columns: every variable is kept in its
+ * own primitive array instead of an {@link HourlySlot} per hour, a few bytes
+ * per value instead of an object with its dates and texts. Decoders append
+ * rows with {@link #append(long)} and the column setters, or with
+ * {@link #add(HourlySlot)}.
+ *
+ * {@link #slice(int, int)} and {@link #between(LocalDateTime, LocalDateTime)}
+ * return views sharing the columns without copying them. A view cannot be
+ * appended to; rows appended to its series later are not part of it.
+ *
+ * The time of a row is the local date and time of the location, as
+ * milliseconds since the epoch read as UTC. Missing decimals are NaN, other
+ * missing values 0, as in {@link HourlySlot}. A series is not thread-safe
+ * while rows are appended.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public final class HourlySeries {
+	private static final int DEFAULT_CAPACITY = 24;
+
+	private long[] time;
+	private float[] tempC;
+	private float[] feelsLikeC;
+	private float[] precipMM;
+	private float[] windspeedKmph;
+	private float[] windGustKmph;
+	private float[] pressure;
+	private int[] winddirDegree;
+	private int[] humidity;
+	private int[] cloudcover;
+	private int[] weatherCode;
+	private final int offset;
+	private int size;
+	private final boolean view;
+
+	public HourlySeries() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity
+	 *            the number of rows to allocate for, e.g. 24 times the days
+	 *            of a historical range.
+	 */
+	public HourlySeries(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException(
+					"The capacity must not be negative.");
+		}
+		time = new long[capacity];
+		tempC = new float[capacity];
+		feelsLikeC = new float[capacity];
+		precipMM = new float[capacity];
+		windspeedKmph = new float[capacity];
+		windGustKmph = new float[capacity];
+		pressure = new float[capacity];
+		winddirDegree = new int[capacity];
+		humidity = new int[capacity];
+		cloudcover = new int[capacity];
+		weatherCode = new int[capacity];
+		offset = 0;
+		view = false;
+	}
+
+	private HourlySeries(HourlySeries series, int from, int to) {
+		time = series.time;
+		tempC = series.tempC;
+		feelsLikeC = series.feelsLikeC;
+		precipMM = series.precipMM;
+		windspeedKmph = series.windspeedKmph;
+		windGustKmph = series.windGustKmph;
+		pressure = series.pressure;
+		winddirDegree = series.winddirDegree;
+		humidity = series.humidity;
+		cloudcover = series.cloudcover;
+		weatherCode = series.weatherCode;
+		offset = series.offset + from;
+		size = to - from;
+		view = true;
+	}
+
+	/**
+	 * The time of a row from a date and the minutes since midnight.
+	 *
+	 * @param epochDay
+	 *            the days since 1970-01-01.
+	 * @param minuteOfDay
+	 *            the minutes since midnight.
+	 * @return the time as used by the series.
+	 */
+	public static long time(long epochDay, int minuteOfDay) {
+		return epochDay * DateTimeConstants.MILLIS_PER_DAY + minuteOfDay
+				* (long) DateTimeConstants.MILLIS_PER_MINUTE;
+	}
+
+	/**
+	 * The time of a row from a local date and time.
+	 *
+	 * @param dateTime
+	 *            the local date and time.
+	 * @return the time as used by the series.
+	 */
+	public static long time(LocalDateTime dateTime) {
+		return dateTime.toDateTime(DateTimeZone.UTC).getMillis();
+	}
+
+	/**
+	 * Adds a row with the given time; its values are missing until set.
+	 *
+	 * @param time
+	 *            the time of the row, see {@link #time(long, int)}.
+	 * @return the index of the row.
+	 * @throws UnsupportedOperationException
+	 *             if this is a view.
+	 */
+	public int append(long time) {
+		if (view) {
+			throw new UnsupportedOperationException(
+					"Cannot append to a view of a series.");
+		}
+		if (size == this.time.length) {
+			grow(Math.max(DEFAULT_CAPACITY, size * 2));
+		}
+		int row = size++;
+		this.time[row] = time;
+		tempC[row] = Float.NaN;
+		feelsLikeC[row] = Float.NaN;
+		precipMM[row] = Float.NaN;
+		windspeedKmph[row] = Float.NaN;
+		windGustKmph[row] = Float.NaN;
+		pressure[row] = Float.NaN;
+		winddirDegree[row] = 0;
+		humidity[row] = 0;
+		cloudcover[row] = 0;
+		weatherCode[row] = 0;
+		return row;
+	}
+
+	/**
+	 * Adds a row with the values of a decoded slot. The slot is not kept.
+	 * Decimals the slot has no value of stay NaN.
+	 *
+	 * @param slot
+	 *            the slot, with its date set.
+	 * @return the index of the row.
+	 * @throws UnsupportedOperationException
+	 *             if this is a view.
+	 */
+	public int add(HourlySlot slot) {
+		LocalDate date = slot.getDate();
+		long epochDay = date == null ? 0 : date.toDateTimeAtStartOfDay(
+				DateTimeZone.UTC).getMillis()
+				/ DateTimeConstants.MILLIS_PER_DAY;
+		int hhmm = slot.getTime();
+		int row = append(time(epochDay, hhmm / 100 * 60 + hhmm % 100));
+		if (slot.hasTempC()) {
+			tempC[row] = slot.getTempC();
+		}
+		if (slot.hasFeelsLikeC()) {
+			feelsLikeC[row] = slot.getFeelsLikeC();
+		}
+		precipMM[row] = (float) slot.getPrecipMM();
+		if (slot.hasWindspeedKmph()) {
+			windspeedKmph[row] = slot.getWindspeedKmph();
+		}
+		if (slot.hasWindGustKmph()) {
+			windGustKmph[row] = slot.getWindGustKmph();
+		}
+		if (slot.hasPressure()) {
+			pressure[row] = slot.getPressure();
+		}
+		winddirDegree[row] = slot.getWinddirDegree();
+		humidity[row] = slot.getHumidity();
+		cloudcover[row] = slot.getCloudcover();
+		weatherCode[row] = slot.getWeatherCode();
+		return row;
+	}
+
+	/**
+	 * A view of the rows between the indexes, sharing the columns.
+	 *
+	 * @param from
+	 *            the first row, inclusive.
+	 * @param to
+	 *            the last row, exclusive.
+	 * @return the view.
+	 */
+	public HourlySeries slice(int from, int to) {
+		if (from < 0 || to > size || from > to) {
+			throw new IndexOutOfBoundsException("Slice " + from + "-" + to
+					+ " of " + size + " rows");
+		}
+		return new HourlySeries(this, from, to);
+	}
+
+	/**
+	 * A view of the rows between the times, sharing the columns. The rows
+	 * must be in time order, as the API returns them.
+	 *
+	 * @param from
+	 *            the first time, inclusive.
+	 * @param to
+	 *            the last time, exclusive.
+	 * @return the view, empty if no row is between the times.
+	 */
+	public HourlySeries between(LocalDateTime from, LocalDateTime to) {
+		int start = indexOf(time(from));
+		int end = indexOf(time(to));
+		return slice(start, Math.max(start, end));
+	}
+
+	/**
+	 * The index of the first row at or after a time, by binary search. The
+	 * rows must be in time order.
+	 *
+	 * @param time
+	 *            the time, see {@link #time(long, int)}.
+	 * @return the index, {@link #size()} if every row is earlier.
+	 */
+	public int indexOf(long time) {
+		int low = offset;
+		int high = offset + size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.time[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low - offset;
+	}
+
+	/**
+	 * Releases the capacity allocated beyond the rows.
+	 */
+	public void trimToSize() {
+		if (!view && time.length > size) {
+			grow(size);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Whether this is a view sharing the columns of another series.
+	 */
+	public boolean isView() {
+		return view;
+	}
+
+	public long getTime(int row) {
+		return time[index(row)];
+	}
+
+	public LocalDateTime getLocalDateTime(int row) {
+		return new LocalDateTime(time[index(row)], DateTimeZone.UTC);
+	}
+
+	public float getTempC(int row) {
+		return tempC[index(row)];
+	}
+
+	public void setTempC(int row, float tempC) {
+		this.tempC[index(row)] = tempC;
+	}
+
+	public float getFeelsLikeC(int row) {
+		return feelsLikeC[index(row)];
+	}
+
+	public void setFeelsLikeC(int row, float feelsLikeC) {
+		this.feelsLikeC[index(row)] = feelsLikeC;
+	}
+
+	public float getPrecipMM(int row) {
+		return precipMM[index(row)];
+	}
+
+	public void setPrecipMM(int row, float precipMM) {
+		this.precipMM[index(row)] = precipMM;
+	}
+
+	public float getWindspeedKmph(int row) {
+		return windspeedKmph[index(row)];
+	}
+
+	public void setWindspeedKmph(int row, float windspeedKmph) {
+		this.windspeedKmph[index(row)] = windspeedKmph;
+	}
+
+	public float getWindGustKmph(int row) {
+		return windGustKmph[index(row)];
+	}
+
+	public void setWindGustKmph(int row, float windGustKmph) {
+		this.windGustKmph[index(row)] = windGustKmph;
+	}
+
+	/**
+	 * The atmospheric pressure in millibars.
+	 */
+	public float getPressure(int row) {
+		return pressure[index(row)];
+	}
+
+	public void setPressure(int row, float pressure) {
+		this.pressure[index(row)] = pressure;
+	}
+
+	public int getWinddirDegree(int row) {
+		return winddirDegree[index(row)];
+	}
+
+	public void setWinddirDegree(int row, int winddirDegree) {
+		this.winddirDegree[index(row)] = winddirDegree;
+	}
+
+	/**
+	 * The humidity in percent.
+	 */
+	public int getHumidity(int row) {
+		return humidity[index(row)];
+	}
+
+	public void setHumidity(int row, int humidity) {
+		this.humidity[index(row)] = humidity;
+	}
+
+	/**
+	 * The cloud cover in percent.
+	 */
+	public int getCloudcover(int row) {
+		return cloudcover[index(row)];
+	}
+
+	public void setCloudcover(int row, int cloudcover) {
+		this.cloudcover[index(row)] = cloudcover;
+	}
+
+	public int getWeatherCode(int row) {
+		return weatherCode[index(row)];
+	}
+
+	public void setWeatherCode(int row, int weatherCode) {
+		this.weatherCode[index(row)] = weatherCode;
+	}
+
+	private int index(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+		return offset + row;
+	}
+
+	private void grow(int capacity) {
+		time = Arrays.copyOf(time, capacity);
+		tempC = Arrays.copyOf(tempC, capacity);
+		feelsLikeC = Arrays.copyOf(feelsLikeC, capacity);
+		precipMM = Arrays.copyOf(precipMM, capacity);
+		windspeedKmph = Arrays.copyOf(windspeedKmph, capacity);
+		windGustKmph = Arrays.copyOf(windGustKmph, capacity);
+		pressure = Arrays.copyOf(pressure, capacity);
+		winddirDegree = Arrays.copyOf(winddirDegree, capacity);
+		humidity = Arrays.copyOf(humidity, capacity);
+		cloudcover = Arrays.copyOf(cloudcover, capacity);
+		weatherCode = Arrays.copyOf(weatherCode, capacity);
+	}
+}
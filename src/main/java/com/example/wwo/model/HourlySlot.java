@@ -0,0 +1,334 @@
+package com.example.wwo.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+
+/**
+ * The weather of one time slot of a day, an <code>hourly</code> element of a
+ * local, historical, marine or ski weather response. The marine and ski values
+ * are filled in by those endpoints only. Values missing from the response are 0,
+ * or NaN for decimals. The <code>has</code> methods tell a missing temperature,
+ * wind speed, gust or pressure from a value of 0.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class HourlySlot {
+	private static final int TEMP_C = 1;
+	private static final int FEELS_LIKE_C = 1 << 1;
+	private static final int WINDSPEED_KMPH = 1 << 2;
+	private static final int WIND_GUST_KMPH = 1 << 3;
+	private static final int PRESSURE = 1 << 4;
+
+	private LocalDate date;
+	private int time;
+	private int tempC;
+	private int tempF;
+	private int feelsLikeC;
+	private int feelsLikeF;
+	private int weatherCode;
+	private String weatherDescription;
+	private int windspeedKmph;
+	private int windspeedMiles;
+	private int windGustKmph;
+	private int winddirDegree;
+	private String winddir16Point;
+	private double precipMM = Double.NaN;
+	private int humidity;
+	private int visibility;
+	private int pressure;
+	private int cloudcover;
+	private int chanceOfRain;
+	private double sigHeightM = Double.NaN;
+	private double swellHeightM = Double.NaN;
+	private int swellDir;
+	private double swellPeriodSecs = Double.NaN;
+	private int waterTempC;
+	private int chanceOfSnow;
+	private double freshSnowCm = Double.NaN;
+	private List<SkiLevel> skiLevels = new ArrayList<SkiLevel>(3);
+	private int present;
+
+	/**
+	 * The date of the day the slot belongs to.
+	 */
+	public LocalDate getDate() {
+		return date;
+	}
+
+	public void setDate(LocalDate date) {
+		this.date = date;
+	}
+
+	/**
+	 * The start of the slot as hours and minutes, e.g. 0, 300, 1500.
+	 */
+	public int getTime() {
+		return time;
+	}
+
+	public void setTime(int time) {
+		this.time = time;
+	}
+
+	public int getTempC() {
+		return tempC;
+	}
+
+	public void setTempC(int tempC) {
+		this.tempC = tempC;
+		present |= TEMP_C;
+	}
+
+	/**
+	 * Whether the temperature was set, as 0 is a valid value.
+	 */
+	public boolean hasTempC() {
+		return (present & TEMP_C) != 0;
+	}
+
+	public int getTempF() {
+		return tempF;
+	}
+
+	public void setTempF(int tempF) {
+		this.tempF = tempF;
+	}
+
+	public int getFeelsLikeC() {
+		return feelsLikeC;
+	}
+
+	public void setFeelsLikeC(int feelsLikeC) {
+		this.feelsLikeC = feelsLikeC;
+		present |= FEELS_LIKE_C;
+	}
+
+	/**
+	 * Whether the feels like temperature was set, as 0 is a valid value.
+	 */
+	public boolean hasFeelsLikeC() {
+		return (present & FEELS_LIKE_C) != 0;
+	}
+
+	public int getFeelsLikeF() {
+		return feelsLikeF;
+	}
+
+	public void setFeelsLikeF(int feelsLikeF) {
+		this.feelsLikeF = feelsLikeF;
+	}
+
+	public int getWeatherCode() {
+		return weatherCode;
+	}
+
+	public void setWeatherCode(int weatherCode) {
+		this.weatherCode = weatherCode;
+	}
+
+	public String getWeatherDescription() {
+		return weatherDescription;
+	}
+
+	public void setWeatherDescription(String weatherDescription) {
+		this.weatherDescription = weatherDescription;
+	}
+
+	public int getWindspeedKmph() {
+		return windspeedKmph;
+	}
+
+	public void setWindspeedKmph(int windspeedKmph) {
+		this.windspeedKmph = windspeedKmph;
+		present |= WINDSPEED_KMPH;
+	}
+
+	/**
+	 * Whether the wind speed was set, as 0 is a valid value.
+	 */
+	public boolean hasWindspeedKmph() {
+		return (present & WINDSPEED_KMPH) != 0;
+	}
+
+	public int getWindspeedMiles() {
+		return windspeedMiles;
+	}
+
+	public void setWindspeedMiles(int windspeedMiles) {
+		this.windspeedMiles = windspeedMiles;
+	}
+
+	public int getWindGustKmph() {
+		return windGustKmph;
+	}
+
+	public void setWindGustKmph(int windGustKmph) {
+		this.windGustKmph = windGustKmph;
+		present |= WIND_GUST_KMPH;
+	}
+
+	/**
+	 * Whether the wind gust was set, as 0 is a valid value.
+	 */
+	public boolean hasWindGustKmph() {
+		return (present & WIND_GUST_KMPH) != 0;
+	}
+
+	public int getWinddirDegree() {
+		return winddirDegree;
+	}
+
+	public void setWinddirDegree(int winddirDegree) {
+		this.winddirDegree = winddirDegree;
+	}
+
+	public String getWinddir16Point() {
+		return winddir16Point;
+	}
+
+	public void setWinddir16Point(String winddir16Point) {
+		this.winddir16Point = winddir16Point;
+	}
+
+	public double getPrecipMM() {
+		return precipMM;
+	}
+
+	public void setPrecipMM(double precipMM) {
+		this.precipMM = precipMM;
+	}
+
+	public int getHumidity() {
+		return humidity;
+	}
+
+	public void setHumidity(int humidity) {
+		this.humidity = humidity;
+	}
+
+	public int getVisibility() {
+		return visibility;
+	}
+
+	public void setVisibility(int visibility) {
+		this.visibility = visibility;
+	}
+
+	public int getPressure() {
+		return pressure;
+	}
+
+	public void setPressure(int pressure) {
+		this.pressure = pressure;
+		present |= PRESSURE;
+	}
+
+	/**
+	 * Whether the pressure was set, as 0 is a valid value.
+	 */
+	public boolean hasPressure() {
+		return (present & PRESSURE) != 0;
+	}
+
+	public int getCloudcover() {
+		return cloudcover;
+	}
+
+	public void setCloudcover(int cloudcover) {
+		this.cloudcover = cloudcover;
+	}
+
+	public int getChanceOfRain() {
+		return chanceOfRain;
+	}
+
+	public void setChanceOfRain(int chanceOfRain) {
+		this.chanceOfRain = chanceOfRain;
+	}
+
+	/**
+	 * Significant wave height in metres, marine weather only.
+	 */
+	public double getSigHeightM() {
+		return sigHeightM;
+	}
+
+	public void setSigHeightM(double sigHeightM) {
+		this.sigHeightM = sigHeightM;
+	}
+
+	public double getSwellHeightM() {
+		return swellHeightM;
+	}
+
+	public void setSwellHeightM(double swellHeightM) {
+		this.swellHeightM = swellHeightM;
+	}
+
+	public int getSwellDir() {
+		return swellDir;
+	}
+
+	public void setSwellDir(int swellDir) {
+		this.swellDir = swellDir;
+	}
+
+	public double getSwellPeriodSecs() {
+		return swellPeriodSecs;
+	}
+
+	public void setSwellPeriodSecs(double swellPeriodSecs) {
+		this.swellPeriodSecs = swellPeriodSecs;
+	}
+
+	public int getWaterTempC() {
+		return waterTempC;
+	}
+
+	public void setWaterTempC(int waterTempC) {
+		this.waterTempC = waterTempC;
+	}
+
+	public int getChanceOfSnow() {
+		return chanceOfSnow;
+	}
+
+	public void setChanceOfSnow(int chanceOfSnow) {
+		this.chanceOfSnow = chanceOfSnow;
+	}
+
+	/**
+	 * Fresh snow in centimetres, ski weather only.
+	 */
+	public double getFreshSnowCm() {
+		return freshSnowCm;
+	}
+
+	public void setFreshSnowCm(double freshSnowCm) {
+		this.freshSnowCm = freshSnowCm;
+	}
+
+	/**
+	 * The top, middle and bottom of a ski resort, empty for other endpoints.
+	 */
+	public List<SkiLevel> getSkiLevels() {
+		return skiLevels;
+	}
+
+	public void setSkiLevels(List<SkiLevel> skiLevels) {
+		this.skiLevels = skiLevels;
+	}
+
+	/**
+	 * The hour of the start of the slot.
+	 *
+	 * @return the hour between 0 and 23.
+	 */
+	public int getHour() {
+		return time / 100;
+	}
+
+}
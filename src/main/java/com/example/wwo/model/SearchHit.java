@@ -0,0 +1,89 @@
+package com.example.wwo.model;
+
+/**
+ * A location found by the location search, a <code>result</code> element of a
+ * search response, or the <code>nearest_area</code> of a weather response.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class SearchHit {
+	private String areaName;
+	private String country;
+	private String region;
+	private double latitude = Double.NaN;
+	private double longitude = Double.NaN;
+	private long population;
+	private String weatherUrl;
+	private double timeZoneOffset = Double.NaN;
+
+	public String getAreaName() {
+		return areaName;
+	}
+
+	public void setAreaName(String areaName) {
+		this.areaName = areaName;
+	}
+
+	public String getCountry() {
+		return country;
+	}
+
+	public void setCountry(String country) {
+		this.country = country;
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public void setRegion(String region) {
+		this.region = region;
+	}
+
+	public double getLatitude() {
+		return latitude;
+	}
+
+	public void setLatitude(double latitude) {
+		this.latitude = latitude;
+	}
+
+	public double getLongitude() {
+		return longitude;
+	}
+
+	public void setLongitude(double longitude) {
+		this.longitude = longitude;
+	}
+
+	/**
+	 * The population, 0 if unknown.
+	 */
+	public long getPopulation() {
+		return population;
+	}
+
+	public void setPopulation(long population) {
+		this.population = population;
+	}
+
+	public String getWeatherUrl() {
+		return weatherUrl;
+	}
+
+	public void setWeatherUrl(String weatherUrl) {
+		this.weatherUrl = weatherUrl;
+	}
+
+	/**
+	 * The UTC offset in hours, NaN if not requested.
+	 */
+	public double getTimeZoneOffset() {
+		return timeZoneOffset;
+	}
+
+	public void setTimeZoneOffset(double timeZoneOffset) {
+		this.timeZoneOffset = timeZoneOffset;
+	}
+}
@@ -0,0 +1,131 @@
+package com.example.wwo.model;
+
+/**
+ * The weather at one altitude of a ski resort, the <code>top</code>,
+ * <code>mid</code> or <code>bottom</code> element of a ski weather day or hourly
+ * slot. The temperature range is filled in for days, the other values for
+ * hourly slots. Values missing from the response are 0.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class SkiLevel {
+	private Level level;
+	private int maxTempC;
+	private int minTempC;
+	private int tempC;
+	private int weatherCode;
+	private String weatherDescription;
+	private int windspeedKmph;
+	private int winddirDegree;
+	private String winddir16Point;
+
+	public Level getLevel() {
+		return level;
+	}
+
+	public void setLevel(Level level) {
+		this.level = level;
+	}
+
+	public int getMaxTempC() {
+		return maxTempC;
+	}
+
+	public void setMaxTempC(int maxTempC) {
+		this.maxTempC = maxTempC;
+	}
+
+	public int getMinTempC() {
+		return minTempC;
+	}
+
+	public void setMinTempC(int minTempC) {
+		this.minTempC = minTempC;
+	}
+
+	public int getTempC() {
+		return tempC;
+	}
+
+	public void setTempC(int tempC) {
+		this.tempC = tempC;
+	}
+
+	public int getWeatherCode() {
+		return weatherCode;
+	}
+
+	public void setWeatherCode(int weatherCode) {
+		this.weatherCode = weatherCode;
+	}
+
+	public String getWeatherDescription() {
+		return weatherDescription;
+	}
+
+	public void setWeatherDescription(String weatherDescription) {
+		this.weatherDescription = weatherDescription;
+	}
+
+	public int getWindspeedKmph() {
+		return windspeedKmph;
+	}
+
+	public void setWindspeedKmph(int windspeedKmph) {
+		this.windspeedKmph = windspeedKmph;
+	}
+
+	public int getWinddirDegree() {
+		return winddirDegree;
+	}
+
+	public void setWinddirDegree(int winddirDegree) {
+		this.winddirDegree = winddirDegree;
+	}
+
+	public String getWinddir16Point() {
+		return winddir16Point;
+	}
+
+	public void setWinddir16Point(String winddir16Point) {
+		this.winddir16Point = winddir16Point;
+	}
+
+	/**
+	 * Altitude of a ski resort.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public static enum Level {
+		TOP("top"), MID("mid"), BOTTOM("bottom");
+
+		private final String value;
+
+		private Level(String value) {
+			this.value = value;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		/**
+		 * The level of an element name.
+		 *
+		 * @param value
+		 *            "top", "mid" or "bottom".
+		 * @return the level, or null if unknown.
+		 */
+		public static Level of(String value) {
+			for (Level level : values()) {
+				if (level.value.equals(value)) {
+					return level;
+				}
+			}
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.example.wwo.model;
+
+import org.joda.time.LocalDate;
+
+/**
+ * A high or low tide of a day, a <code>tide_data</code> element of a marine
+ * weather response.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class Tide {
+	private LocalDate date;
+	private String time;
+	private double heightM = Double.NaN;
+	private Type type;
+
+	/**
+	 * The date of the day the tide belongs to.
+	 */
+	public LocalDate getDate() {
+		return date;
+	}
+
+	public void setDate(LocalDate date) {
+		this.date = date;
+	}
+
+	/**
+	 * Local time of the tide, e.g. "2:42 AM".
+	 */
+	public String getTime() {
+		return time;
+	}
+
+	public void setTime(String time) {
+		this.time = time;
+	}
+
+	/**
+	 * Height of the tide in metres.
+	 */
+	public double getHeightM() {
+		return heightM;
+	}
+
+	public void setHeightM(double heightM) {
+		this.heightM = heightM;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public void setType(Type type) {
+		this.type = type;
+	}
+
+	/**
+	 * Kind of a tide.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public static enum Type {
+		HIGH, LOW
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.example.wwo.model;
+
+import org.joda.time.LocalDateTime;
+
+/**
+ * The local time of a location, the <code>time_zone</code> element of a time
+ * zone response, or of a local weather response asking for the local time.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class TimeZoneInfo {
+	private LocalDateTime localTime;
+	private double utcOffset = Double.NaN;
+	private String zone;
+
+	public LocalDateTime getLocalTime() {
+		return localTime;
+	}
+
+	public void setLocalTime(LocalDateTime localTime) {
+		this.localTime = localTime;
+	}
+
+	/**
+	 * The UTC offset in hours, e.g. 5.5.
+	 */
+	public double getUtcOffset() {
+		return utcOffset;
+	}
+
+	public void setUtcOffset(double utcOffset) {
+		this.utcOffset = utcOffset;
+	}
+
+	/**
+	 * The time zone id, e.g. "Europe/London"; null if not returned.
+	 */
+	public String getZone() {
+		return zone;
+	}
+
+	public void setZone(String zone) {
+		this.zone = zone;
+	}
+}
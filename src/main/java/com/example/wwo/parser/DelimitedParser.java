@@ -0,0 +1,149 @@
+package com.example.wwo.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Tokenizes CSV and TAB responses byte by byte, straight from the read
+ * buffer. No object is created per line or per field: every line is passed to
+ * the {@link RecordHandler} as the same {@link DelimitedRecord}, which decodes
+ * its fields into primitives on demand. Lines starting with '#' are the
+ * comments turned on by <code>showComments(true)</code>, and are passed
+ * separately. Empty lines are skipped.
+ *
+ * A parser keeps no state between calls and can be shared by threads.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class DelimitedParser {
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final byte delimiter;
+	private final int bufferSize;
+
+	/**
+	 * Parser of the CSV format.
+	 *
+	 * @return the parser.
+	 */
+	public static DelimitedParser csv() {
+		return new DelimitedParser((byte) ',', DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Parser of the TAB format.
+	 *
+	 * @return the parser.
+	 */
+	public static DelimitedParser tab() {
+		return new DelimitedParser((byte) '\t', DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param delimiter
+	 *            the field delimiter, an ASCII character.
+	 * @param bufferSize
+	 *            the initial size of the read buffer; grown if a line is
+	 *            longer.
+	 */
+	public DelimitedParser(byte delimiter, int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException(
+					"The buffer size must be positive.");
+		}
+		this.delimiter = delimiter;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Reads the response to the end and closes it.
+	 *
+	 * @param in
+	 *            the response body.
+	 * @param handler
+	 *            receives the lines.
+	 * @throws IOException
+	 *             if the body cannot be read.
+	 */
+	public void parse(InputStream in, RecordHandler handler) throws IOException {
+		DelimitedRecord record = new DelimitedRecord();
+		long lineNumber = 0;
+		try {
+			byte[] buffer = new byte[bufferSize];
+			int end = 0;
+			int scanned = 0;
+			int n;
+			while ((n = in.read(buffer, end, buffer.length - end)) != -1) {
+				end += n;
+				int lineStart = 0;
+				for (int i = scanned; i < end; i++) {
+					if (buffer[i] == '\n') {
+						line(buffer, lineStart, i, ++lineNumber, record, handler);
+						lineStart = i + 1;
+					}
+				}
+				// keep the partial last line at the start of the buffer
+				end -= lineStart;
+				if (lineStart > 0) {
+					System.arraycopy(buffer, lineStart, buffer, 0, end);
+				} else if (end == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+				scanned = end;
+			}
+			if (end > 0) {
+				line(buffer, 0, end, ++lineNumber, record, handler);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Parses a response already in memory.
+	 *
+	 * @param buffer
+	 *            the response body.
+	 * @param offset
+	 *            the start of the body in the buffer.
+	 * @param length
+	 *            the length of the body.
+	 * @param handler
+	 *            receives the lines.
+	 */
+	public void parse(byte[] buffer, int offset, int length,
+			RecordHandler handler) {
+		DelimitedRecord record = new DelimitedRecord();
+		long lineNumber = 0;
+		int end = offset + length;
+		int lineStart = offset;
+		for (int i = offset; i < end; i++) {
+			if (buffer[i] == '\n') {
+				line(buffer, lineStart, i, ++lineNumber, record, handler);
+				lineStart = i + 1;
+			}
+		}
+		if (lineStart < end) {
+			line(buffer, lineStart, end, ++lineNumber, record, handler);
+		}
+	}
+
+	private void line(byte[] buffer, int from, int to, long lineNumber,
+			DelimitedRecord record, RecordHandler handler) {
+		if (to > from && buffer[to - 1] == '\r') {
+			to--;
+		}
+		if (to == from) {
+			return;
+		}
+		if (buffer[from] == '#') {
+			record.reset(buffer, from + 1, to, delimiter, lineNumber);
+			handler.comment(record);
+		} else {
+			record.reset(buffer, from, to, delimiter, lineNumber);
+			handler.record(record);
+		}
+	}
+}
@@ -0,0 +1,381 @@
+package com.example.wwo.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * One line of a CSV or TAB response, a view over the read buffer of the
+ * {@link DelimitedParser}. The fields are decoded straight from the bytes into
+ * primitives; only {@link #getString(int)} creates objects. The record is
+ * reused for every line, and is valid only during the handler call it is
+ * passed to.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public final class DelimitedRecord {
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18 };
+
+	private byte[] buffer;
+	private int[] starts = new int[32];
+	private int[] ends = new int[32];
+	private int size;
+	private long lineNumber;
+
+	DelimitedRecord() {
+	}
+
+	/**
+	 * Splits the line between the offsets at the delimiter. A field enclosed
+	 * in double quotes may contain the delimiter, and loses its quotes.
+	 */
+	void reset(byte[] buffer, int from, int to, byte delimiter, long lineNumber) {
+		this.buffer = buffer;
+		this.lineNumber = lineNumber;
+		int count = 0;
+		int start = from;
+		boolean quoted = false;
+		for (int i = from; i <= to; i++) {
+			if (i < to && buffer[i] == '"') {
+				quoted = !quoted;
+			} else if (i == to || (buffer[i] == delimiter && !quoted)) {
+				if (count == starts.length) {
+					starts = Arrays.copyOf(starts, count * 2);
+					ends = Arrays.copyOf(ends, count * 2);
+				}
+				int end = i;
+				if (end - start >= 2 && buffer[start] == '"'
+						&& buffer[end - 1] == '"') {
+					starts[count] = start + 1;
+					ends[count] = end - 1;
+				} else {
+					starts[count] = start;
+					ends[count] = end;
+				}
+				count++;
+				start = i + 1;
+			}
+		}
+		size = count;
+	}
+
+	/**
+	 * The number of fields of the line.
+	 *
+	 * @return the number of fields.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The line of the response this record was read from, starting at 1.
+	 *
+	 * @return the line number.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * The length of a field in bytes.
+	 *
+	 * @param field
+	 *            the index of the field.
+	 * @return the length.
+	 */
+	public int length(int field) {
+		check(field);
+		return ends[field] - starts[field];
+	}
+
+	public boolean isEmpty(int field) {
+		return length(field) == 0;
+	}
+
+	/**
+	 * Whether a field is equal to an ASCII text, without decoding it.
+	 *
+	 * @param field
+	 *            the index of the field.
+	 * @param ascii
+	 *            the bytes of the text.
+	 * @return true if equal.
+	 */
+	public boolean equals(int field, byte[] ascii) {
+		check(field);
+		int start = starts[field];
+		int length = ends[field] - start;
+		if (length != ascii.length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (buffer[start + i] != ascii[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes a field as an integer. A decimal number is truncated.
+	 *
+	 * @param field
+	 *            the index of the field.
+	 * @param missing
+	 *            the value of an empty or malformed field.
+	 * @return the value.
+	 */
+	public int getInt(int field, int missing) {
+		long value = getLong(field, Long.MIN_VALUE);
+		if (value == Long.MIN_VALUE || value < Integer.MIN_VALUE
+				|| value > Integer.MAX_VALUE) {
+			return missing;
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Decodes a field as a long integer. A decimal number is truncated.
+	 *
+	 * @param field
+	 *            the index of the field.
+	 * @param missing
+	 *            the value of an empty or malformed field.
+	 * @return the value.
+	 */
+	public long getLong(int field, long missing) {
+		check(field);
+		int i = starts[field];
+		int end = ends[field];
+		while (i < end && buffer[i] == ' ') {
+			i++;
+		}
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = buffer[i] == '-';
+			i++;
+		}
+		int digitsStart = i;
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				break;
+			}
+			if (value > (Long.MAX_VALUE - digit) / 10) {
+				return missing;
+			}
+			value = value * 10 + digit;
+		}
+		if (i == digitsStart || (i < end && !isFractionOrBlank(i, end))) {
+			return missing;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Decodes a field as a decimal number, e.g. "0.4" or "-12".
+	 *
+	 * @param field
+	 *            the index of the field.
+	 * @return the value, NaN if the field is empty or malformed.
+	 */
+	public double getDouble(int field) {
+		check(field);
+		int i = starts[field];
+		int end = ends[field];
+		while (i < end && buffer[i] == ' ') {
+			i++;
+		}
+		while (end > i && buffer[end - 1] == ' ') {
+			end--;
+		}
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = buffer[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean fraction = false;
+		for (; i < end; i++) {
+			byte b = buffer[i];
+			if (b == '.' && !fraction) {
+				fraction = true;
+			} else if (b >= '0' && b <= '9') {
+				if (++digits > 18) {
+					return slowDouble(field);
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (fraction) {
+					scale++;
+				}
+			} else {
+				return slowDouble(field);
+			}
+		}
+		if (digits == 0) {
+			return Double.NaN;
+		}
+		double value = mantissa / POWERS_OF_TEN[scale];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Decodes a field as an ISO date, e.g. "2014-05-13", without creating a
+	 * date object.
+	 *
+	 * @param field
+	 *            the index of the field.
+	 * @return the days since 1970-01-01, or {@link Long#MIN_VALUE} if the
+	 *         field is not a date.
+	 */
+	public long getEpochDay(int field) {
+		check(field);
+		int start = starts[field];
+		if (ends[field] - start != 10 || buffer[start + 4] != '-'
+				|| buffer[start + 7] != '-') {
+			return Long.MIN_VALUE;
+		}
+		int year = digits(start, 4);
+		int month = digits(start + 5, 2);
+		int day = digits(start + 8, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+			return Long.MIN_VALUE;
+		}
+		return epochDay(year, month, day);
+	}
+
+	/**
+	 * Decodes a field as a time of day, either the hours and minutes of an
+	 * hourly slot ("0", "300", "1500") or a clock time ("10:39 AM", "14:05").
+	 *
+	 * @param field
+	 *            the index of the field.
+	 * @return the minutes since midnight, or -1 if the field is not a time.
+	 */
+	public int getMinuteOfDay(int field) {
+		check(field);
+		int i = starts[field];
+		int end = ends[field];
+		int first = 0;
+		int digits = 0;
+		for (; i < end && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+			first = first * 10 + buffer[i] - '0';
+			digits++;
+		}
+		if (digits == 0 || digits > 4) {
+			return -1;
+		}
+		if (i == end) {
+			int minutes = first / 100 * 60 + first % 100;
+			return first % 100 < 60 && minutes < 24 * 60 ? minutes : -1;
+		}
+		if (buffer[i] != ':' || end - i < 3) {
+			return -1;
+		}
+		int minute = digits(i + 1, 2);
+		if (minute < 0 || minute > 59) {
+			return -1;
+		}
+		int hour = first;
+		i += 3;
+		while (i < end && buffer[i] == ' ') {
+			i++;
+		}
+		if (end - i == 2 && (buffer[i + 1] == 'M' || buffer[i + 1] == 'm')) {
+			boolean pm = buffer[i] == 'P' || buffer[i] == 'p';
+			if (hour < 1 || hour > 12) {
+				return -1;
+			}
+			hour = hour % 12 + (pm ? 12 : 0);
+		} else if (i != end || hour > 23) {
+			return -1;
+		}
+		return hour * 60 + minute;
+	}
+
+	/**
+	 * Decodes a field as text. Creates a String; the other getters should be
+	 * preferred on hot paths.
+	 *
+	 * @param field
+	 *            the index of the field.
+	 * @return the text.
+	 */
+	public String getString(int field) {
+		check(field);
+		return new String(buffer, starts[field], ends[field] - starts[field],
+				StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append('|');
+			}
+			sb.append(getString(i));
+		}
+		return sb.toString();
+	}
+
+	private void check(int field) {
+		if (field < 0 || field >= size) {
+			throw new IndexOutOfBoundsException("Field " + field + " of "
+					+ size + " on line " + lineNumber);
+		}
+	}
+
+	private boolean isFractionOrBlank(int i, int end) {
+		if (buffer[i] == '.') {
+			i++;
+			while (i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+				i++;
+			}
+		}
+		while (i < end && buffer[i] == ' ') {
+			i++;
+		}
+		return i == end;
+	}
+
+	private double slowDouble(int field) {
+		try {
+			return Double.parseDouble(getString(field).trim());
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	private int digits(int from, int count) {
+		int value = 0;
+		for (int i = from; i < from + count; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Days since the epoch of a proleptic Gregorian date.
+	 */
+	static long epochDay(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day
+				- 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+				+ dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+}
@@ -0,0 +1,52 @@
+package com.example.wwo.parser;
+
+import com.example.wwo.model.HourlySeries;
+import com.example.wwo.model.HourlySlot;
+
+/**
+ * {@link WeatherHandler} appending every decoded hourly slot to an
+ * {@link HourlySeries}. The slots are dropped as soon as they are copied, so
+ * a year of hourly data is held in columns of primitives only.
+ *
+ * <pre>
+ * HourlySeriesCollector result = new HourlySeriesCollector(24 * 31);
+ * weather.buildRequestAttributes(&quot;http&quot;).parse(result);
+ * HourlySeries series = result.getSeries();
+ * </pre>
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class HourlySeriesCollector extends WeatherHandlerAdapter {
+	private final HourlySeries series;
+
+	public HourlySeriesCollector() {
+		this(new HourlySeries());
+	}
+
+	/**
+	 * @param capacity
+	 *            the expected number of slots.
+	 */
+	public HourlySeriesCollector(int capacity) {
+		this(new HourlySeries(capacity));
+	}
+
+	/**
+	 * @param series
+	 *            the series to append to, e.g. to collect the responses of
+	 *            consecutive date ranges.
+	 */
+	public HourlySeriesCollector(HourlySeries series) {
+		this.series = series;
+	}
+
+	@Override
+	public void hourlySlot(HourlySlot slot) {
+		series.add(slot);
+	}
+
+	public HourlySeries getSeries() {
+		return series;
+	}
+}
@@ -0,0 +1,467 @@
+package com.example.wwo.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.example.wwo.model.CurrentCondition;
+import com.example.wwo.model.DailyForecast;
+import com.example.wwo.model.HourlySlot;
+import com.example.wwo.model.SearchHit;
+import com.example.wwo.model.SkiLevel;
+import com.example.wwo.model.TimeZoneInfo;
+import com.example.wwo.model.Tide;
+import com.example.wwo.parser.Projection.Section;
+
+/**
+ * Decodes JSON responses of every endpoint with the Jackson streaming
+ * {@link JsonParser}. The document is read token by token and never held in
+ * memory; each day, hourly slot, tide and search hit is passed to the handler
+ * as soon as its object ends. Sections and fields outside the
+ * {@link Projection} of the parser are skipped without being read as text.
+ * The parser is stateless and thread-safe.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class JsonWeatherParser implements WeatherParser {
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	private final Projection projection;
+
+	/**
+	 * Decodes every section and field.
+	 */
+	public JsonWeatherParser() {
+		this(Projection.ALL);
+	}
+
+	/**
+	 * @param projection
+	 *            the sections and fields to decode.
+	 */
+	public JsonWeatherParser(Projection projection) {
+		this.projection = projection;
+	}
+
+	@Override
+	public void parse(InputStream in, WeatherHandler handler)
+			throws IOException {
+		JsonParser p = FACTORY.createJsonParser(in);
+		p.enable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+		try {
+			if (p.nextToken() != JsonToken.START_OBJECT) {
+				throw new JsonParseException("Not a JSON object.",
+						p.getCurrentLocation());
+			}
+			while (p.nextToken() == JsonToken.FIELD_NAME) {
+				String name = p.getCurrentName();
+				p.nextToken();
+				if ("data".equals(name)) {
+					parseData(p, handler);
+				} else if ("search_api".equals(name)) {
+					parseSearch(p, handler);
+				} else {
+					p.skipChildren();
+				}
+			}
+		} finally {
+			p.close();
+		}
+	}
+
+	private void parseData(JsonParser p, WeatherHandler handler)
+			throws IOException {
+		if (!isObject(p)) {
+			return;
+		}
+		while (p.nextToken() == JsonToken.FIELD_NAME) {
+			String name = p.getCurrentName();
+			p.nextToken();
+			switch (name) {
+			case "request":
+				if (projection.includes(Section.REQUEST)) {
+					parseRequest(p, handler);
+				} else {
+					p.skipChildren();
+				}
+				break;
+			case "current_condition":
+				if (projection.includes(Section.CURRENT_CONDITION) && isArray(p)) {
+					while (nextObject(p)) {
+						CurrentCondition condition = new CurrentCondition();
+						while (nextField(p)) {
+							String field = p.getCurrentName();
+							if (projection.includes(Section.CURRENT_CONDITION,
+									field)) {
+								ModelFields.current(condition, field, value(p));
+							} else {
+								p.skipChildren();
+							}
+						}
+						handler.currentCondition(condition);
+					}
+				} else {
+					p.skipChildren();
+				}
+				break;
+			case "weather":
+				if (projection.includesDays() && isArray(p)) {
+					while (nextObject(p)) {
+						parseDay(p, handler);
+					}
+				} else {
+					p.skipChildren();
+				}
+				break;
+			case "time_zone":
+				if (projection.includes(Section.TIME_ZONE) && isArray(p)) {
+					while (nextObject(p)) {
+						TimeZoneInfo timeZone = new TimeZoneInfo();
+						while (nextField(p)) {
+							String field = p.getCurrentName();
+							if (projection.includes(Section.TIME_ZONE, field)) {
+								ModelFields.timeZone(timeZone, field, value(p));
+							} else {
+								p.skipChildren();
+							}
+						}
+						handler.timeZone(timeZone);
+					}
+				} else {
+					p.skipChildren();
+				}
+				break;
+			case "nearest_area":
+				if (projection.includes(Section.NEAREST_AREA) && isArray(p)) {
+					while (nextObject(p)) {
+						SearchHit area = new SearchHit();
+						while (nextField(p)) {
+							String field = p.getCurrentName();
+							if (projection.includes(Section.NEAREST_AREA, field)) {
+								ModelFields.searchHit(area, field, value(p));
+							} else {
+								p.skipChildren();
+							}
+						}
+						handler.nearestArea(area);
+					}
+				} else {
+					p.skipChildren();
+				}
+				break;
+			case "error":
+				if (isArray(p)) {
+					while (nextObject(p)) {
+						while (nextField(p)) {
+							String field = p.getCurrentName();
+							String value = value(p);
+							if ("msg".equals(field)) {
+								handler.error(value);
+							}
+						}
+					}
+				}
+				break;
+			default:
+				p.skipChildren();
+			}
+		}
+	}
+
+	private void parseRequest(JsonParser p, WeatherHandler handler)
+			throws IOException {
+		if (!isArray(p)) {
+			return;
+		}
+		while (nextObject(p)) {
+			String type = null;
+			String query = null;
+			while (nextField(p)) {
+				String field = p.getCurrentName();
+				String value = value(p);
+				if ("type".equals(field)) {
+					type = value;
+				} else if ("query".equals(field)) {
+					query = value;
+				}
+			}
+			handler.request(type, query);
+		}
+	}
+
+	private void parseDay(JsonParser p, WeatherHandler handler)
+			throws IOException {
+		DailyForecast day = new DailyForecast();
+		while (p.nextToken() == JsonToken.FIELD_NAME) {
+			String name = p.getCurrentName();
+			p.nextToken();
+			switch (name) {
+			case "astronomy":
+				if (projection.includesAstronomy() && isArray(p)) {
+					while (nextObject(p)) {
+						while (nextField(p)) {
+							String field = p.getCurrentName();
+							if (projection.includes(Section.DAILY, field)) {
+								ModelFields.day(day, field, value(p));
+							} else {
+								p.skipChildren();
+							}
+						}
+					}
+				} else {
+					p.skipChildren();
+				}
+				break;
+			case "hourly":
+				if (projection.includes(Section.HOURLY) && isArray(p)) {
+					while (nextObject(p)) {
+						handler.hourlySlot(parseHourly(p, day));
+					}
+				} else {
+					p.skipChildren();
+				}
+				break;
+			case "tides":
+				if (projection.includes(Section.TIDES)) {
+					parseTides(p, day, handler);
+				} else {
+					p.skipChildren();
+				}
+				break;
+			case "top":
+			case "mid":
+			case "bottom":
+				if (projection.includes(Section.DAILY, name)) {
+					parseSkiLevel(p, SkiLevel.Level.of(name), day.getSkiLevels());
+				} else {
+					p.skipChildren();
+				}
+				break;
+			case "date":
+				ModelFields.day(day, name, value(p));
+				break;
+			default:
+				if (projection.includes(Section.DAILY, name)) {
+					ModelFields.day(day, name, value(p));
+				} else {
+					p.skipChildren();
+				}
+			}
+		}
+		if (projection.includes(Section.DAILY)) {
+			handler.dailyForecast(day);
+		}
+	}
+
+	/**
+	 * Decodes an hourly slot, dated with the day if the date of the day came
+	 * before its hourly slots, as it does in the responses of the API.
+	 */
+	private HourlySlot parseHourly(JsonParser p, DailyForecast day)
+			throws IOException {
+		HourlySlot slot = new HourlySlot();
+		slot.setDate(day.getDate());
+		while (p.nextToken() == JsonToken.FIELD_NAME) {
+			String name = p.getCurrentName();
+			p.nextToken();
+			switch (name) {
+			case "top":
+			case "mid":
+			case "bottom":
+				if (projection.includes(Section.HOURLY, name)) {
+					parseSkiLevel(p, SkiLevel.Level.of(name), slot.getSkiLevels());
+				} else {
+					p.skipChildren();
+				}
+				break;
+			case "time":
+				ModelFields.hourly(slot, name, value(p));
+				break;
+			default:
+				if (projection.includes(Section.HOURLY, name)) {
+					ModelFields.hourly(slot, name, value(p));
+				} else {
+					p.skipChildren();
+				}
+			}
+		}
+		return slot;
+	}
+
+	private void parseTides(JsonParser p, DailyForecast day,
+			WeatherHandler handler) throws IOException {
+		if (!isArray(p)) {
+			return;
+		}
+		while (nextObject(p)) {
+			while (p.nextToken() == JsonToken.FIELD_NAME) {
+				String name = p.getCurrentName();
+				p.nextToken();
+				if (!"tide_data".equals(name) || !isArray(p)) {
+					p.skipChildren();
+					continue;
+				}
+				while (nextObject(p)) {
+					Tide tide = new Tide();
+					tide.setDate(day.getDate());
+					while (nextField(p)) {
+						String field = p.getCurrentName();
+						if (projection.includes(Section.TIDES, field)) {
+							ModelFields.tide(tide, field, value(p));
+						} else {
+							p.skipChildren();
+						}
+					}
+					handler.tide(tide);
+				}
+			}
+		}
+	}
+
+	private void parseSkiLevel(JsonParser p, SkiLevel.Level level,
+			List<SkiLevel> levels) throws IOException {
+		if (!isArray(p)) {
+			return;
+		}
+		while (nextObject(p)) {
+			SkiLevel skiLevel = new SkiLevel();
+			skiLevel.setLevel(level);
+			while (nextField(p)) {
+				ModelFields.skiLevel(skiLevel, p.getCurrentName(), value(p));
+			}
+			levels.add(skiLevel);
+		}
+	}
+
+	private void parseSearch(JsonParser p, WeatherHandler handler)
+			throws IOException {
+		if (!isObject(p)) {
+			return;
+		}
+		while (p.nextToken() == JsonToken.FIELD_NAME) {
+			String name = p.getCurrentName();
+			p.nextToken();
+			if (!"result".equals(name)
+					|| !projection.includes(Section.SEARCH_HITS) || !isArray(p)) {
+				p.skipChildren();
+				continue;
+			}
+			while (nextObject(p)) {
+				SearchHit hit = new SearchHit();
+				while (p.nextToken() == JsonToken.FIELD_NAME) {
+					String field = p.getCurrentName();
+					p.nextToken();
+					if ("timezone".equals(field)) {
+						if (isArray(p)) {
+							while (nextObject(p)) {
+								while (nextField(p)) {
+									searchHitField(p, hit, p.getCurrentName());
+								}
+							}
+						}
+					} else {
+						searchHitField(p, hit, field);
+					}
+				}
+				handler.searchHit(hit);
+			}
+		}
+	}
+
+	private void searchHitField(JsonParser p, SearchHit hit, String field)
+			throws IOException {
+		if (projection.includes(Section.SEARCH_HITS, field)) {
+			ModelFields.searchHit(hit, field, value(p));
+		} else {
+			p.skipChildren();
+		}
+	}
+
+	/**
+	 * Whether the current value is an array; skips it otherwise.
+	 */
+	private static boolean isArray(JsonParser p) throws IOException {
+		if (p.getCurrentToken() == JsonToken.START_ARRAY) {
+			return true;
+		}
+		p.skipChildren();
+		return false;
+	}
+
+	/**
+	 * Whether the current value is an object; skips it otherwise.
+	 */
+	private static boolean isObject(JsonParser p) throws IOException {
+		if (p.getCurrentToken() == JsonToken.START_OBJECT) {
+			return true;
+		}
+		p.skipChildren();
+		return false;
+	}
+
+	/**
+	 * Moves to the next object of the current array, skipping other values.
+	 *
+	 * @return false at the end of the array.
+	 */
+	private static boolean nextObject(JsonParser p) throws IOException {
+		JsonToken token;
+		while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+			if (token == null) {
+				throw new JsonParseException("Unexpected end of input.",
+						p.getCurrentLocation());
+			}
+			if (token == JsonToken.START_OBJECT) {
+				return true;
+			}
+			p.skipChildren();
+		}
+		return false;
+	}
+
+	/**
+	 * Moves to the value of the next field of the current object.
+	 *
+	 * @return false at the end of the object.
+	 */
+	private static boolean nextField(JsonParser p) throws IOException {
+		if (p.nextToken() != JsonToken.FIELD_NAME) {
+			return false;
+		}
+		p.nextToken();
+		return true;
+	}
+
+	/**
+	 * The text of the current value. The API wraps some texts in an array of
+	 * objects, e.g. <code>"weatherDesc": [{"value": "Sunny"}]</code>; of
+	 * these the first <code>value</code> is returned.
+	 */
+	private static String value(JsonParser p) throws IOException {
+		JsonToken token = p.getCurrentToken();
+		if (token == JsonToken.START_ARRAY) {
+			String value = null;
+			while (nextObject(p)) {
+				while (nextField(p)) {
+					if (value == null && "value".equals(p.getCurrentName())) {
+						value = p.getText();
+					} else {
+						p.skipChildren();
+					}
+				}
+			}
+			return value;
+		}
+		if (token == JsonToken.START_OBJECT) {
+			p.skipChildren();
+			return null;
+		}
+		return token == JsonToken.VALUE_NULL ? null : p.getText();
+	}
+}
@@ -0,0 +1,422 @@
+package com.example.wwo.parser;
+
+import java.util.Locale;
+
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.example.wwo.model.CurrentCondition;
+import com.example.wwo.model.DailyForecast;
+import com.example.wwo.model.HourlySlot;
+import com.example.wwo.model.SearchHit;
+import com.example.wwo.model.SkiLevel;
+import com.example.wwo.model.TimeZoneInfo;
+import com.example.wwo.model.Tide;
+
+/**
+ * Maps the field names of the API to the properties of the models. The JSON
+ * and the XML output use the same names, so every parser shares this mapping
+ * and only walks its own document structure. Unknown fields are ignored, and
+ * malformed numbers are treated as missing.
+ *
+ * @author Fanni_Varga
+ *
+ */
+final class ModelFields {
+	private static final DateTimeFormatter DATE = ISODateTimeFormat.date();
+	/**
+	 * Returned by {@link #toInt(String, int)} for a missing value, which is
+	 * then not set on the model.
+	 */
+	private static final int MISSING = Integer.MIN_VALUE;
+	private static final DateTimeFormatter LOCAL_TIME = DateTimeFormat
+			.forPattern("yyyy-MM-dd HH:mm");
+
+	private ModelFields() {
+	}
+
+	static void current(CurrentCondition c, String name, String value) {
+		switch (name) {
+		case "observation_time":
+			c.setObservationTime(value);
+			break;
+		case "temp_C":
+			c.setTempC(toInt(value));
+			break;
+		case "temp_F":
+			c.setTempF(toInt(value));
+			break;
+		case "FeelsLikeC":
+			c.setFeelsLikeC(toInt(value));
+			break;
+		case "FeelsLikeF":
+			c.setFeelsLikeF(toInt(value));
+			break;
+		case "weatherCode":
+			c.setWeatherCode(toInt(value));
+			break;
+		case "weatherDesc":
+			c.setWeatherDescription(value);
+			break;
+		case "weatherIconUrl":
+			c.setWeatherIconUrl(value);
+			break;
+		case "windspeedKmph":
+			c.setWindspeedKmph(toInt(value));
+			break;
+		case "windspeedMiles":
+			c.setWindspeedMiles(toInt(value));
+			break;
+		case "winddirDegree":
+			c.setWinddirDegree(toInt(value));
+			break;
+		case "winddir16Point":
+			c.setWinddir16Point(value);
+			break;
+		case "precipMM":
+			c.setPrecipMM(toDouble(value));
+			break;
+		case "humidity":
+			c.setHumidity(toInt(value));
+			break;
+		case "visibility":
+			c.setVisibility(toInt(value));
+			break;
+		case "pressure":
+			c.setPressure(toInt(value));
+			break;
+		case "cloudcover":
+			c.setCloudcover(toInt(value));
+			break;
+		default:
+		}
+	}
+
+	/**
+	 * Also maps the fields of the <code>astronomy</code> element of the day.
+	 */
+	static void day(DailyForecast d, String name, String value) {
+		switch (name) {
+		case "date":
+			d.setDate(toDate(value));
+			break;
+		case "maxtempC":
+		case "tempMaxC":
+			d.setMaxTempC(toInt(value));
+			break;
+		case "maxtempF":
+		case "tempMaxF":
+			d.setMaxTempF(toInt(value));
+			break;
+		case "mintempC":
+		case "tempMinC":
+			d.setMinTempC(toInt(value));
+			break;
+		case "mintempF":
+		case "tempMinF":
+			d.setMinTempF(toInt(value));
+			break;
+		case "weatherCode":
+			d.setWeatherCode(toInt(value));
+			break;
+		case "weatherDesc":
+			d.setWeatherDescription(value);
+			break;
+		case "windspeedKmph":
+			d.setWindspeedKmph(toInt(value));
+			break;
+		case "windspeedMiles":
+			d.setWindspeedMiles(toInt(value));
+			break;
+		case "winddirDegree":
+			d.setWinddirDegree(toInt(value));
+			break;
+		case "winddir16Point":
+			d.setWinddir16Point(value);
+			break;
+		case "precipMM":
+			d.setPrecipMM(toDouble(value));
+			break;
+		case "uvIndex":
+			d.setUvIndex(toDouble(value));
+			break;
+		case "sunrise":
+			d.setSunrise(value);
+			break;
+		case "sunset":
+			d.setSunset(value);
+			break;
+		case "moonrise":
+			d.setMoonrise(value);
+			break;
+		case "moonset":
+			d.setMoonset(value);
+			break;
+		case "chanceofsnow":
+			d.setChanceOfSnow(toInt(value));
+			break;
+		case "totalSnowfall_cm":
+			d.setTotalSnowfallCm(toDouble(value));
+			break;
+		default:
+		}
+	}
+
+	static void hourly(HourlySlot s, String name, String value) {
+		switch (name) {
+		case "time":
+			s.setTime(toInt(value));
+			break;
+		case "tempC":
+			int tempC = toInt(value, MISSING);
+			if (tempC != MISSING) {
+				s.setTempC(tempC);
+			}
+			break;
+		case "tempF":
+			s.setTempF(toInt(value));
+			break;
+		case "FeelsLikeC":
+			int feelsLikeC = toInt(value, MISSING);
+			if (feelsLikeC != MISSING) {
+				s.setFeelsLikeC(feelsLikeC);
+			}
+			break;
+		case "FeelsLikeF":
+			s.setFeelsLikeF(toInt(value));
+			break;
+		case "weatherCode":
+			s.setWeatherCode(toInt(value));
+			break;
+		case "weatherDesc":
+			s.setWeatherDescription(value);
+			break;
+		case "windspeedKmph":
+			int windspeedKmph = toInt(value, MISSING);
+			if (windspeedKmph != MISSING) {
+				s.setWindspeedKmph(windspeedKmph);
+			}
+			break;
+		case "windspeedMiles":
+			s.setWindspeedMiles(toInt(value));
+			break;
+		case "WindGustKmph":
+			int windGustKmph = toInt(value, MISSING);
+			if (windGustKmph != MISSING) {
+				s.setWindGustKmph(windGustKmph);
+			}
+			break;
+		case "winddirDegree":
+			s.setWinddirDegree(toInt(value));
+			break;
+		case "winddir16Point":
+			s.setWinddir16Point(value);
+			break;
+		case "precipMM":
+			s.setPrecipMM(toDouble(value));
+			break;
+		case "humidity":
+			s.setHumidity(toInt(value));
+			break;
+		case "visibility":
+			s.setVisibility(toInt(value));
+			break;
+		case "pressure":
+			int pressure = toInt(value, MISSING);
+			if (pressure != MISSING) {
+				s.setPressure(pressure);
+			}
+			break;
+		case "cloudcover":
+			s.setCloudcover(toInt(value));
+			break;
+		case "chanceofrain":
+			s.setChanceOfRain(toInt(value));
+			break;
+		case "sigHeight_m":
+			s.setSigHeightM(toDouble(value));
+			break;
+		case "swellHeight_m":
+			s.setSwellHeightM(toDouble(value));
+			break;
+		case "swellDir":
+			s.setSwellDir(toInt(value));
+			break;
+		case "swellPeriod_secs":
+			s.setSwellPeriodSecs(toDouble(value));
+			break;
+		case "waterTemp_C":
+			s.setWaterTempC(toInt(value));
+			break;
+		case "chanceofsnow":
+			s.setChanceOfSnow(toInt(value));
+			break;
+		case "freshsnow_cm":
+			s.setFreshSnowCm(toDouble(value));
+			break;
+		default:
+		}
+	}
+
+	static void skiLevel(SkiLevel l, String name, String value) {
+		switch (name) {
+		case "maxtempC":
+			l.setMaxTempC(toInt(value));
+			break;
+		case "mintempC":
+			l.setMinTempC(toInt(value));
+			break;
+		case "tempC":
+			l.setTempC(toInt(value));
+			break;
+		case "weatherCode":
+			l.setWeatherCode(toInt(value));
+			break;
+		case "weatherDesc":
+			l.setWeatherDescription(value);
+			break;
+		case "windspeedKmph":
+			l.setWindspeedKmph(toInt(value));
+			break;
+		case "winddirDegree":
+			l.setWinddirDegree(toInt(value));
+			break;
+		case "winddir16Point":
+			l.setWinddir16Point(value);
+			break;
+		default:
+		}
+	}
+
+	static void tide(Tide t, String name, String value) {
+		switch (name) {
+		case "tideTime":
+			t.setTime(value);
+			break;
+		case "tideHeight_mt":
+			t.setHeightM(toDouble(value));
+			break;
+		case "tide_type":
+			t.setType(toTideType(value));
+			break;
+		default:
+		}
+	}
+
+	/**
+	 * Also maps the <code>offset</code> of the <code>timezone</code> element
+	 * of the hit.
+	 */
+	static void searchHit(SearchHit h, String name, String value) {
+		switch (name) {
+		case "areaName":
+			h.setAreaName(value);
+			break;
+		case "country":
+			h.setCountry(value);
+			break;
+		case "region":
+			h.setRegion(value);
+			break;
+		case "latitude":
+			h.setLatitude(toDouble(value));
+			break;
+		case "longitude":
+			h.setLongitude(toDouble(value));
+			break;
+		case "population":
+			h.setPopulation((long) toDouble(value, 0));
+			break;
+		case "weatherUrl":
+			h.setWeatherUrl(value);
+			break;
+		case "offset":
+			h.setTimeZoneOffset(toDouble(value));
+			break;
+		default:
+		}
+	}
+
+	static void timeZone(TimeZoneInfo z, String name, String value) {
+		switch (name) {
+		case "localtime":
+			z.setLocalTime(toLocalTime(value));
+			break;
+		case "utcOffset":
+			z.setUtcOffset(toDouble(value));
+			break;
+		case "zone":
+			z.setZone(value);
+			break;
+		default:
+		}
+	}
+
+	static int toInt(String value) {
+		return toInt(value, 0);
+	}
+
+	private static int toInt(String value, int missing) {
+		if (value == null) {
+			return missing;
+		}
+		String trimmed = value.trim();
+		try {
+			return Integer.parseInt(trimmed);
+		} catch (NumberFormatException e) {
+			double parsed = toDouble(trimmed, Double.NaN);
+			return Double.isNaN(parsed) ? missing : (int) Math.round(parsed);
+		}
+	}
+
+	static double toDouble(String value) {
+		return toDouble(value, Double.NaN);
+	}
+
+	private static double toDouble(String value, double missing) {
+		if (value == null) {
+			return missing;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			return missing;
+		}
+	}
+
+	static LocalDate toDate(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			return DATE.parseLocalDate(value.trim());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static LocalDateTime toLocalTime(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			return LOCAL_TIME.parseLocalDateTime(value.trim());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static Tide.Type toTideType(String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Tide.Type.valueOf(value.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
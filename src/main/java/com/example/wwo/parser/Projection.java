@@ -0,0 +1,131 @@
+package com.example.wwo.parser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The parts of a response a caller reads. A parser given a projection skips
+ * the other sections and fields at the token level: they are neither
+ * converted to numbers and dates nor, in JSON, even turned into text. The
+ * fields are named as in the response, e.g. <code>temp_C</code> of the
+ * current condition or <code>tempC</code> of an hourly slot.
+ *
+ * <pre>
+ * Projection projection = new Projection().currentCondition(&quot;temp_C&quot;,
+ * 		&quot;weatherCode&quot;).daily(&quot;maxtempC&quot;, &quot;mintempC&quot;);
+ * </pre>
+ *
+ * A section added without fields is decoded whole. Sections not added are
+ * skipped; errors are always decoded. The date of a day and the time of an
+ * hourly slot are always decoded, as the slots and tides are dated with them.
+ * Ski levels are the fields <code>top</code>, <code>mid</code> and
+ * <code>bottom</code> of a day or an hourly slot, and astronomy the fields
+ * <code>sunrise</code>, <code>sunset</code>, <code>moonrise</code> and
+ * <code>moonset</code> of a day.
+ *
+ * A projection must not be changed once passed to a parser.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class Projection {
+	private static final Set<String> ASTRONOMY = new HashSet<String>(
+			Arrays.asList("sunrise", "sunset", "moonrise", "moonset"));
+
+	/**
+	 * Every section and field, the default of the parsers.
+	 */
+	static final Projection ALL = new Projection().request()
+			.currentCondition().daily().hourly().tides().timeZone()
+			.searchHits().nearestArea();
+
+	enum Section {
+		REQUEST, CURRENT_CONDITION, DAILY, HOURLY, TIDES, TIME_ZONE, SEARCH_HITS, NEAREST_AREA
+	}
+
+	private final Map<Section, Set<String>> sections = new EnumMap<Section, Set<String>>(
+			Section.class);
+
+	/**
+	 * Decodes the type and query of the request.
+	 */
+	public Projection request() {
+		return add(Section.REQUEST);
+	}
+
+	public Projection currentCondition(String... fields) {
+		return add(Section.CURRENT_CONDITION, fields);
+	}
+
+	public Projection daily(String... fields) {
+		return add(Section.DAILY, fields);
+	}
+
+	public Projection hourly(String... fields) {
+		return add(Section.HOURLY, fields);
+	}
+
+	public Projection tides(String... fields) {
+		return add(Section.TIDES, fields);
+	}
+
+	public Projection timeZone(String... fields) {
+		return add(Section.TIME_ZONE, fields);
+	}
+
+	public Projection searchHits(String... fields) {
+		return add(Section.SEARCH_HITS, fields);
+	}
+
+	public Projection nearestArea(String... fields) {
+		return add(Section.NEAREST_AREA, fields);
+	}
+
+	boolean includes(Section section) {
+		return sections.containsKey(section);
+	}
+
+	boolean includes(Section section, String field) {
+		Set<String> fields = sections.get(section);
+		return fields != null && (fields.isEmpty() || fields.contains(field));
+	}
+
+	/**
+	 * Whether any field of the astronomy of a day is decoded.
+	 */
+	boolean includesAstronomy() {
+		Set<String> fields = sections.get(Section.DAILY);
+		return fields != null
+				&& (fields.isEmpty() || !Collections.disjoint(fields, ASTRONOMY));
+	}
+
+	/**
+	 * Whether the days of the response must be walked.
+	 */
+	boolean includesDays() {
+		return includes(Section.DAILY) || includes(Section.HOURLY)
+				|| includes(Section.TIDES);
+	}
+
+	private Projection add(Section section, String... fields) {
+		Set<String> set = sections.get(section);
+		if (set == null) {
+			sections.put(section,
+					new HashSet<String>(Arrays.asList(fields)));
+		} else if (fields.length == 0 || set.isEmpty()) {
+			set.clear();
+		} else {
+			set.addAll(Arrays.asList(fields));
+		}
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return sections.toString();
+	}
+}
@@ -0,0 +1,31 @@
+package com.example.wwo.parser;
+
+/**
+ * Receives the lines of a CSV or TAB response from a {@link DelimitedParser}.
+ * The record passed is reused for the next line; its values must be copied
+ * out before returning.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public interface RecordHandler {
+
+	/**
+	 * A data line.
+	 *
+	 * @param record
+	 *            the fields of the line.
+	 */
+	void record(DelimitedRecord record);
+
+	/**
+	 * A comment line, present unless the request turned them off with
+	 * <code>showComments(false)</code>. The comments describe the columns of
+	 * the data lines, e.g. "#date,maxtempC,maxtempF,...". The leading '#' is
+	 * not part of the record.
+	 *
+	 * @param comment
+	 *            the fields of the comment.
+	 */
+	void comment(DelimitedRecord comment);
+}
@@ -0,0 +1,146 @@
+package com.example.wwo.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.wwo.model.CurrentCondition;
+import com.example.wwo.model.DailyForecast;
+import com.example.wwo.model.HourlySlot;
+import com.example.wwo.model.SearchHit;
+import com.example.wwo.model.TimeZoneInfo;
+import com.example.wwo.model.Tide;
+
+/**
+ * {@link WeatherHandler} keeping every decoded object, for responses small
+ * enough to hold in memory.
+ *
+ * <pre>
+ * WeatherCollector result = new WeatherCollector();
+ * new JsonWeatherParser().parse(weather.buildRequestAttributes(&quot;http&quot;)
+ * 		.run(), result);
+ * </pre>
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class WeatherCollector implements WeatherHandler {
+	private String requestType;
+	private String query;
+	private final List<CurrentCondition> currentConditions = new ArrayList<CurrentCondition>();
+	private final List<DailyForecast> dailyForecasts = new ArrayList<DailyForecast>();
+	private final List<HourlySlot> hourlySlots = new ArrayList<HourlySlot>();
+	private final List<Tide> tides = new ArrayList<Tide>();
+	private final List<SearchHit> searchHits = new ArrayList<SearchHit>();
+	private SearchHit nearestArea;
+	private TimeZoneInfo timeZone;
+	private final List<String> errors = new ArrayList<String>();
+
+	@Override
+	public void request(String type, String query) {
+		this.requestType = type;
+		this.query = query;
+	}
+
+	@Override
+	public void currentCondition(CurrentCondition condition) {
+		currentConditions.add(condition);
+	}
+
+	@Override
+	public void hourlySlot(HourlySlot slot) {
+		hourlySlots.add(slot);
+	}
+
+	@Override
+	public void tide(Tide tide) {
+		tides.add(tide);
+	}
+
+	@Override
+	public void dailyForecast(DailyForecast forecast) {
+		dailyForecasts.add(forecast);
+	}
+
+	@Override
+	public void searchHit(SearchHit hit) {
+		searchHits.add(hit);
+	}
+
+	@Override
+	public void nearestArea(SearchHit area) {
+		this.nearestArea = area;
+	}
+
+	@Override
+	public void timeZone(TimeZoneInfo timeZone) {
+		this.timeZone = timeZone;
+	}
+
+	@Override
+	public void error(String message) {
+		errors.add(message);
+	}
+
+	public String getRequestType() {
+		return requestType;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * The current condition, the first one if there are more.
+	 *
+	 * @return the current condition, or null if not in the response.
+	 */
+	public CurrentCondition getCurrentCondition() {
+		return currentConditions.isEmpty() ? null : currentConditions.get(0);
+	}
+
+	public List<CurrentCondition> getCurrentConditions() {
+		return currentConditions;
+	}
+
+	public List<DailyForecast> getDailyForecasts() {
+		return dailyForecasts;
+	}
+
+	public List<HourlySlot> getHourlySlots() {
+		return hourlySlots;
+	}
+
+	public List<Tide> getTides() {
+		return tides;
+	}
+
+	public List<SearchHit> getSearchHits() {
+		return searchHits;
+	}
+
+	/**
+	 * The area of the weather point of the response.
+	 *
+	 * @return the area, or null if not in the response.
+	 */
+	public SearchHit getNearestArea() {
+		return nearestArea;
+	}
+
+	public TimeZoneInfo getTimeZone() {
+		return timeZone;
+	}
+
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Whether the API returned an error instead of data.
+	 *
+	 * @return true if there are errors.
+	 */
+	public boolean hasErrors() {
+		return !errors.isEmpty();
+	}
+}
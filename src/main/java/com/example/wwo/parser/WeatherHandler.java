@@ -0,0 +1,66 @@
+package com.example.wwo.parser;
+
+import com.example.wwo.model.CurrentCondition;
+import com.example.wwo.model.DailyForecast;
+import com.example.wwo.model.HourlySlot;
+import com.example.wwo.model.SearchHit;
+import com.example.wwo.model.TimeZoneInfo;
+import com.example.wwo.model.Tide;
+
+/**
+ * Receives the model objects of a response as a {@link WeatherParser} decodes
+ * them, in document order. The hourly slots and tides of a day are passed
+ * before the day itself, so the day can be handled without them being kept.
+ * Extend {@link WeatherHandlerAdapter} to handle only some of them.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public interface WeatherHandler {
+
+	/**
+	 * The location the response is for.
+	 *
+	 * @param type
+	 *            the type of the query, e.g. "City".
+	 * @param query
+	 *            the resolved query, e.g. "London, United Kingdom".
+	 */
+	void request(String type, String query);
+
+	void currentCondition(CurrentCondition condition);
+
+	void hourlySlot(HourlySlot slot);
+
+	void tide(Tide tide);
+
+	/**
+	 * A day, after its hourly slots and tides.
+	 *
+	 * @param forecast
+	 *            the day.
+	 */
+	void dailyForecast(DailyForecast forecast);
+
+	void searchHit(SearchHit hit);
+
+	/**
+	 * The area of the weather point a response is for, returned when the
+	 * location is requested to be included, e.g. with
+	 * <code>isIncludeLocation(true)</code>.
+	 *
+	 * @param area
+	 *            the area, with its coordinates.
+	 */
+	void nearestArea(SearchHit area);
+
+	void timeZone(TimeZoneInfo timeZone);
+
+	/**
+	 * An error returned by the API instead of data, e.g. an unknown location.
+	 *
+	 * @param message
+	 *            the error message.
+	 */
+	void error(String message);
+}
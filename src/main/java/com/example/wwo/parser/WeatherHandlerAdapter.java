@@ -0,0 +1,54 @@
+package com.example.wwo.parser;
+
+import com.example.wwo.model.CurrentCondition;
+import com.example.wwo.model.DailyForecast;
+import com.example.wwo.model.HourlySlot;
+import com.example.wwo.model.SearchHit;
+import com.example.wwo.model.TimeZoneInfo;
+import com.example.wwo.model.Tide;
+
+/**
+ * {@link WeatherHandler} ignoring everything, to be extended by handlers
+ * interested in a few of the models only.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public abstract class WeatherHandlerAdapter implements WeatherHandler {
+
+	@Override
+	public void request(String type, String query) {
+	}
+
+	@Override
+	public void currentCondition(CurrentCondition condition) {
+	}
+
+	@Override
+	public void hourlySlot(HourlySlot slot) {
+	}
+
+	@Override
+	public void tide(Tide tide) {
+	}
+
+	@Override
+	public void dailyForecast(DailyForecast forecast) {
+	}
+
+	@Override
+	public void searchHit(SearchHit hit) {
+	}
+
+	@Override
+	public void nearestArea(SearchHit area) {
+	}
+
+	@Override
+	public void timeZone(TimeZoneInfo timeZone) {
+	}
+
+	@Override
+	public void error(String message) {
+	}
+}
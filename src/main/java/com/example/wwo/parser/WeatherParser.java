@@ -0,0 +1,27 @@
+package com.example.wwo.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a response body of one output format into model objects.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public interface WeatherParser {
+
+	/**
+	 * Decodes the body incrementally, passing every model object to the
+	 * handler as soon as it is complete. The stream is read to the end of the
+	 * document and closed.
+	 *
+	 * @param in
+	 *            the response body.
+	 * @param handler
+	 *            receives the decoded objects.
+	 * @throws IOException
+	 *             if the body cannot be read or is malformed.
+	 */
+	void parse(InputStream in, WeatherHandler handler) throws IOException;
+}
@@ -0,0 +1,397 @@
+package com.example.wwo.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.example.wwo.model.CurrentCondition;
+import com.example.wwo.model.DailyForecast;
+import com.example.wwo.model.HourlySlot;
+import com.example.wwo.model.SearchHit;
+import com.example.wwo.model.SkiLevel;
+import com.example.wwo.model.TimeZoneInfo;
+import com.example.wwo.model.Tide;
+import com.example.wwo.parser.Projection.Section;
+
+/**
+ * Decodes XML responses of every endpoint, the default output format, with a
+ * StAX {@link XMLStreamReader}. The document is pulled element by element and
+ * never built as a tree; memory use is bounded by the largest record, one day
+ * without its hourly slots. The element names are the same as the JSON field
+ * names, and the models are the same as those of {@link JsonWeatherParser}.
+ * Elements outside the {@link Projection} of the parser are skipped without
+ * being converted. The parser is stateless and thread-safe.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class XmlWeatherParser implements WeatherParser {
+	private static final XMLInputFactory FACTORY = createFactory();
+
+	private final Projection projection;
+
+	/**
+	 * Decodes every section and field.
+	 */
+	public XmlWeatherParser() {
+		this(Projection.ALL);
+	}
+
+	/**
+	 * @param projection
+	 *            the sections and fields to decode.
+	 */
+	public XmlWeatherParser(Projection projection) {
+		this.projection = projection;
+	}
+
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				Boolean.FALSE);
+		return factory;
+	}
+
+	@Override
+	public void parse(InputStream in, WeatherHandler handler)
+			throws IOException {
+		try {
+			XMLStreamReader r = FACTORY.createXMLStreamReader(in);
+			try {
+				r.nextTag();
+				String root = r.getLocalName();
+				if ("data".equals(root)) {
+					parseData(r, handler);
+				} else if ("search_api".equals(root)) {
+					parseSearch(r, handler);
+				}
+			} finally {
+				r.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Malformed XML response: " + e.getMessage(),
+					e);
+		} finally {
+			in.close();
+		}
+	}
+
+	private void parseData(XMLStreamReader r, WeatherHandler handler)
+			throws XMLStreamException {
+		while (nextChild(r)) {
+			switch (r.getLocalName()) {
+			case "request":
+				if (!projection.includes(Section.REQUEST)) {
+					skip(r);
+					break;
+				}
+				String type = null;
+				String query = null;
+				while (nextChild(r)) {
+					String name = r.getLocalName();
+					String value = text(r);
+					if ("type".equals(name)) {
+						type = value;
+					} else if ("query".equals(name)) {
+						query = value;
+					}
+				}
+				handler.request(type, query);
+				break;
+			case "current_condition":
+				if (!projection.includes(Section.CURRENT_CONDITION)) {
+					skip(r);
+					break;
+				}
+				CurrentCondition condition = new CurrentCondition();
+				while (nextChild(r)) {
+					String name = r.getLocalName();
+					if (projection.includes(Section.CURRENT_CONDITION, name)) {
+						ModelFields.current(condition, name, text(r));
+					} else {
+						skip(r);
+					}
+				}
+				handler.currentCondition(condition);
+				break;
+			case "weather":
+				if (projection.includesDays()) {
+					parseDay(r, handler);
+				} else {
+					skip(r);
+				}
+				break;
+			case "time_zone":
+				if (!projection.includes(Section.TIME_ZONE)) {
+					skip(r);
+					break;
+				}
+				TimeZoneInfo timeZone = new TimeZoneInfo();
+				while (nextChild(r)) {
+					String name = r.getLocalName();
+					if (projection.includes(Section.TIME_ZONE, name)) {
+						ModelFields.timeZone(timeZone, name, text(r));
+					} else {
+						skip(r);
+					}
+				}
+				handler.timeZone(timeZone);
+				break;
+			case "nearest_area":
+				if (!projection.includes(Section.NEAREST_AREA)) {
+					skip(r);
+					break;
+				}
+				SearchHit area = new SearchHit();
+				while (nextChild(r)) {
+					String name = r.getLocalName();
+					if (projection.includes(Section.NEAREST_AREA, name)) {
+						ModelFields.searchHit(area, name, text(r));
+					} else {
+						skip(r);
+					}
+				}
+				handler.nearestArea(area);
+				break;
+			case "error":
+				while (nextChild(r)) {
+					String name = r.getLocalName();
+					String value = text(r);
+					if ("msg".equals(name)) {
+						handler.error(value);
+					}
+				}
+				break;
+			default:
+				skip(r);
+			}
+		}
+	}
+
+	private void parseDay(XMLStreamReader r, WeatherHandler handler)
+			throws XMLStreamException {
+		DailyForecast day = new DailyForecast();
+		while (nextChild(r)) {
+			String name = r.getLocalName();
+			switch (name) {
+			case "astronomy":
+				if (!projection.includesAstronomy()) {
+					skip(r);
+					break;
+				}
+				while (nextChild(r)) {
+					dayField(r, day, r.getLocalName());
+				}
+				break;
+			case "hourly":
+				if (projection.includes(Section.HOURLY)) {
+					handler.hourlySlot(parseHourly(r, day));
+				} else {
+					skip(r);
+				}
+				break;
+			case "tides":
+				if (!projection.includes(Section.TIDES)) {
+					skip(r);
+					break;
+				}
+				while (nextChild(r)) {
+					if (!"tide_data".equals(r.getLocalName())) {
+						skip(r);
+						continue;
+					}
+					Tide tide = new Tide();
+					tide.setDate(day.getDate());
+					while (nextChild(r)) {
+						String field = r.getLocalName();
+						if (projection.includes(Section.TIDES, field)) {
+							ModelFields.tide(tide, field, text(r));
+						} else {
+							skip(r);
+						}
+					}
+					handler.tide(tide);
+				}
+				break;
+			case "top":
+			case "mid":
+			case "bottom":
+				if (projection.includes(Section.DAILY, name)) {
+					parseSkiLevel(r, SkiLevel.Level.of(name), day.getSkiLevels());
+				} else {
+					skip(r);
+				}
+				break;
+			case "date":
+				ModelFields.day(day, name, text(r));
+				break;
+			default:
+				dayField(r, day, name);
+			}
+		}
+		if (projection.includes(Section.DAILY)) {
+			handler.dailyForecast(day);
+		}
+	}
+
+	private void dayField(XMLStreamReader r, DailyForecast day, String name)
+			throws XMLStreamException {
+		if (projection.includes(Section.DAILY, name)) {
+			ModelFields.day(day, name, text(r));
+		} else {
+			skip(r);
+		}
+	}
+
+	private HourlySlot parseHourly(XMLStreamReader r, DailyForecast day)
+			throws XMLStreamException {
+		HourlySlot slot = new HourlySlot();
+		slot.setDate(day.getDate());
+		while (nextChild(r)) {
+			String name = r.getLocalName();
+			switch (name) {
+			case "top":
+			case "mid":
+			case "bottom":
+				if (projection.includes(Section.HOURLY, name)) {
+					parseSkiLevel(r, SkiLevel.Level.of(name), slot.getSkiLevels());
+				} else {
+					skip(r);
+				}
+				break;
+			case "time":
+				ModelFields.hourly(slot, name, text(r));
+				break;
+			default:
+				if (projection.includes(Section.HOURLY, name)) {
+					ModelFields.hourly(slot, name, text(r));
+				} else {
+					skip(r);
+				}
+			}
+		}
+		return slot;
+	}
+
+	private void parseSkiLevel(XMLStreamReader r, SkiLevel.Level level,
+			List<SkiLevel> levels) throws XMLStreamException {
+		SkiLevel skiLevel = new SkiLevel();
+		skiLevel.setLevel(level);
+		while (nextChild(r)) {
+			ModelFields.skiLevel(skiLevel, r.getLocalName(), text(r));
+		}
+		levels.add(skiLevel);
+	}
+
+	private void parseSearch(XMLStreamReader r, WeatherHandler handler)
+			throws XMLStreamException {
+		while (nextChild(r)) {
+			if (!"result".equals(r.getLocalName())
+					|| !projection.includes(Section.SEARCH_HITS)) {
+				skip(r);
+				continue;
+			}
+			SearchHit hit = new SearchHit();
+			while (nextChild(r)) {
+				String name = r.getLocalName();
+				if ("timezone".equals(name)) {
+					while (nextChild(r)) {
+						searchHitField(r, hit, r.getLocalName());
+					}
+				} else {
+					searchHitField(r, hit, name);
+				}
+			}
+			handler.searchHit(hit);
+		}
+	}
+
+	private void searchHitField(XMLStreamReader r, SearchHit hit, String name)
+			throws XMLStreamException {
+		if (projection.includes(Section.SEARCH_HITS, name)) {
+			ModelFields.searchHit(hit, name, text(r));
+		} else {
+			skip(r);
+		}
+	}
+
+	/**
+	 * Moves to the next child element of the current element.
+	 *
+	 * @return false at the end of the current element.
+	 */
+	private static boolean nextChild(XMLStreamReader r)
+			throws XMLStreamException {
+		while (r.hasNext()) {
+			switch (r.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				return true;
+			case XMLStreamConstants.END_ELEMENT:
+				return false;
+			default:
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The text of the current element, e.g. the CDATA section of
+	 * <code>weatherDesc</code>, trimmed. Nested elements are skipped. Leaves
+	 * the reader on the end of the element.
+	 */
+	private static String text(XMLStreamReader r) throws XMLStreamException {
+		StringBuilder text = null;
+		String single = null;
+		int depth = 1;
+		while (depth > 0) {
+			switch (r.next()) {
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+				if (depth == 1) {
+					if (single == null) {
+						single = r.getText();
+					} else {
+						if (text == null) {
+							text = new StringBuilder(single);
+						}
+						text.append(r.getText());
+					}
+				}
+				break;
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			default:
+			}
+		}
+		if (text != null) {
+			return text.toString().trim();
+		}
+		return single != null ? single.trim() : null;
+	}
+
+	/**
+	 * Skips the current element with its children.
+	 */
+	private static void skip(XMLStreamReader r) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = r.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.example.wwo.quota;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is not sent because the client side quota of its API
+ * key is used up.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class QuotaExceededException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final long retryAfterMillis;
+
+	public QuotaExceededException(String message, long retryAfterMillis) {
+		super(message);
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	/**
+	 * How long until a permit is available again.
+	 *
+	 * @return the delay in milliseconds.
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+}
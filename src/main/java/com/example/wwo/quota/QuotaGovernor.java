@@ -0,0 +1,349 @@
+package com.example.wwo.quota;
+
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side rate limiter shared by every endpoint. Each API key and
+ * {@link Tier} has its own token bucket, limiting the requests per second with
+ * a burst allowance, and a daily request counter which resets at midnight UTC.
+ *
+ * In {@link Mode#BLOCK} mode a request waits until a permit is free; in
+ * {@link Mode#FAIL_FAST} mode it is rejected with a
+ * {@link QuotaExceededException}. A used up daily quota is always rejected, as
+ * waiting for the next day would hold the caller for hours.
+ *
+ * Attach it to a transport with
+ * {@link com.example.wwo.HttpTransport#setQuotaGovernor(QuotaGovernor)};
+ * responses served from the cache do not use the quota.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class QuotaGovernor {
+	private final Map<Tier, Limits> defaultLimits = new EnumMap<Tier, Limits>(
+			Tier.class);
+	private final ConcurrentMap<String, Limits> keyLimits = new ConcurrentHashMap<String, Limits>();
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+	private volatile Mode mode = Mode.BLOCK;
+
+	/**
+	 * Creates a governor with the default limits: 5 requests per second and
+	 * 500 per day on the free API, 50 requests per second without daily limit
+	 * on the premium API.
+	 */
+	public QuotaGovernor() {
+		defaultLimits.put(Tier.FREE, new Limits(5, 5, 500));
+		defaultLimits.put(Tier.PREMIUM, new Limits(50, 50, Limits.UNLIMITED));
+	}
+
+	/**
+	 * Sets the limits of every API key of a tier without own limits. The
+	 * requests already sent today count against the new daily quota.
+	 *
+	 * @param tier
+	 *            the tier.
+	 * @param limits
+	 *            the limits.
+	 * @return a reference to this object.
+	 */
+	public synchronized QuotaGovernor setDefaultLimits(Tier tier, Limits limits) {
+		defaultLimits.put(tier, limits);
+		for (Bucket bucket : buckets.values()) {
+			if (bucket.tier == tier && !keyLimits.containsKey(bucket.id)) {
+				bucket.setLimits(limits);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the limits of one API key on one tier. The requests already sent
+	 * today count against the new daily quota.
+	 *
+	 * @param apiKey
+	 *            the API key.
+	 * @param tier
+	 *            the tier.
+	 * @param limits
+	 *            the limits.
+	 * @return a reference to this object.
+	 */
+	public QuotaGovernor setLimits(String apiKey, Tier tier, Limits limits) {
+		String id = idOf(apiKey, tier);
+		keyLimits.put(id, limits);
+		Bucket bucket = buckets.get(id);
+		if (bucket != null) {
+			bucket.setLimits(limits);
+		}
+		return this;
+	}
+
+	/**
+	 * Whether requests wait for a permit or fail fast. Default is
+	 * {@link Mode#BLOCK}.
+	 *
+	 * @param mode
+	 *            the mode.
+	 * @return a reference to this object.
+	 */
+	public QuotaGovernor setMode(Mode mode) {
+		this.mode = mode;
+		return this;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Takes a permit, waiting for it in {@link Mode#BLOCK} mode.
+	 *
+	 * @param apiKey
+	 *            the API key of the request.
+	 * @param tier
+	 *            the tier of the request.
+	 * @throws QuotaExceededException
+	 *             if the daily quota is used up, or no permit is free in
+	 *             {@link Mode#FAIL_FAST} mode.
+	 * @throws InterruptedIOException
+	 *             if interrupted while waiting.
+	 */
+	public void acquire(String apiKey, Tier tier)
+			throws QuotaExceededException, InterruptedIOException {
+		long waitNanos = reserve(apiKey, tier);
+		if (waitNanos > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+						"Interrupted while waiting for a request permit.");
+			}
+		}
+	}
+
+	/**
+	 * Takes a permit without waiting for it: in {@link Mode#BLOCK} mode the
+	 * permit may be reserved in the future, and the caller has to delay the
+	 * request by the returned time. Used by the non-blocking requests.
+	 *
+	 * @param apiKey
+	 *            the API key of the request.
+	 * @param tier
+	 *            the tier of the request.
+	 * @return the nanoseconds to wait before sending the request.
+	 * @throws QuotaExceededException
+	 *             if the daily quota is used up, or no permit is free in
+	 *             {@link Mode#FAIL_FAST} mode.
+	 */
+	public long reserve(String apiKey, Tier tier) throws QuotaExceededException {
+		return bucketOf(apiKey, tier).reserve(mode == Mode.FAIL_FAST);
+	}
+
+	/**
+	 * The requests left today for an API key.
+	 *
+	 * @param apiKey
+	 *            the API key.
+	 * @param tier
+	 *            the tier.
+	 * @return the remaining requests, or {@link Long#MAX_VALUE} if there is no
+	 *         daily limit.
+	 */
+	public long getRemainingDailyQuota(String apiKey, Tier tier) {
+		return bucketOf(apiKey, tier).remainingToday();
+	}
+
+	/**
+	 * The time until the daily quotas reset.
+	 *
+	 * @return the milliseconds until the next midnight UTC.
+	 */
+	public long getMillisUntilDailyReset() {
+		return Bucket.millisUntilTomorrow();
+	}
+
+	private Bucket bucketOf(String apiKey, Tier tier) {
+		String id = idOf(apiKey, tier);
+		Bucket bucket = buckets.get(id);
+		if (bucket == null) {
+			Limits limits = keyLimits.get(id);
+			if (limits == null) {
+				synchronized (this) {
+					limits = defaultLimits.get(tier);
+				}
+			}
+			Bucket created = new Bucket(id, tier, limits);
+			bucket = buckets.putIfAbsent(id, created);
+			if (bucket == null) {
+				bucket = created;
+			}
+		}
+		return bucket;
+	}
+
+	private static String idOf(String apiKey, Tier tier) {
+		return tier + ":" + apiKey;
+	}
+
+	/**
+	 * What to do when no permit is free.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public static enum Mode {
+		/**
+		 * Wait for the next permit.
+		 */
+		BLOCK,
+		/**
+		 * Throw a {@link QuotaExceededException}.
+		 */
+		FAIL_FAST
+	}
+
+	/**
+	 * Request rate and daily quota of an API key.
+	 *
+	 * @author Fanni_Varga
+	 *
+	 */
+	public static class Limits {
+		/**
+		 * No daily limit.
+		 */
+		public static final long UNLIMITED = Long.MAX_VALUE;
+
+		private final double requestsPerSecond;
+		private final int burst;
+		private final long requestsPerDay;
+
+		/**
+		 * @param requestsPerSecond
+		 *            the sustained request rate.
+		 * @param burst
+		 *            the number of requests which can be sent at once after
+		 *            an idle period.
+		 * @param requestsPerDay
+		 *            the daily quota, or {@link #UNLIMITED}.
+		 * @throws IllegalArgumentException
+		 *             if a limit is not positive.
+		 */
+		public Limits(double requestsPerSecond, int burst, long requestsPerDay)
+				throws IllegalArgumentException {
+			if (requestsPerSecond <= 0 || burst < 1 || requestsPerDay < 1) {
+				throw new IllegalArgumentException(
+						"The limits must be positive.");
+			}
+			this.requestsPerSecond = requestsPerSecond;
+			this.burst = burst;
+			this.requestsPerDay = requestsPerDay;
+		}
+
+		public double getRequestsPerSecond() {
+			return requestsPerSecond;
+		}
+
+		public int getBurst() {
+			return burst;
+		}
+
+		public long getRequestsPerDay() {
+			return requestsPerDay;
+		}
+	}
+
+	/**
+	 * Token bucket of one API key. Permits may be reserved ahead, then the
+	 * stored permits go negative and later callers wait longer.
+	 */
+	private static class Bucket {
+		private final String id;
+		private final Tier tier;
+		private Limits limits;
+		private double storedPermits;
+		private long lastRefillNanos;
+		private long day;
+		private long usedToday;
+
+		Bucket(String id, Tier tier, Limits limits) {
+			this.id = id;
+			this.tier = tier;
+			this.limits = limits;
+			this.storedPermits = limits.burst;
+			this.lastRefillNanos = System.nanoTime();
+			this.day = currentDay();
+		}
+
+		synchronized long reserve(boolean failFast)
+				throws QuotaExceededException {
+			resetDay();
+			if (usedToday >= limits.requestsPerDay) {
+				throw new QuotaExceededException("The daily quota of " + id
+						+ " is used up.", millisUntilTomorrow());
+			}
+			long now = refill();
+			long waitNanos = 0;
+			if (storedPermits < 1) {
+				waitNanos = (long) ((1 - storedPermits) * 1e9 / limits.requestsPerSecond);
+				if (failFast) {
+					throw new QuotaExceededException("The request rate of "
+							+ id + " is exceeded.",
+							TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+				}
+			}
+			storedPermits -= 1;
+			usedToday++;
+			return waitNanos;
+		}
+
+		/**
+		 * Changes the limits, keeping the permits used today and the stored
+		 * permits up to the new burst.
+		 */
+		synchronized void setLimits(Limits limits) {
+			refill();
+			this.limits = limits;
+			storedPermits = Math.min(limits.burst, storedPermits);
+		}
+
+		synchronized long remainingToday() {
+			resetDay();
+			if (limits.requestsPerDay == Limits.UNLIMITED) {
+				return Long.MAX_VALUE;
+			}
+			return Math.max(0, limits.requestsPerDay - usedToday);
+		}
+
+		private long refill() {
+			long now = System.nanoTime();
+			storedPermits = Math.min(limits.burst, storedPermits
+					+ (now - lastRefillNanos) * limits.requestsPerSecond / 1e9);
+			lastRefillNanos = now;
+			return now;
+		}
+
+		private void resetDay() {
+			long today = currentDay();
+			if (today != day) {
+				day = today;
+				usedToday = 0;
+			}
+		}
+
+		private static long currentDay() {
+			return TimeUnit.MILLISECONDS.toDays(System.currentTimeMillis());
+		}
+
+		private static long millisUntilTomorrow() {
+			return TimeUnit.DAYS.toMillis(currentDay() + 1)
+					- System.currentTimeMillis();
+		}
+	}
+}
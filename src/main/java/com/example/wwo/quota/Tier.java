@@ -0,0 +1,31 @@
+package com.example.wwo.quota;
+
+/**
+ * The API package of a request. Every endpoint class has its own
+ * <code>PackageType</code> enum with the same two values; the tier is derived
+ * from the base URL those enums map to, so one limiter covers all endpoints.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public enum Tier {
+	/**
+	 * Free API.
+	 */
+	FREE,
+	/**
+	 * Premium API.
+	 */
+	PREMIUM;
+
+	/**
+	 * The tier of a base URL, e.g. "/premium/v1/weather.ashx".
+	 *
+	 * @param baseUrl
+	 *            the base URL of an endpoint.
+	 * @return the tier.
+	 */
+	public static Tier of(String baseUrl) {
+		return baseUrl.startsWith("/premium/") ? PREMIUM : FREE;
+	}
+}
@@ -0,0 +1,566 @@
+package com.example.wwo.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.example.wwo.Request;
+import com.example.wwo.model.SearchHit;
+import com.example.wwo.parser.DelimitedParser;
+import com.example.wwo.parser.DelimitedRecord;
+import com.example.wwo.parser.RecordHandler;
+import com.example.wwo.parser.WeatherHandler;
+import com.example.wwo.parser.WeatherHandlerAdapter;
+import com.example.wwo.search.Search.Category;
+
+/**
+ * In-process index of the locations returned by {@link Search}, to answer
+ * autocomplete queries without calling the API on every keystroke. Area names
+ * are kept in a compressed prefix trie (a radix tree); every node keeps the
+ * most popular locations below it, so an unfiltered query is a walk down the
+ * typed prefix. Locations are ranked by population, then by how often the API
+ * returned them.
+ *
+ * A query is an area name prefix, optionally followed by comma separated
+ * prefixes of the region or country, e.g. "lon, united". Matching ignores
+ * case, accents and repeated spaces.
+ *
+ * The index is filled from search responses, see {@link #indexer(Category)}
+ * and {@link #search(String, int, Category, Request)}, and from seed files,
+ * see {@link #load(InputStream)}. Thread-safe; queries run concurrently.
+ * The returned hits are shared and must not be modified.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class Gazetteer {
+	/**
+	 * The most results a query returns, the limit of the premium API.
+	 */
+	public static final int MAX_RESULTS = 50;
+
+	private static final Node[] NO_CHILDREN = new Node[0];
+	private static final double SAME_PLACE_DEGREES = 0.01;
+	private static final Comparator<Entry> BY_RANK = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry a, Entry b) {
+			if (a.hit.getPopulation() != b.hit.getPopulation()) {
+				return a.hit.getPopulation() > b.hit.getPopulation() ? -1 : 1;
+			}
+			if (a.seen != b.seen) {
+				return a.seen > b.seen ? -1 : 1;
+			}
+			return a.name.compareTo(b.name);
+		}
+	};
+
+	private final Node root = new Node("");
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private int size;
+	private final AtomicLong localHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Adds a location, or merges it with the same place already indexed.
+	 *
+	 * @param hit
+	 *            the location, with its area name.
+	 * @param category
+	 *            the category it was searched for, or null.
+	 */
+	public void add(SearchHit hit, Category category) {
+		String name = normalize(hit.getAreaName());
+		if (name.isEmpty()) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			List<Node> path = new ArrayList<Node>();
+			Node node = insert(name, path);
+			Entry entry = node.find(hit);
+			if (entry == null) {
+				entry = new Entry(name, hit);
+				node.entries.add(entry);
+				size++;
+			} else {
+				entry.merge(hit);
+			}
+			if (category != null) {
+				entry.categories.add(category);
+			}
+			for (Node n : path) {
+				n.offer(entry);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * The most popular indexed locations matching a query.
+	 *
+	 * @param query
+	 *            the typed text, an area name prefix optionally followed by
+	 *            region or country prefixes.
+	 * @param maxResults
+	 *            the number of results, at most {@link #MAX_RESULTS}.
+	 * @param category
+	 *            the category the locations must have been searched for, or
+	 *            null for any.
+	 * @return the locations, most popular first; empty if none is indexed.
+	 */
+	public List<SearchHit> search(String query, int maxResults,
+			Category category) {
+		String[] parts = query.split(",", -1);
+		String prefix = normalize(parts[0]);
+		String[] qualifiers = new String[parts.length - 1];
+		for (int i = 1; i < parts.length; i++) {
+			qualifiers[i - 1] = normalize(parts[i]);
+		}
+		int limit = Math.min(maxResults, MAX_RESULTS);
+		List<SearchHit> result = new ArrayList<SearchHit>(limit);
+		lock.readLock().lock();
+		try {
+			Node node = find(prefix);
+			if (node == null) {
+				return result;
+			}
+			for (int i = 0; i < node.topSize && result.size() < limit; i++) {
+				Entry entry = node.top[i];
+				if (entry.matches(qualifiers, category)) {
+					result.add(entry.hit);
+				}
+			}
+			if (result.size() < limit && node.topSize == MAX_RESULTS
+					&& (category != null || qualifiers.length > 0)) {
+				// the filter skipped some of the top, look at every location
+				List<Entry> matching = new ArrayList<Entry>();
+				node.collect(qualifiers, category, matching);
+				Collections.sort(matching, BY_RANK);
+				result.clear();
+				for (int i = 0; i < matching.size() && i < limit; i++) {
+					result.add(matching.get(i).hit);
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Answers a query from the index, or on a miss from the API. The results
+	 * of the API are indexed for the following queries.
+	 *
+	 * @param query
+	 *            the typed text.
+	 * @param maxResults
+	 *            the number of results.
+	 * @param category
+	 *            the category to filter and index with, or null; it should
+	 *            be the category of the fallback request.
+	 * @param fallback
+	 *            the search request of the same query, in XML or JSON, sent
+	 *            only on a miss.
+	 * @return the locations, most popular first.
+	 * @throws IOException
+	 *             if the fallback request fails.
+	 */
+	public List<SearchHit> search(String query, int maxResults,
+			Category category, Request fallback) throws IOException {
+		List<SearchHit> local = search(query, maxResults, category);
+		if (!local.isEmpty()) {
+			localHits.incrementAndGet();
+			return local;
+		}
+		misses.incrementAndGet();
+		final List<SearchHit> remote = new ArrayList<SearchHit>();
+		fallback.parse(new WeatherHandlerAdapter() {
+			@Override
+			public void searchHit(SearchHit hit) {
+				remote.add(hit);
+			}
+		});
+		for (SearchHit hit : remote) {
+			add(hit, category);
+		}
+		return remote.size() > maxResults ? remote.subList(0, maxResults)
+				: remote;
+	}
+
+	/**
+	 * A handler indexing the hits of a search response, e.g.
+	 *
+	 * <pre>
+	 * search.buildRequestAttributes(&quot;http&quot;).parse(
+	 * 		gazetteer.indexer(null));
+	 * </pre>
+	 *
+	 * @param category
+	 *            the category of the search, or null.
+	 * @return the handler.
+	 */
+	public WeatherHandler indexer(final Category category) {
+		return new WeatherHandlerAdapter() {
+			@Override
+			public void searchHit(SearchHit hit) {
+				add(hit, category);
+			}
+		};
+	}
+
+	/**
+	 * Indexes a seed file of tab separated lines: area name, country, region,
+	 * latitude, longitude, population and optionally a category, e.g.
+	 * <code>Ski</code>. Lines starting with '#' are comments. Closes the
+	 * stream.
+	 *
+	 * @param in
+	 *            the seed file.
+	 * @return the number of lines indexed.
+	 * @throws IOException
+	 *             if the file cannot be read or a line has too few fields
+	 *             or an unknown category.
+	 */
+	public int load(InputStream in) throws IOException {
+		final int[] count = new int[1];
+		final IOException[] error = new IOException[1];
+		DelimitedParser.tab().parse(in, new RecordHandler() {
+			@Override
+			public void record(DelimitedRecord record) {
+				if (error[0] != null) {
+					return;
+				}
+				if (record.size() < 6) {
+					error[0] = new IOException("Expected 6 or 7 fields on line "
+							+ record.getLineNumber() + ", got " + record.size());
+					return;
+				}
+				SearchHit hit = new SearchHit();
+				hit.setAreaName(record.getString(0));
+				hit.setCountry(record.getString(1));
+				hit.setRegion(record.getString(2));
+				hit.setLatitude(record.getDouble(3));
+				hit.setLongitude(record.getDouble(4));
+				hit.setPopulation(record.getLong(5, 0));
+				Category category = null;
+				if (record.size() > 6 && !record.isEmpty(6)) {
+					category = categoryOf(record.getString(6));
+					if (category == null) {
+						error[0] = new IOException("Unknown category on line "
+								+ record.getLineNumber() + ": "
+								+ record.getString(6));
+						return;
+					}
+				}
+				add(hit, category);
+				count[0]++;
+			}
+
+			@Override
+			public void comment(DelimitedRecord record) {
+			}
+		});
+		if (error[0] != null) {
+			throw error[0];
+		}
+		return count[0];
+	}
+
+	/**
+	 * The number of indexed locations.
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The number of queries with a fallback answered from the index.
+	 */
+	public long getLocalHitCount() {
+		return localHits.get();
+	}
+
+	/**
+	 * The number of queries with a fallback sent to the API.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	private static Category categoryOf(String value) {
+		for (Category category : Category.values()) {
+			if (category.getValue().equalsIgnoreCase(value)
+					|| category.name().equalsIgnoreCase(value)) {
+				return category;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Lower case without accents, with single spaces and no space at the
+	 * ends.
+	 */
+	static String normalize(String text) {
+		if (text == null) {
+			return "";
+		}
+		String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+		StringBuilder sb = new StringBuilder(decomposed.length());
+		boolean space = false;
+		for (int i = 0; i < decomposed.length(); i++) {
+			char c = decomposed.charAt(i);
+			if (Character.getType(c) == Character.NON_SPACING_MARK) {
+				continue;
+			}
+			if (Character.isWhitespace(c)) {
+				space = sb.length() > 0;
+			} else {
+				if (space) {
+					sb.append(' ');
+					space = false;
+				}
+				sb.append(Character.toLowerCase(c));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The node of a name, created with its path if needed.
+	 */
+	private Node insert(String name, List<Node> path) {
+		Node node = root;
+		path.add(node);
+		int i = 0;
+		while (i < name.length()) {
+			int index = node.indexOf(name.charAt(i));
+			if (index < 0) {
+				Node child = new Node(name.substring(i));
+				node.addChild(child);
+				path.add(child);
+				return child;
+			}
+			Node child = node.children[index];
+			int common = commonPrefix(child.label, name, i);
+			if (common < child.label.length()) {
+				// split the edge at the end of the common prefix
+				Node middle = new Node(child.label.substring(0, common));
+				child.label = child.label.substring(common);
+				middle.children = new Node[] { child };
+				middle.top = child.top.clone();
+				middle.topSize = child.topSize;
+				node.children[index] = middle;
+				child = middle;
+			}
+			node = child;
+			path.add(node);
+			i += common;
+		}
+		return node;
+	}
+
+	/**
+	 * The node below which every name starts with the prefix.
+	 */
+	private Node find(String prefix) {
+		Node node = root;
+		int i = 0;
+		while (i < prefix.length()) {
+			int index = node.indexOf(prefix.charAt(i));
+			if (index < 0) {
+				return null;
+			}
+			Node child = node.children[index];
+			int common = commonPrefix(child.label, prefix, i);
+			if (i + common == prefix.length()) {
+				return child;
+			}
+			if (common < child.label.length()) {
+				return null;
+			}
+			node = child;
+			i += common;
+		}
+		return node;
+	}
+
+	private static int commonPrefix(String label, String text, int from) {
+		int max = Math.min(label.length(), text.length() - from);
+		int i = 0;
+		while (i < max && label.charAt(i) == text.charAt(from + i)) {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean startsWithAny(String value, String prefix) {
+		return value.startsWith(prefix) || value.contains(" " + prefix);
+	}
+
+	private static final class Node {
+		String label;
+		Node[] children = NO_CHILDREN;
+		final List<Entry> entries = new ArrayList<Entry>(1);
+		Entry[] top = new Entry[0];
+		int topSize;
+
+		Node(String label) {
+			this.label = label;
+		}
+
+		int indexOf(char first) {
+			int low = 0;
+			int high = children.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				char c = children[mid].label.charAt(0);
+				if (c < first) {
+					low = mid + 1;
+				} else if (c > first) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -1;
+		}
+
+		void addChild(Node child) {
+			char first = child.label.charAt(0);
+			int at = 0;
+			while (at < children.length && children[at].label.charAt(0) < first) {
+				at++;
+			}
+			Node[] grown = new Node[children.length + 1];
+			System.arraycopy(children, 0, grown, 0, at);
+			grown[at] = child;
+			System.arraycopy(children, at, grown, at + 1, children.length - at);
+			children = grown;
+		}
+
+		Entry find(SearchHit hit) {
+			for (Entry entry : entries) {
+				if (entry.isSamePlace(hit)) {
+					return entry;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Keeps the entry among the most popular of this node if it ranks
+		 * high enough, re-ranking it if it already is.
+		 */
+		void offer(Entry entry) {
+			int at = -1;
+			for (int i = 0; i < topSize; i++) {
+				if (top[i] == entry) {
+					at = i;
+					break;
+				}
+			}
+			if (at < 0) {
+				if (topSize == MAX_RESULTS) {
+					if (BY_RANK.compare(entry, top[topSize - 1]) >= 0) {
+						return;
+					}
+					topSize--;
+				}
+				if (topSize == top.length) {
+					top = Arrays.copyOf(top,
+							Math.min(MAX_RESULTS, Math.max(4, topSize * 2)));
+				}
+				at = topSize++;
+				top[at] = entry;
+			}
+			// the entry only moves up: merging keeps the larger population
+			while (at > 0 && BY_RANK.compare(top[at], top[at - 1]) < 0) {
+				Entry swap = top[at - 1];
+				top[at - 1] = top[at];
+				top[at] = swap;
+				at--;
+			}
+		}
+
+		void collect(String[] qualifiers, Category category, List<Entry> into) {
+			for (Entry entry : entries) {
+				if (entry.matches(qualifiers, category)) {
+					into.add(entry);
+				}
+			}
+			for (Node child : children) {
+				child.collect(qualifiers, category, into);
+			}
+		}
+	}
+
+	private static final class Entry {
+		final String name;
+		final SearchHit hit;
+		final String country;
+		final String region;
+		final EnumSet<Category> categories = EnumSet.noneOf(Category.class);
+		long seen = 1;
+
+		Entry(String name, SearchHit hit) {
+			this.name = name;
+			this.hit = hit;
+			this.country = normalize(hit.getCountry());
+			this.region = normalize(hit.getRegion());
+		}
+
+		boolean isSamePlace(SearchHit other) {
+			return country.equals(normalize(other.getCountry()))
+					&& region.equals(normalize(other.getRegion()))
+					&& isNear(hit.getLatitude(), other.getLatitude())
+					&& isNear(hit.getLongitude(), other.getLongitude());
+		}
+
+		private static boolean isNear(double a, double b) {
+			return (Double.isNaN(a) && Double.isNaN(b))
+					|| Math.abs(a - b) < SAME_PLACE_DEGREES;
+		}
+
+		void merge(SearchHit other) {
+			seen++;
+			if (other.getPopulation() > hit.getPopulation()) {
+				hit.setPopulation(other.getPopulation());
+			}
+			if (Double.isNaN(hit.getTimeZoneOffset())) {
+				hit.setTimeZoneOffset(other.getTimeZoneOffset());
+			}
+			if (hit.getWeatherUrl() == null) {
+				hit.setWeatherUrl(other.getWeatherUrl());
+			}
+		}
+
+		boolean matches(String[] qualifiers, Category category) {
+			if (category != null && !categories.contains(category)) {
+				return false;
+			}
+			for (String qualifier : qualifiers) {
+				if (!qualifier.isEmpty() && !startsWithAny(region, qualifier)
+						&& !startsWithAny(country, qualifier)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -2,19 +2,25 @@ package com.example.wwo.skiweather;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.joda.time.DateTimeConstants;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.example.wwo.HttpTransport;
 import com.example.wwo.Location;
 import com.example.wwo.Request;
 import com.example.wwo.Location.LocationType;
 
 public class SkiWeather {
 	protected static final String HOST_URL = "api.worldweatheronline.com";
-	protected static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(
-			"yyyy-MM-dd");
+	protected static final DateTimeFormatter DATE_FORMAT = ISODateTimeFormat
+			.date();
+	private static final DateTimeFormatter EPOCH_DAY_FORMAT = DATE_FORMAT
+			.withZoneUTC();
 	private Map<String, String> parameters;
 	private PackageType packageType;
 
@@ -60,8 +66,24 @@ public class SkiWeather {
 	 */
 	public Request buildRequestAttributes(String scheme) throws IOException,
 			URISyntaxException {
+		return buildRequestAttributes(scheme, HttpTransport.getDefault());
+	}
+
+	/**
+	 * Builds the request on the given transport instead of the default one.
+	 * 
+	 * @param scheme
+	 *            http or https.
+	 * @param transport
+	 *            the shared transport to execute the request on.
+	 * @return the request.
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public Request buildRequestAttributes(String scheme, HttpTransport transport)
+			throws IOException, URISyntaxException {
 		Request ret = new Request(parameters, packageType.getBaseUrl(),
-				HOST_URL, scheme);
+				HOST_URL, scheme, transport);
 		return ret;
 	}
 
@@ -104,7 +126,21 @@ public class SkiWeather {
 	 * @return a reference to this object.
 	 */
 	public SkiWeather date(Date date) {
-		String dateString = DATE_FORMAT.format(date);
+		String dateString = DATE_FORMAT.print(date.getTime());
+		parameters.put("date", dateString);
+		return this;
+	}
+
+	/**
+	 * Specifies weather for a date given as the days since 1970-01-01.
+	 * 
+	 * @param epochDay
+	 *            The date which the weather wanted.
+	 * @return a reference to this object.
+	 */
+	public SkiWeather date(long epochDay) {
+		String dateString = EPOCH_DAY_FORMAT.print(epochDay
+				* DateTimeConstants.MILLIS_PER_DAY);
 		parameters.put("date", dateString);
 		return this;
 	}
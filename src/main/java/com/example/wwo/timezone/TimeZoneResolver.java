@@ -0,0 +1,359 @@
+package com.example.wwo.timezone;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.joda.time.DateTimeUtils;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+
+import com.example.wwo.Location;
+import com.example.wwo.Location.LocationType;
+import com.example.wwo.Request;
+import com.example.wwo.cache.Geohash;
+import com.example.wwo.model.TimeZoneInfo;
+import com.example.wwo.parser.DelimitedParser;
+import com.example.wwo.parser.DelimitedRecord;
+import com.example.wwo.parser.RecordHandler;
+import com.example.wwo.parser.WeatherHandler;
+import com.example.wwo.parser.WeatherHandlerAdapter;
+
+/**
+ * Resolves the time zone of a location in-process, to skip the time zone
+ * request of locations already seen. Coordinates are looked up in a spatial
+ * index of geohash cells of varying size: the longest cell containing the
+ * point wins, so a boundary dataset can cover the inside of a zone with a few
+ * large cells and its borders with small ones. Other locations, e.g. city
+ * names and postal codes, are looked up by their canonical form.
+ *
+ * The index is filled from the <code>time_zone</code> element of time zone
+ * responses, and of local weather responses asking for the local time, see
+ * {@link #learner(Location)} and {@link #timeZone(Location, Request)}; and
+ * from a boundary dataset, see {@link #load(InputStream)}. The offsets are
+ * computed by Joda-Time from the zone id, with daylight saving time. A
+ * response without the zone id is remembered as its fixed UTC offset, which
+ * is wrong across a daylight saving change.
+ *
+ * Thread-safe; lookups run concurrently.
+ *
+ * @author Fanni_Varga
+ *
+ */
+public class TimeZoneResolver {
+	private final int precision;
+	private final Map<String, DateTimeZone> zoneByCell = new HashMap<String, DateTimeZone>();
+	private final Map<Location, DateTimeZone> zoneByLocation = new HashMap<Location, DateTimeZone>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private int maxCellLength;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a resolver learning coordinates as 5 character cells, about
+	 * 4.9 x 4.9 km.
+	 */
+	public TimeZoneResolver() {
+		this(5);
+	}
+
+	/**
+	 * @param precision
+	 *            the length of the geohash of the cell learned from a response
+	 *            of a coordinate, see {@link Geohash}.
+	 * @throws IllegalArgumentException
+	 *             if the precision is out of range.
+	 */
+	public TimeZoneResolver(int precision) throws IllegalArgumentException {
+		if (precision < 1 || precision > Geohash.MAX_PRECISION) {
+			throw new IllegalArgumentException("The precision must be between 1 and "
+					+ Geohash.MAX_PRECISION + ".");
+		}
+		this.precision = precision;
+	}
+
+	/**
+	 * The time zone of a location.
+	 *
+	 * @param location
+	 *            the location.
+	 * @return the zone, or null if not known.
+	 */
+	public DateTimeZone resolve(Location location) {
+		DateTimeZone zone;
+		lock.readLock().lock();
+		try {
+			if (location.getType() == LocationType.LAT_AND_LONG) {
+				zone = zoneOfPoint(location.getLatitude(),
+						location.getLongitude());
+			} else {
+				zone = zoneByLocation.get(location);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		if (zone == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return zone;
+	}
+
+	/**
+	 * The current local time of a location, as a time zone request would
+	 * return it.
+	 *
+	 * @param location
+	 *            the location.
+	 * @return the local time, or null if the zone is not known.
+	 */
+	public TimeZoneInfo timeZone(Location location) {
+		DateTimeZone zone = resolve(location);
+		return zone == null ? null : timeZone(zone,
+				DateTimeUtils.currentTimeMillis());
+	}
+
+	/**
+	 * The current local time of a location, resolved locally or, if the zone
+	 * is not known, by a request whose response is learned.
+	 *
+	 * @param location
+	 *            the location.
+	 * @param fallback
+	 *            a time zone, or local weather with the local time, request
+	 *            of the location in XML or JSON, sent only if the zone is not
+	 *            known.
+	 * @return the local time, or null if the response has no time zone.
+	 * @throws IOException
+	 *             if the fallback request fails.
+	 */
+	public TimeZoneInfo timeZone(Location location, Request fallback)
+			throws IOException {
+		TimeZoneInfo info = timeZone(location);
+		if (info != null) {
+			return info;
+		}
+		final TimeZoneInfo[] remote = new TimeZoneInfo[1];
+		fallback.parse(new WeatherHandlerAdapter() {
+			@Override
+			public void timeZone(TimeZoneInfo timeZone) {
+				remote[0] = timeZone;
+			}
+		});
+		if (remote[0] != null) {
+			learn(location, remote[0]);
+		}
+		return remote[0];
+	}
+
+	/**
+	 * Remembers the time zone a response gave for a location. A coordinate is
+	 * remembered for its whole cell.
+	 *
+	 * @param location
+	 *            the location of the request.
+	 * @param info
+	 *            the <code>time_zone</code> element of the response.
+	 * @return false if the response has neither a known zone id nor an
+	 *         offset.
+	 */
+	public boolean learn(Location location, TimeZoneInfo info) {
+		DateTimeZone zone = zoneOf(info);
+		if (zone == null) {
+			return false;
+		}
+		lock.writeLock().lock();
+		try {
+			if (location.getType() == LocationType.LAT_AND_LONG) {
+				putCell(Geohash.encode(location.getLatitude(),
+						location.getLongitude(), precision), zone);
+			} else {
+				zoneByLocation.put(location, zone);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return true;
+	}
+
+	/**
+	 * A handler learning the time zone of a response, e.g.
+	 *
+	 * <pre>
+	 * localWeather.showLocalTime(true).buildRequestAttributes(&quot;http&quot;)
+	 * 		.parse(resolver.learner(location));
+	 * </pre>
+	 *
+	 * @param location
+	 *            the location of the request.
+	 * @return the handler.
+	 */
+	public WeatherHandler learner(final Location location) {
+		return new WeatherHandlerAdapter() {
+			@Override
+			public void timeZone(TimeZoneInfo timeZone) {
+				learn(location, timeZone);
+			}
+		};
+	}
+
+	/**
+	 * Indexes a boundary dataset of tab separated lines: a geohash and the
+	 * zone id of its cell, e.g. <code>gcpv&#9;Europe/London</code>. A point
+	 * takes the zone of the longest cell containing it. Lines starting with
+	 * '#' are comments. Closes the stream.
+	 *
+	 * @param in
+	 *            the dataset.
+	 * @return the number of cells indexed.
+	 * @throws IOException
+	 *             if the dataset cannot be read, or a line has too few
+	 *             fields, an invalid geohash or an unknown zone id.
+	 */
+	public int load(InputStream in) throws IOException {
+		final int[] count = new int[1];
+		final IOException[] error = new IOException[1];
+		DelimitedParser.tab().parse(in, new RecordHandler() {
+			@Override
+			public void record(DelimitedRecord record) {
+				if (error[0] != null) {
+					return;
+				}
+				if (record.size() < 2) {
+					error[0] = new IOException("Expected 2 fields on line "
+							+ record.getLineNumber() + ", got " + record.size());
+					return;
+				}
+				String cell = record.getString(0).trim().toLowerCase();
+				if (!isGeohash(cell)) {
+					error[0] = new IOException("Invalid geohash on line "
+							+ record.getLineNumber() + ": " + cell);
+					return;
+				}
+				DateTimeZone zone;
+				try {
+					zone = DateTimeZone.forID(record.getString(1).trim());
+				} catch (IllegalArgumentException e) {
+					error[0] = new IOException("Unknown time zone on line "
+							+ record.getLineNumber() + ": " + record.getString(1));
+					return;
+				}
+				lock.writeLock().lock();
+				try {
+					putCell(cell, zone);
+				} finally {
+					lock.writeLock().unlock();
+				}
+				count[0]++;
+			}
+
+			@Override
+			public void comment(DelimitedRecord comment) {
+			}
+		});
+		if (error[0] != null) {
+			throw error[0];
+		}
+		return count[0];
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * The number of indexed cells and locations.
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return zoneByCell.size() + zoneByLocation.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The number of locations resolved locally.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of locations not resolved locally.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * The time zone element of a zone at an instant.
+	 */
+	static TimeZoneInfo timeZone(DateTimeZone zone, long instant) {
+		TimeZoneInfo info = new TimeZoneInfo();
+		info.setLocalTime(new LocalDateTime(instant, zone));
+		info.setUtcOffset(zone.getOffset(instant) / 3600000.0);
+		if (!zone.isFixed()) {
+			info.setZone(zone.getID());
+		}
+		return info;
+	}
+
+	/**
+	 * The zone of a response: its zone id if Joda-Time knows it, else its
+	 * fixed offset, else null.
+	 */
+	static DateTimeZone zoneOf(TimeZoneInfo info) {
+		if (info.getZone() != null) {
+			try {
+				return DateTimeZone.forID(info.getZone());
+			} catch (IllegalArgumentException e) {
+				// an id unknown to this Joda-Time version, use the offset
+			}
+		}
+		double offset = info.getUtcOffset();
+		if (Double.isNaN(offset) || Math.abs(offset) > 18) {
+			return null;
+		}
+		return DateTimeZone.forOffsetMillis((int) Math.round(offset * 3600000));
+	}
+
+	private DateTimeZone zoneOfPoint(double latitude, double longitude) {
+		if (maxCellLength == 0) {
+			return null;
+		}
+		String hash = Geohash.encode(latitude, longitude, maxCellLength);
+		for (int length = maxCellLength; length > 0; length--) {
+			DateTimeZone zone = zoneByCell.get(hash.substring(0, length));
+			if (zone != null) {
+				return zone;
+			}
+		}
+		return null;
+	}
+
+	private void putCell(String cell, DateTimeZone zone) {
+		zoneByCell.put(cell, zone);
+		maxCellLength = Math.max(maxCellLength, cell.length());
+	}
+
+	private static boolean isGeohash(String s) {
+		if (s.isEmpty() || s.length() > Geohash.MAX_PRECISION) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (!((c >= '0' && c <= '9') || (c >= 'b' && c <= 'z'
+					&& c != 'i' && c != 'l' && c != 'o'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}